@@ -55,6 +55,11 @@ public interface AsyncHandle {
      * <p>Writes data to the response asynchronously.</p>
      * <p>Note that even in async mode it is possible to use the blocking write methods on the {@link MuResponse}</p>
      * <p>See {@link #write(ByteBuffer, DoneCallback)} for an alternative that uses a callback.</p>
+     * <p>This method does not wait for the client to accept the data, so callers writing large amounts of data should
+     * wait on the returned futures to avoid buffering more than the client can read. For HTTP/2 requests this can
+     * instead be done by the server by enabling {@link Http2ConfigBuilder#withAsyncWriteBackpressure(boolean)}, in
+     * which case this method blocks while the data already written but not yet accepted by the client exceeds the
+     * stream's flow control window. The callback version of this method never blocks.</p>
      * @param data The data to write
      * @return A future that is resolved when the write succeeds or fails.
      */
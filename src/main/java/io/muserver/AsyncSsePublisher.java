@@ -1,5 +1,8 @@
 package io.muserver;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
@@ -86,6 +89,30 @@ public interface AsyncSsePublisher {
      */
     CompletionStage<?> setClientReconnectTime(long timeToWait, TimeUnit unit);
 
+    /**
+     * <p>Sends a comment to the client whenever nothing has been sent for the given interval, which stops proxies
+     * and load balancers from closing connections that are idle, and detects clients that have gone away. If a
+     * heartbeat cannot be sent then this publisher is closed.</p>
+     * <p>The heartbeats of all publishers are sent by a single timer shared by the server, so this is much cheaper
+     * than scheduling calls to {@link #sendComment(String)} for each publisher.</p>
+     * <p>Heartbeats are off by default, and stop when {@link #close()} is called.</p>
+     * @param interval The time without anything being sent after which a heartbeat is sent, or 0 to stop heartbeats
+     * @param unit The unit of the interval
+     */
+    void setHeartbeatInterval(long interval, TimeUnit unit);
+
+    /**
+     * <p>Limits how much data can be waiting to be sent to a client that is reading more slowly than events are
+     * published, so that slow clients do not use large amounts of server memory.</p>
+     * <p>Data counts towards the limit from when it is sent until it has been written to the client's connection
+     * (or, for HTTP2, to the request's stream). When an event is sent while more than <code>maxQueuedBytes</code> is
+     * waiting, the given action is applied. Comments, heartbeats and reconnect times are always sent.</p>
+     * <p>By default there is no limit.</p>
+     * @param maxQueuedBytes The maximum number of bytes waiting to be written, or 0 to remove the limit
+     * @param action What to do with events sent while the limit is exceeded
+     */
+    void setOutboundLimit(long maxQueuedBytes, SseQueueFullAction action);
+
     /**
      * <p>Creates a new Server-Sent Events publisher. This is designed by be called from within a MuHandler.</p>
      * <p>This will set the content type of the response to <code>text/event-stream</code> and disable caching.</p>
@@ -99,16 +126,61 @@ public interface AsyncSsePublisher {
     static AsyncSsePublisher start(MuRequest request, MuResponse response) {
         response.contentType(ContentTypes.TEXT_EVENT_STREAM);
         response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
-        return new AsyncSsePublisherImpl(request.handleAsync());
+        return new AsyncSsePublisherImpl(request, null, 0);
+    }
+
+    /**
+     * <p>Creates a new Server-Sent Events publisher that resumes the stream of a client that is reconnecting.</p>
+     * <p>This is the same as {@link #start(MuRequest, MuResponse)} except that if the request has a
+     * <code>Last-Event-ID</code> header then the events in the replay buffer that the client missed are sent before
+     * any events sent with the returned publisher. Events sent with an ID by the returned publisher are added to the
+     * buffer.</p>
+     * @param request The current MuRequest
+     * @param response The current MuResponse
+     * @param replayBuffer The buffer of recent events for the stream that the client is subscribing to
+     * @return Returns a publisher that can be used to send messages to the client.
+     * @see SseReplayBuffer
+     */
+    static AsyncSsePublisher start(MuRequest request, MuResponse response, SseReplayBuffer replayBuffer) {
+        Mutils.notNull("replayBuffer", replayBuffer);
+        response.contentType(ContentTypes.TEXT_EVENT_STREAM);
+        response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
+        SseReplayBuffer.Replay replay = replayBuffer.replayAfter(request.headers().get(HeaderNames.LAST_EVENT_ID));
+        AsyncSsePublisherImpl publisher = new AsyncSsePublisherImpl(request, replayBuffer, replay.upToSequence);
+        if (replay.data.length > 0) {
+            publisher.write(replay.data);
+        }
+        return publisher;
     }
 }
 
 class AsyncSsePublisherImpl implements AsyncSsePublisher {
 
     private final AsyncHandle asyncHandle;
+    private final NettyRequestAdapter request;
+    private final SseHeartbeatScheduler heartbeatScheduler;
+    private final SseReplayBuffer replayBuffer;
+    private final long replayedUpTo;
+    private volatile long lastWriteNanos = System.nanoTime();
+    private volatile boolean closed = false;
+    private IdleTimeout heartbeat; // guarded by this
+
+    private long maxQueuedBytes = 0; // guarded by this
+    private SseQueueFullAction queueFullAction; // guarded by this
+    private long queuedBytes = 0; // guarded by this
+    private long droppedSinceLastGap = 0; // guarded by this
+    private byte[] coalescedEvent; // guarded by this
+    private CompletableFuture<?> coalescedStage; // guarded by this
+    private final ArrayDeque<Outgoing> outgoing = new ArrayDeque<>(); // guarded by this
+    private boolean draining = false; // guarded by this
 
-    AsyncSsePublisherImpl(AsyncHandle asyncHandle) {
-        this.asyncHandle = asyncHandle;
+    AsyncSsePublisherImpl(MuRequest request, SseReplayBuffer replayBuffer, long replayedUpTo) {
+        this.asyncHandle = request.handleAsync();
+        this.request = request instanceof NettyRequestAdapter ? (NettyRequestAdapter) request : null;
+        MuServer server = request.server();
+        this.heartbeatScheduler = server instanceof MuServerImpl ? ((MuServerImpl) server).sseHeartbeats : null;
+        this.replayBuffer = replayBuffer;
+        this.replayedUpTo = replayedUpTo;
     }
 
     @Override
@@ -123,7 +195,12 @@ class AsyncSsePublisherImpl implements AsyncSsePublisher {
 
     @Override
     public CompletionStage<?> send(String message, String event, String eventID) {
-        return write(SsePublisherImpl.dataText(message, event, eventID));
+        byte[] data = SsePublisherImpl.dataText(message, event, eventID).getBytes(StandardCharsets.UTF_8);
+        if (replayBuffer != null && eventID != null && replayBuffer.add(eventID, data) <= replayedUpTo) {
+            // already sent to the client when the buffered events were replayed
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendEvent(data);
     }
 
     @Override
@@ -137,19 +214,228 @@ class AsyncSsePublisherImpl implements AsyncSsePublisher {
     }
 
     private CompletionStage<?> write(String text) {
+        return write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    CompletionStage<?> write(byte[] data) {
         CompletableFuture<?> stage = new CompletableFuture<>();
-        asyncHandle.write(Mutils.toByteBuffer(text), error -> {
+        writeBytes(ByteBuffer.wrap(data), completer(stage));
+        return stage;
+    }
+
+    private static DoneCallback completer(CompletableFuture<?> stage) {
+        return error -> {
             if (error == null) {
                 stage.complete(null);
             } else {
                 stage.completeExceptionally(error);
             }
-        });
+        };
+    }
+
+    /**
+     * Sends an event, or applies the queue full action if the client already has too much data waiting to be written
+     */
+    private CompletionStage<?> sendEvent(byte[] data) {
+        CompletableFuture<?> stage = new CompletableFuture<>();
+        CompletableFuture<?> replaced;
+        boolean rejected = false;
+        boolean disconnect = false;
+        synchronized (this) {
+            replaced = coalescedStage;
+            if (queueFullAction == null || closed || queuedBytes <= maxQueuedBytes) {
+                // a newer event replaces any coalesced event that has not been sent yet
+                coalescedEvent = null;
+                coalescedStage = null;
+                enqueueGapMarker();
+                enqueue(ByteBuffer.wrap(data), completer(stage));
+            } else if (queueFullAction == SseQueueFullAction.COALESCE_TO_LATEST) {
+                coalescedEvent = data;
+                coalescedStage = stage;
+            } else {
+                replaced = null;
+                rejected = true;
+                if (queueFullAction == SseQueueFullAction.DROP_WITH_GAP_MARKER) {
+                    droppedSinceLastGap++;
+                } else {
+                    disconnect = true;
+                }
+            }
+        }
+        drain();
+        if (replaced != null) {
+            replaced.completeExceptionally(new MuException("The event was replaced by a later event before it was sent"));
+        }
+        if (rejected) {
+            stage.completeExceptionally(new MuException("The event was not sent as the client has too much data waiting to be written"));
+        }
+        if (disconnect) {
+            abort();
+        }
         return stage;
     }
 
+    void writeBytes(ByteBuffer data, DoneCallback callback) {
+        synchronized (this) {
+            enqueue(data, callback);
+        }
+        drain();
+    }
+
+    /**
+     * Adds data to the queue of data to be written. This must be called while holding the lock, so that the order of
+     * the queue matches the order of the queue full decisions, and then {@link #drain()} must be called after
+     * releasing it.
+     */
+    private void enqueue(ByteBuffer data, DoneCallback callback) {
+        queuedBytes += data.remaining();
+        lastWriteNanos = System.nanoTime();
+        outgoing.add(new Outgoing(data, callback));
+    }
+
+    /**
+     * Passes queued data to the async handle in order. Only one thread drains at a time, and writes happen without
+     * holding the lock because callbacks, and so the continuations of the stages returned to the caller, can run
+     * straight away when a write completes immediately. Data queued by those callbacks is written by the same loop.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Outgoing next;
+            synchronized (this) {
+                next = outgoing.poll();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            int size = next.data.remaining();
+            DoneCallback callback = error -> {
+                onWritten(size);
+                next.callback.onComplete(error);
+            };
+            try {
+                asyncHandle.write(next.data, callback);
+            } catch (Exception e) {
+                try {
+                    callback.onComplete(e);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when data has been written, or failed to be written. Once the client has caught up, the gap marker or
+     * the latest coalesced event are sent.
+     */
+    private void onWritten(int size) {
+        synchronized (this) {
+            queuedBytes -= size;
+            if (queueFullAction != null && !closed && queuedBytes <= maxQueuedBytes) {
+                enqueueGapMarker();
+                if (coalescedEvent != null) {
+                    byte[] event = coalescedEvent;
+                    CompletableFuture<?> stage = coalescedStage;
+                    coalescedEvent = null;
+                    coalescedStage = null;
+                    enqueue(ByteBuffer.wrap(event), completer(stage));
+                }
+            }
+        }
+        drain();
+    }
+
+    private void enqueueGapMarker() {
+        if (droppedSinceLastGap > 0) {
+            String marker = SsePublisherImpl.dataText(String.valueOf(droppedSinceLastGap), "gap", null);
+            droppedSinceLastGap = 0;
+            enqueue(ByteBuffer.wrap(marker.getBytes(StandardCharsets.UTF_8)), DoneCallback.NoOp);
+        }
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} of the last write, or of when the publisher was created
+     */
+    long lastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    @Override
+    public synchronized void setHeartbeatInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("The interval must be 0 or greater");
+        }
+        Mutils.notNull("unit", unit);
+        if (heartbeat != null) {
+            heartbeat.cancel();
+            heartbeat = null;
+        }
+        if (interval > 0 && !closed) {
+            if (heartbeatScheduler == null) {
+                throw new IllegalStateException("Heartbeats can only be sent by publishers created by a Mu Server");
+            }
+            heartbeat = heartbeatScheduler.start(this, unit.toNanos(interval));
+        }
+    }
+
+    @Override
+    public synchronized void setOutboundLimit(long maxQueuedBytes, SseQueueFullAction action) {
+        if (maxQueuedBytes < 0) {
+            throw new IllegalArgumentException("maxQueuedBytes must be 0 or greater");
+        }
+        Mutils.notNull("action", action);
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.queueFullAction = maxQueuedBytes == 0 ? null : action;
+    }
+
     @Override
     public void close() {
+        markClosed();
         asyncHandle.complete();
     }
+
+    /**
+     * Closes the connection (or HTTP2 stream) without sending the data that is waiting to be written
+     */
+    private void abort() {
+        markClosed();
+        if (request != null) {
+            request.abort();
+        } else {
+            asyncHandle.complete();
+        }
+    }
+
+    private void markClosed() {
+        CompletableFuture<?> unsent;
+        synchronized (this) {
+            closed = true;
+            if (heartbeat != null) {
+                heartbeat.cancel();
+                heartbeat = null;
+            }
+            unsent = coalescedStage;
+            coalescedEvent = null;
+            coalescedStage = null;
+        }
+        if (unsent != null) {
+            unsent.completeExceptionally(new MuException("The publisher was closed before the event was sent"));
+        }
+    }
+
+    private static class Outgoing {
+        private final ByteBuffer data;
+        private final DoneCallback callback;
+
+        private Outgoing(ByteBuffer data, DoneCallback callback) {
+            this.data = data;
+            this.callback = callback;
+        }
+    }
 }
@@ -209,6 +209,10 @@ public final class HeaderNames {
      * {@code "pragma"}
      */
     public static final CharSequence PRAGMA = HttpHeaderNames.PRAGMA;
+    /**
+     * {@code "priority"}
+     */
+    public static final CharSequence PRIORITY = AsciiString.cached("priority");
     /**
      * {@code "proxy-authenticate"}
      */
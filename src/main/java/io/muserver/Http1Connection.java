@@ -19,8 +19,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLSession;
 import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Collections;
@@ -35,6 +33,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
     private static final Logger log = LoggerFactory.getLogger(Http1Connection.class);
     private static final AttributeKey<AsyncContext> STATE_ATTRIBUTE = AttributeKey.newInstance("state"); // todo, just store as a volatile field?
     static final AttributeKey<MuWebSocketSessionImpl> WEBSOCKET_ATTRIBUTE = AttributeKey.newInstance("ws"); // todo, just store as a volatile field?
+    static final AttributeKey<MuWebSocketSessionImpl> WEBSOCKET_OUTBOUND_ATTRIBUTE = AttributeKey.newInstance("wsout");
 
     private final NettyHandlerAdapter nettyHandlerAdapter;
     private final MuStatsImpl serverStats;
@@ -81,11 +80,33 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
         if (asyncContext != null) {
             asyncContext.onCancelled(true);
         }
+        onWebSocketInactive(ctx);
+        super.channelInactive(ctx);
+    }
+
+    static void onWebSocketInactive(ChannelHandlerContext ctx) throws Exception {
         MuWebSocketSessionImpl webSocket = getWebSocket(ctx);
         if (webSocket != null) {
             webSocket.muWebSocket.onError(new ClientDisconnectedException());
         }
-        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        onWebSocketWritabilityChanged(ctx);
+        super.channelWritabilityChanged(ctx);
+    }
+
+    static void onWebSocketWritabilityChanged(ChannelHandlerContext ctx) {
+        // the session may still have queued messages to send, such as a close frame, after it has been cleared
+        MuWebSocketSessionImpl webSocket = ctx.channel().attr(WEBSOCKET_OUTBOUND_ATTRIBUTE).get();
+        if (webSocket != null) {
+            try {
+                webSocket.onChannelWritabilityChanged();
+            } catch (Throwable e) {
+                handleWebsockError(ctx, webSocket.muWebSocket, e);
+            }
+        }
     }
 
     protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
@@ -145,7 +166,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
 
                 String relativeUri;
                 try {
-                    relativeUri = getRelativeUri(request);
+                    relativeUri = NettyRequestAdapter.normaliseRelativeUri(request.uri());
                 } catch (Exception e) {
                     serverStats.onInvalidRequest();
                     connectionStats.onInvalidRequest();
@@ -220,53 +241,88 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
             readyToRead = false;
             MuWebSocketSessionImpl session = getWebSocket(ctx);
             if (session != null) {
-                MuWebSocket muWebSocket = session.muWebSocket;
-                DoneCallback onComplete = error -> {
-                    if (error == null) {
-                        ctx.channel().read();
-                    } else {
-                        handleWebsockError(ctx, muWebSocket, error);
-                    }
+                onWebSocketFrame(ctx, session, (WebSocketFrame) msg);
+            }
+        }
+        return readyToRead;
+    }
+
+    /**
+     * Passes a websocket frame to the session's websocket, and reads the next frame once the websocket has finished
+     * with it. This is shared by websockets on HTTP1 connections and websockets on HTTP2 streams.
+     */
+    static void onWebSocketFrame(ChannelHandlerContext ctx, MuWebSocketSessionImpl session, WebSocketFrame msg) {
+        session.onFrameRead();
+        MuWebSocket muWebSocket = session.muWebSocket;
+        DoneCallback onComplete = error -> {
+            if (error == null) {
+                ctx.channel().read();
+            } else {
+                handleWebsockError(ctx, muWebSocket, error);
+            }
+        };
+        try {
+            if (msg instanceof TextWebSocketFrame) {
+                TextWebSocketFrame frame = (TextWebSocketFrame) msg;
+                if (frame.isFinalFragment()) {
+                    muWebSocket.onText(frame.text(), onComplete);
+                } else {
+                    session.onFragmentedMessageStarted(MuWebSocketSessionImpl.OPCODE_TEXT);
+                    muWebSocket.onPartialText(session.decodeTextFragment(frame.content(), false), false, onComplete);
+                }
+            } else if (msg instanceof BinaryWebSocketFrame) {
+                WebSocketFrame frame = (WebSocketFrame) msg;
+                ByteBuf content = frame.content();
+                content.retain();
+                DoneCallback releaser = error -> {
+                    content.release();
+                    onComplete.onComplete(error);
                 };
-                try {
-                    if (msg instanceof TextWebSocketFrame) {
-                        muWebSocket.onText(((TextWebSocketFrame) msg).text(), onComplete);
-                    } else if (msg instanceof BinaryWebSocketFrame) {
-                        ByteBuf content = ((ByteBufHolder) msg).content();
-                        content.retain();
-                        muWebSocket.onBinary(content.nioBuffer(), error -> {
-                            content.release();
-                            onComplete.onComplete(error);
-                        });
-                    } else if (msg instanceof PingWebSocketFrame) {
-                        ByteBuf content = ((ByteBufHolder) msg).content();
-                        content.retain();
-                        muWebSocket.onPing(content.nioBuffer(), error -> {
-                            content.release();
-                            onComplete.onComplete(error);
-                        });
-                    } else if (msg instanceof PongWebSocketFrame) {
-                        ByteBuf content = ((ByteBufHolder) msg).content();
-                        content.retain();
-                        muWebSocket.onPong(content.nioBuffer(), error -> {
-                            content.release();
-                            onComplete.onComplete(error);
-                        });
-                    } else if (msg instanceof CloseWebSocketFrame) {
-                        CloseWebSocketFrame cwsf = (CloseWebSocketFrame) msg;
-                        muWebSocket.onClientClosed(cwsf.statusCode(), cwsf.reasonText());
-                        clearWebSocket(ctx);
-                        onComplete.onComplete(null);
-                    }
-                } catch (Throwable e) {
-                    handleWebsockError(ctx, muWebSocket, e);
+                if (frame.isFinalFragment()) {
+                    muWebSocket.onBinary(content.nioBuffer(), releaser);
+                } else {
+                    session.onFragmentedMessageStarted(MuWebSocketSessionImpl.OPCODE_BINARY);
+                    muWebSocket.onPartialBinary(content.nioBuffer(), false, releaser);
+                }
+            } else if (msg instanceof ContinuationWebSocketFrame) {
+                ContinuationWebSocketFrame frame = (ContinuationWebSocketFrame) msg;
+                boolean isLast = frame.isFinalFragment();
+                if (session.onContinuationFrame(isLast) == MuWebSocketSessionImpl.OPCODE_TEXT) {
+                    muWebSocket.onPartialText(session.decodeTextFragment(frame.content(), isLast), isLast, onComplete);
+                } else {
+                    ByteBuf content = frame.content();
+                    content.retain();
+                    muWebSocket.onPartialBinary(content.nioBuffer(), isLast, error -> {
+                        content.release();
+                        onComplete.onComplete(error);
+                    });
                 }
+            } else if (msg instanceof PingWebSocketFrame) {
+                ByteBuf content = ((ByteBufHolder) msg).content();
+                content.retain();
+                muWebSocket.onPing(content.nioBuffer(), error -> {
+                    content.release();
+                    onComplete.onComplete(error);
+                });
+            } else if (msg instanceof PongWebSocketFrame) {
+                ByteBuf content = ((ByteBufHolder) msg).content();
+                content.retain();
+                muWebSocket.onPong(content.nioBuffer(), error -> {
+                    content.release();
+                    onComplete.onComplete(error);
+                });
+            } else if (msg instanceof CloseWebSocketFrame) {
+                CloseWebSocketFrame cwsf = (CloseWebSocketFrame) msg;
+                muWebSocket.onClientClosed(cwsf.statusCode(), cwsf.reasonText());
+                clearWebSocket(ctx);
+                onComplete.onComplete(null);
             }
+        } catch (Throwable e) {
+            handleWebsockError(ctx, muWebSocket, e);
         }
-        return readyToRead;
     }
 
-    private void handleWebsockError(ChannelHandlerContext ctx, MuWebSocket muWebSocket, Throwable e) {
+    static void handleWebsockError(ChannelHandlerContext ctx, MuWebSocket muWebSocket, Throwable e) {
         try {
             clearWebSocket(ctx);
             muWebSocket.onError(e);
@@ -280,19 +336,6 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
         ctx.channel().attr(WEBSOCKET_ATTRIBUTE).set(null);
     }
 
-    private static String getRelativeUri(HttpRequest request) throws URISyntaxException {
-        URI requestUri = new URI(request.uri()).normalize();
-        String s = requestUri.getRawPath();
-        if (Mutils.nullOrEmpty(s)) {
-            s = "/";
-        }
-        String q = requestUri.getRawQuery();
-        if (q != null) {
-            s += "?" + q;
-        }
-        return s;
-    }
-
     private void handleHttpRequestDecodeFailure(ChannelHandlerContext ctx, Throwable cause) {
         String message = "Server error";
         int code = 500;
@@ -319,20 +362,8 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof IdleStateEvent) {
-            IdleStateEvent ise = (IdleStateEvent) evt;
-            MuWebSocketSessionImpl session = getWebSocket(ctx);
-            if (session != null) {
-                if (ise.state() == IdleState.READER_IDLE) {
-                    try {
-                        session.muWebSocket.onError(new TimeoutException("No messages received on websocket"));
-                    } catch (Exception e) {
-                        log.warn("Error while processing idle timeout", e);
-                        ctx.close();
-                    }
-                } else if (ise.state() == IdleState.WRITER_IDLE) {
-                    session.sendPing(ByteBuffer.wrap(MuWebSocketSessionImpl.PING_BYTES), DoneCallback.NoOp);
-                }
-            } else {
+            // websockets have their idle handler removed, and are checked by the server's WebSocketLivenessManager instead
+            if (getWebSocket(ctx) == null) {
                 AsyncContext asyncContext = getAsyncContext(ctx);
                 boolean activeRequest = asyncContext != null && !asyncContext.isComplete();
                 if (activeRequest) {
@@ -355,7 +386,24 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
         super.userEventTriggered(ctx, evt);
     }
 
-    private MuWebSocketSessionImpl getWebSocket(ChannelHandlerContext ctx) {
+    /**
+     * Called on the event loop of a websocket that has not received or sent messages within the periods set
+     * on its {@link WebSocketHandlerBuilder}
+     */
+    static void onWebSocketIdle(MuWebSocketSessionImpl session, IdleState state) {
+        if (state == IdleState.READER_IDLE) {
+            try {
+                session.muWebSocket.onError(new TimeoutException("No messages received on websocket"));
+            } catch (Exception e) {
+                log.warn("Error while processing idle timeout", e);
+                session.abort();
+            }
+        } else if (state == IdleState.WRITER_IDLE) {
+            session.sendPing(ByteBuffer.wrap(MuWebSocketSessionImpl.PING_BYTES), DoneCallback.NoOp);
+        }
+    }
+
+    static MuWebSocketSessionImpl getWebSocket(ChannelHandlerContext ctx) {
         return ctx.channel().attr(WEBSOCKET_ATTRIBUTE).get();
     }
 
@@ -372,22 +420,43 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
                     " so will disconnect this client");
             }
             asyncContext.onCancelled(true);
-        } else if (cause instanceof CorruptedFrameException) {
-            MuWebSocketSessionImpl webSocket = getWebSocket(ctx);
-            if (webSocket != null) {
-                try {
-                    webSocket.muWebSocket.onError(new WebSocketProtocolException(cause.getMessage(), cause));
-                } catch (Exception e) {
-                    ctx.close();
-                }
-                return;
-            }
-        } else {
+        } else if (onWebSocketException(ctx, cause)) {
+            return;
+        } else if (!(cause instanceof CorruptedFrameException)) {
             log.debug("Exception for unknown ctx " + ctx, cause);
         }
         ctx.close();
     }
 
+    /**
+     * Lets the websocket on the channel, if there is one, know about a problem with the frames it has been sent.
+     * @return true if the exception was handled; false if there is no websocket or the exception is not a frame error
+     */
+    static boolean onWebSocketException(ChannelHandlerContext ctx, Throwable cause) {
+        MuWebSocketSessionImpl webSocket = getWebSocket(ctx);
+        if (webSocket == null) {
+            return false;
+        }
+        if (cause instanceof TooLongFrameException) {
+            // a fragmented message was longer than the maximum message length
+            try {
+                webSocket.close(1009, "Message too big");
+                webSocket.muWebSocket.onError(new WebSocketProtocolException(cause.getMessage(), cause));
+            } catch (Exception e) {
+                ctx.close();
+            }
+            return true;
+        } else if (cause instanceof CorruptedFrameException) {
+            try {
+                webSocket.muWebSocket.onError(new WebSocketProtocolException(cause.getMessage(), cause));
+            } catch (Exception e) {
+                ctx.close();
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public String protocol() {
         return "HTTP/1.1";
@@ -6,8 +6,16 @@ package io.muserver;
  */
 public class Http2Config {
     final boolean enabled;
+    final int maxInFlightRequestsPerConnection;
+    final boolean priorityScheduling;
+    final boolean webSockets;
+    final boolean asyncWriteBackpressure;
 
-    Http2Config(boolean enabled) {
+    Http2Config(boolean enabled, int maxInFlightRequestsPerConnection, boolean priorityScheduling, boolean webSockets, boolean asyncWriteBackpressure) {
         this.enabled = enabled;
+        this.maxInFlightRequestsPerConnection = maxInFlightRequestsPerConnection;
+        this.priorityScheduling = priorityScheduling;
+        this.webSockets = webSockets;
+        this.asyncWriteBackpressure = asyncWriteBackpressure;
     }
 }
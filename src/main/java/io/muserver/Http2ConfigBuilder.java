@@ -6,6 +6,10 @@ package io.muserver;
 public class Http2ConfigBuilder {
 
     private boolean enabled = false;
+    private int maxInFlightRequestsPerConnection = 0;
+    private boolean priorityScheduling = false;
+    private boolean webSockets = false;
+    private boolean asyncWriteBackpressure = false;
 
     /**
      * Specifies whether to enable HTTP2 or not.
@@ -17,12 +21,73 @@ public class Http2ConfigBuilder {
         return this;
     }
 
+    /**
+     * <p>Sets the maximum number of requests from a single HTTP2 connection that can be passed to the handler executor
+     * at the same time.</p>
+     * <p>Further requests on the connection are queued until one of the in-flight requests completes, which stops a
+     * single client that opens many streams from using all the handler threads.</p>
+     * @param max The maximum number of in-flight requests per connection, or <code>0</code> for no limit (the default).
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxInFlightRequestsPerConnection(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("The max in-flight requests must be 0 or greater");
+        }
+        this.maxInFlightRequestsPerConnection = max;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether client priority hints are used when scheduling requests and writing responses.</p>
+     * <p>When enabled, requests queued due to {@link #withMaxInFlightRequestsPerConnection(int)} are dispatched in order
+     * of their urgency (from an <a href="https://tools.ietf.org/html/rfc9218">RFC 9218</a> <code>priority</code> header
+     * or <code>PRIORITY_UPDATE</code> frame) and then their HTTP2 stream weight, rather than in arrival order. The
+     * urgency is also converted into a stream weight so that more urgent responses get a bigger share of the connection
+     * when writing. Stream weights sent by the client are always used when writing.</p>
+     * @param enabled <code>true</code> to enable; <code>false</code> to disable (the default).
+     * @return This builder
+     */
+    public Http2ConfigBuilder withPriorityScheduling(boolean enabled) {
+        this.priorityScheduling = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether websockets can be opened on HTTP2 connections.</p>
+     * <p>When enabled, the server advertises support for the extended <code>CONNECT</code> method from
+     * <a href="https://tools.ietf.org/html/rfc8441">RFC 8441</a>, which allows clients to open websockets as streams on
+     * an existing HTTP2 connection rather than opening a new HTTP1.1 connection for each websocket. The websockets are
+     * handled by the same {@link WebSocketHandler} instances that handle HTTP1.1 websocket upgrade requests.</p>
+     * @param enabled <code>true</code> to enable; <code>false</code> to disable (the default).
+     * @return This builder
+     */
+    public Http2ConfigBuilder withWebSockets(boolean enabled) {
+        this.webSockets = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether {@link AsyncHandle#write(java.nio.ByteBuffer)} blocks while an HTTP2 client is not accepting data.</p>
+     * <p>When enabled, calling that method from a thread other than the connection's event loop blocks while the data
+     * already written to the stream but not yet accepted by the client exceeds the stream's flow control window. This
+     * keeps the memory used by a response bounded when the returned futures are ignored, at the cost of blocking the
+     * writing thread for as long as the client is slow. When disabled, the method never blocks and the returned futures
+     * (or the {@link AsyncHandle#write(java.nio.ByteBuffer, DoneCallback)} callbacks) should be used to avoid writing faster than
+     * the client can read.</p>
+     * @param enabled <code>true</code> to enable; <code>false</code> to disable (the default).
+     * @return This builder
+     */
+    public Http2ConfigBuilder withAsyncWriteBackpressure(boolean enabled) {
+        this.asyncWriteBackpressure = enabled;
+        return this;
+    }
+
     /**
      * Creates the HTTP2 settings object
      * @return A new Http2Config object
      */
     public Http2Config build() {
-        return new Http2Config(enabled);
+        return new Http2Config(enabled, maxInFlightRequestsPerConnection, priorityScheduling, webSockets, asyncWriteBackpressure);
     }
 
     /**
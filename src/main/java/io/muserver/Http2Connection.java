@@ -3,17 +3,25 @@ package io.muserver;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.HttpHeaderValues;
-import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpRequest;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
 import io.netty.handler.codec.http2.*;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AsciiString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,6 +32,15 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 final class Http2Connection extends Http2ConnectionHandler implements Http2FrameListener, HttpConnection {
     private static final Logger log = LoggerFactory.getLogger(Http2Connection.class);
 
+    /**
+     * The frame type of a PRIORITY_UPDATE frame as defined in RFC 9218
+     */
+    private static final byte PRIORITY_UPDATE_FRAME_TYPE = 0x10;
+
+    private static final CharSequence[] PUSHED_REQUEST_HEADERS = {
+        HeaderNames.ACCEPT_ENCODING, HeaderNames.ACCEPT_LANGUAGE, HeaderNames.USER_AGENT, HeaderNames.COOKIE, HeaderNames.AUTHORIZATION
+    };
+
     private final MuServerImpl server;
     private final NettyHandlerAdapter nettyHandlerAdapter;
     private final ConcurrentHashMap<Integer, AsyncContext> contexts = new ConcurrentHashMap<>();
@@ -32,12 +49,34 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     private InetSocketAddress remoteAddress;
     private final Instant startTime = Instant.now();
     private ChannelHandlerContext nettyContext;
+    private final Http2RequestScheduler scheduler;
+    private final boolean priorityScheduling;
+    private final boolean webSocketsEnabled;
+    private final boolean asyncWriteBackpressure;
+    private final ConcurrentHashMap<Integer, Http2WebSocketChannel> webSockets = new ConcurrentHashMap<>();
 
     Http2Connection(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder,
                     Http2Settings initialSettings, MuServerImpl server, NettyHandlerAdapter nettyHandlerAdapter) {
         super(decoder, encoder, initialSettings);
         this.server = server;
         this.nettyHandlerAdapter = nettyHandlerAdapter;
+        Http2Config http2Config = server.settings().http2Config;
+        this.priorityScheduling = http2Config.priorityScheduling;
+        this.scheduler = new Http2RequestScheduler(http2Config.maxInFlightRequestsPerConnection, priorityScheduling);
+        this.webSocketsEnabled = http2Config.webSockets;
+        this.asyncWriteBackpressure = http2Config.asyncWriteBackpressure;
+        if (webSocketsEnabled) {
+            encoder.flowController().listener(this::onStreamWritabilityChanged);
+            connection().addListener(new Http2ConnectionAdapter() {
+                @Override
+                public void onStreamClosed(Http2Stream stream) {
+                    Http2WebSocketChannel webSocket = webSockets.remove(stream.id());
+                    if (webSocket != null) {
+                        webSocket.close();
+                    }
+                }
+            });
+        }
     }
 
 
@@ -54,6 +93,7 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         server.stats.onConnectionClosed();
         server.onConnectionEnded(this);
+        cancelQueuedRequests();
         super.channelInactive(ctx);
     }
 
@@ -66,12 +106,19 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         if (error != null) {
             encoder().writeGoAway(ctx, lastStreamId, error.code(), EMPTY_BUFFER, ctx.channel().newPromise());
         }
+        cancelQueuedRequests();
         for (AsyncContext asyncContext : contexts.values()) {
             asyncContext.onCancelled(true);
         }
         ctx.close();
     }
 
+    private void cancelQueuedRequests() {
+        for (AsyncContext asyncContext : scheduler.clearQueued()) {
+            asyncContext.onCancelled(true);
+        }
+    }
+
     private ChannelFuture sendSimpleResponse(ChannelHandlerContext ctx, int streamId, String message, int code) {
         byte[] bytes = message.getBytes(UTF_8);
         ByteBuf content = copiedBuffer(bytes);
@@ -86,6 +133,12 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
 
     @Override
     public int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream) {
+        Http2WebSocketChannel webSocket = webSockets.get(streamId);
+        if (webSocket != null) {
+            webSocket.onDataRead(data, endOfStream);
+            // the data is given back to the flow controller as the websocket reads it
+            return padding;
+        }
         int processed = data.readableBytes() + padding;
 
         AsyncContext asyncContext = contexts.get(streamId);
@@ -105,18 +158,36 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     public void onHeadersRead(ChannelHandlerContext ctx, int streamId,
                               io.netty.handler.codec.http2.Http2Headers headers, int padding, boolean endOfStream) {
         lastStreamId = streamId;
+        startRequest(ctx, streamId, headers, endOfStream, Http2CodecUtil.DEFAULT_PRIORITY_WEIGHT);
+    }
 
-        HttpMethod nettyMeth = HttpMethod.valueOf(headers.method().toString().toUpperCase());
-        Method muMethod;
-        try {
-            muMethod = Method.fromNetty(nettyMeth);
-        } catch (IllegalArgumentException e) {
+    private void startRequest(ChannelHandlerContext ctx, int streamId, io.netty.handler.codec.http2.Http2Headers headers, boolean endOfStream, short weight) {
+        Method muMethod = Method.fromHttp2(headers.method());
+        if (muMethod == null) {
             server.stats.onInvalidRequest();
             connectionStats.onInvalidRequest();
             sendSimpleResponse(ctx, streamId, "405 Method Not Allowed", 405);
             return;
         }
 
+        boolean webSocketConnect = false;
+        if (webSocketsEnabled) {
+            CharSequence protocol = headers.get(MuHttp2HeadersDecoder.PROTOCOL_PSEUDO_HEADER);
+            if (protocol != null && (muMethod != Method.CONNECT || !AsciiString.contentEqualsIgnoreCase(HeaderValues.WEBSOCKET, protocol))) {
+                server.stats.onInvalidRequest();
+                connectionStats.onInvalidRequest();
+                sendSimpleResponse(ctx, streamId, "400 Bad Request", 400);
+                return;
+            }
+            if (protocol != null) {
+                // An extended CONNECT is the HTTP2 equivalent of a GET upgrade request, and the stream carries the
+                // websocket frames rather than a request body.
+                webSocketConnect = true;
+                muMethod = Method.GET;
+                endOfStream = true;
+            }
+        }
+
         String uri = headers.path().toString();
         ServerSettings settings = server.settings();
         if (uri.length() > settings.maxUrlSize) {
@@ -125,8 +196,16 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
             sendSimpleResponse(ctx, streamId, "414 Request-URI Too Long", 414);
             return;
         }
+        try {
+            uri = NettyRequestAdapter.normaliseRelativeUri(uri);
+        } catch (Exception e) {
+            server.stats.onInvalidRequest();
+            connectionStats.onInvalidRequest();
+            sendSimpleResponse(ctx, streamId, "400 Bad Request", 400);
+            return;
+        }
 
-        HttpRequest nettyReq = new Http2To1RequestAdapter(streamId, nettyMeth, uri, headers);
+        HttpRequest nettyReq = new Http2To1RequestAdapter(streamId, muMethod, uri, headers, webSocketConnect);
         boolean hasRequestBody = !endOfStream;
         if (hasRequestBody) {
             long bodyLen = headers.getLong(HeaderNames.CONTENT_LENGTH, -1L);
@@ -139,9 +218,10 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
                 return;
             }
         }
+        CharSequence authority = headers.authority();
+        headers.set(HeaderNames.HOST, authority);
         Http2Headers muHeaders = new Http2Headers(headers, hasRequestBody);
-        String host = headers.authority().toString();
-        muHeaders.set(HeaderNames.HOST, host);
+        String host = authority.toString();
         NettyRequestAdapter muReq = new NettyRequestAdapter(ctx, ctx.channel(), nettyReq, muHeaders, server, muMethod, "https", uri, true, host, "HTTP/2", this);
 
         if (settings.block(muReq)) {
@@ -153,11 +233,13 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
 
         server.stats.onRequestStarted(muReq);
         connectionStats.onRequestStarted(muReq);
-        Http2Response resp = new Http2Response(ctx, muReq, new Http2Headers(), encoder(), streamId, settings);
+        Http2Response resp = new Http2Response(ctx, muReq, new Http2Headers(), encoder(), streamId, settings, this,
+            asyncWriteBackpressure ? encoder().flowController().initialWindowSize() : -1);
 
         AsyncContext asyncContext = new AsyncContext(muReq, resp, (info) -> {
             nettyHandlerAdapter.onResponseComplete(info, server.stats, connectionStats);
             contexts.remove(streamId);
+            ctx.executor().execute(() -> scheduler.onFinished(streamId));
         });
 
         contexts.put(streamId, asyncContext);
@@ -173,10 +255,187 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
                 } finally {
                     server.stats.onRequestEnded(muReq);
                     connectionStats.onRequestEnded(muReq);
+                    ctx.executor().execute(() -> scheduler.onFinished(streamId));
                 }
             }
         };
-        nettyHandlerAdapter.onHeaders(addedToExecutorCallback, asyncContext, muHeaders);
+        nettyHandlerAdapter.prepareRequest(asyncContext, muHeaders);
+
+        int urgency = Http2RequestScheduler.urgency(headers.get(HeaderNames.PRIORITY));
+        if (priorityScheduling && urgency != -1) {
+            weight = applyUrgency(streamId, urgency);
+        }
+        scheduler.submit(streamId, weight, urgency == -1 ? Http2RequestScheduler.DEFAULT_URGENCY : urgency, asyncContext,
+            () -> nettyHandlerAdapter.dispatch(addedToExecutorCallback, asyncContext));
+    }
+
+    /**
+     * Opens a websocket on the stream of an extended CONNECT request by sending a 200 response and then passing the
+     * data of the stream to and from a {@link Http2WebSocketChannel}.
+     */
+    void acceptWebSocket(int streamId, MuWebSocket muWebSocket, HttpHeaders responseHeaders, WebSocketSettings settings, WebSocketServerExtension extension) {
+        ChannelHandlerContext ctx = nettyContext;
+        Http2WebSocketChannel channel = new Http2WebSocketChannel(ctx.channel(), this, streamId);
+        ChannelPipeline pipeline = channel.pipeline();
+        pipeline.addLast("wsencoder", new WebSocket13FrameEncoder(false));
+        pipeline.addLast("wsdecoder", new WebSocket13FrameDecoder(true, extension != null, settings.maxFramePayloadLength));
+        if (extension != null) {
+            // inbound frames are inflated after the websocket decoder; outbound frames are deflated before the encoder
+            pipeline.addLast("wsextdecoder", extension.newExtensionDecoder());
+            pipeline.addLast("wsextencoder", extension.newExtensionEncoder());
+        }
+        if (!settings.partialMessages) {
+            pipeline.addLast("wsaggregator", new WebSocketFrameAggregator(settings.maxMessageLength));
+        }
+        pipeline.addLast("muhandler", new Http2WebSocketChannel.StreamHandler());
+        MuWebSocketSessionImpl session = new MuWebSocketSessionImpl(pipeline.context("muhandler"), muWebSocket, settings, extension != null);
+        channel.attr(Http1Connection.WEBSOCKET_ATTRIBUTE).set(session);
+        channel.attr(Http1Connection.WEBSOCKET_OUTBOUND_ATTRIBUTE).set(session);
+
+        ctx.executor().execute(() -> {
+            Http2Stream stream = connection().stream(streamId);
+            if (stream == null || !stream.state().localSideOpen()) {
+                channel.attr(Http1Connection.WEBSOCKET_ATTRIBUTE).set(null);
+                try {
+                    muWebSocket.onError(new ClientDisconnectedException());
+                } catch (Exception e) {
+                    log.debug("Error from websocket that was disconnected before it was opened", e);
+                }
+                return;
+            }
+            io.netty.handler.codec.http2.Http2Headers headers = new DefaultHttp2Headers();
+            headers.status(HttpResponseStatus.OK.codeAsText());
+            for (Map.Entry<String, String> header : responseHeaders) {
+                headers.add(header.getKey().toLowerCase(), header.getValue());
+            }
+            encoder().writeHeaders(ctx, streamId, headers, 0, false, ctx.newPromise());
+            ctx.channel().flush();
+            webSockets.put(streamId, channel);
+            ctx.channel().eventLoop().register(channel).addListener(future -> {
+                if (future.isSuccess()) {
+                    channel.setStreamWritable(encoder().flowController().isWritable(stream));
+                    server.webSocketLiveness.register(session, channel.eventLoop(), settings);
+                    muWebSocket.onConnect(session);
+                    channel.read();
+                } else {
+                    channel.close();
+                }
+            });
+        });
+    }
+
+    /**
+     * Called on the event loop by a websocket channel to send the encoded frames on its stream
+     */
+    ChannelFuture writeWebSocketData(int streamId, ByteBuf data, boolean endOfStream) {
+        Http2Stream stream = connection().stream(streamId);
+        if (stream == null || !stream.state().localSideOpen()) {
+            data.release();
+            return nettyContext.newFailedFuture(new ClientDisconnectedException());
+        }
+        return encoder().writeData(nettyContext, streamId, data, 0, endOfStream, nettyContext.newPromise());
+    }
+
+    /**
+     * Called on the event loop by a websocket channel once it has read data from its stream, so that the client is
+     * allowed to send more.
+     */
+    void consumeWebSocketBytes(int streamId, int bytes) {
+        Http2Stream stream = connection().stream(streamId);
+        if (stream != null && bytes > 0) {
+            try {
+                if (decoder().flowController().consumeBytes(stream, bytes)) {
+                    nettyContext.channel().flush();
+                }
+            } catch (Http2Exception e) {
+                log.debug("Could not return bytes to the flow control window of stream " + streamId, e);
+            }
+        }
+    }
+
+    /**
+     * Called on the event loop when a websocket channel is closed, to end the stream if the client has not already
+     */
+    void onWebSocketClosed(int streamId) {
+        webSockets.remove(streamId);
+        writeWebSocketData(streamId, EMPTY_BUFFER, true);
+        nettyContext.channel().flush();
+    }
+
+    private void onStreamWritabilityChanged(Http2Stream stream) {
+        Http2WebSocketChannel webSocket = webSockets.get(stream.id());
+        if (webSocket != null) {
+            boolean writable = encoder().flowController().isWritable(stream);
+            // the flow controller may be part way through writing, so the change is made once it has finished
+            nettyContext.executor().execute(() -> webSocket.setStreamWritable(writable));
+        }
+    }
+
+    void flush() {
+        nettyContext.channel().flush();
+    }
+
+    /**
+     * Gives the stream the weight that corresponds to the given RFC 9218 urgency so that the response data of more
+     * urgent streams is given a larger share of the connection.
+     */
+    private short applyUrgency(int streamId, int urgency) {
+        short weight = Http2RequestScheduler.weightForUrgency(urgency);
+        try {
+            encoder().flowController().updateDependencyTree(streamId, Http2CodecUtil.CONNECTION_STREAM_ID, weight, false);
+        } catch (Exception e) {
+            log.debug("Could not change the weight of stream " + streamId, e);
+        }
+        return weight;
+    }
+
+    /**
+     * Sends a push promise for the given path on the given client-initiated stream, and then handles the promised
+     * request with the normal handler chain as if the client had sent it.
+     * @return <code>false</code> if the client has disabled push or the parent stream cannot have pushes associated with it
+     */
+    boolean push(int parentStreamId, NettyRequestAdapter parent, String path) {
+        if (!isClientStream(parentStreamId) || !connection().remote().allowPushTo()) {
+            return false;
+        }
+        io.netty.handler.codec.http2.Http2Headers pushHeaders = new DefaultHttp2Headers()
+            .method(HttpMethod.GET.asciiName())
+            .scheme(HttpScheme.HTTPS.name())
+            .authority(parent.headers().get(HeaderNames.HOST))
+            .path(path);
+        for (CharSequence name : PUSHED_REQUEST_HEADERS) {
+            String value = parent.headers().get(name);
+            if (value != null) {
+                pushHeaders.set(name, value);
+            }
+        }
+        ChannelHandlerContext ctx = nettyContext;
+        if (ctx.executor().inEventLoop()) {
+            pushForReal(ctx, parentStreamId, pushHeaders);
+        } else {
+            ctx.executor().execute(() -> pushForReal(ctx, parentStreamId, pushHeaders));
+        }
+        return true;
+    }
+
+    private void pushForReal(ChannelHandlerContext ctx, int parentStreamId, io.netty.handler.codec.http2.Http2Headers pushHeaders) {
+        Http2Stream parentStream = connection().stream(parentStreamId);
+        if (parentStream == null || parentStream.state() != Http2Stream.State.HALF_CLOSED_REMOTE && parentStream.state() != Http2Stream.State.OPEN) {
+            log.debug("Not pushing " + pushHeaders.path() + " as the parent stream " + parentStreamId + " is no longer open");
+            return;
+        }
+        int promisedStreamId = connection().local().incrementAndGetNextStreamId();
+        ChannelPromise promise = ctx.newPromise();
+        encoder().writePushPromise(ctx, parentStreamId, promisedStreamId, pushHeaders, 0, promise);
+        if (promise.isDone() && !promise.isSuccess()) {
+            log.debug("Could not push " + pushHeaders.path() + " to the client", promise.cause());
+            return;
+        }
+        startRequest(ctx, promisedStreamId, pushHeaders, true, Http2CodecUtil.DEFAULT_PRIORITY_WEIGHT);
+    }
+
+    private static boolean isClientStream(int streamId) {
+        return streamId % 2 == 1;
     }
 
     static CharSequence compressionToUse(Headers requestHeaders) {
@@ -195,12 +454,16 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     @Override
     public void onHeadersRead(ChannelHandlerContext ctx, int streamId, io.netty.handler.codec.http2.Http2Headers headers, int streamDependency,
                               short weight, boolean exclusive, int padding, boolean endOfStream) {
-        onHeadersRead(ctx, streamId, headers, padding, endOfStream);
+        lastStreamId = streamId;
+        startRequest(ctx, streamId, headers, endOfStream, weight);
     }
 
     @Override
     public void onPriorityRead(ChannelHandlerContext ctx, int streamId, int streamDependency,
                                short weight, boolean exclusive) {
+        if (priorityScheduling) {
+            scheduler.reprioritise(streamId, weight, -1);
+        }
     }
 
     @Override
@@ -244,11 +507,21 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     @Override
     public void onUnknownFrame(ChannelHandlerContext ctx, byte frameType, int streamId,
                                Http2Flags flags, ByteBuf payload) {
+        if (frameType == PRIORITY_UPDATE_FRAME_TYPE && priorityScheduling && streamId == Http2CodecUtil.CONNECTION_STREAM_ID && payload.readableBytes() >= 4) {
+            int prioritizedStreamId = payload.getInt(payload.readerIndex()) & 0x7fffffff;
+            CharSequence priority = payload.getCharSequence(payload.readerIndex() + 4, payload.readableBytes() - 4, StandardCharsets.US_ASCII);
+            int urgency = Http2RequestScheduler.urgency(priority);
+            if (urgency != -1 && connection().stream(prioritizedStreamId) != null) {
+                short weight = applyUrgency(prioritizedStreamId, urgency);
+                scheduler.reprioritise(prioritizedStreamId, weight, urgency);
+            }
+        }
     }
 
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
-        if (evt instanceof IdleStateEvent) {
+        // open websockets are checked by the server's WebSocketLivenessManager instead
+        if (evt instanceof IdleStateEvent && webSockets.isEmpty()) {
             closeAllAndDisconnect(ctx, Http2Error.NO_ERROR);
         }
     }
@@ -305,7 +578,17 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
 
     @Override
     public Set<MuWebSocket> activeWebsockets() {
-        return Collections.emptySet();
+        if (webSockets.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<MuWebSocket> active = new HashSet<>();
+        for (Http2WebSocketChannel webSocket : webSockets.values()) {
+            MuWebSocketSessionImpl session = webSocket.attr(Http1Connection.WEBSOCKET_ATTRIBUTE).get();
+            if (session != null) {
+                active.add(session.muWebSocket);
+            }
+        }
+        return Collections.unmodifiableSet(active);
     }
 
 }
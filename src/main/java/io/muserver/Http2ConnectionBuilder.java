@@ -1,10 +1,17 @@
 package io.muserver;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http2.*;
 
 class Http2ConnectionBuilder
     extends AbstractHttp2ConnectionHandlerBuilder<Http2Connection, Http2ConnectionBuilder> {
 
+    /**
+     * The SETTINGS_ENABLE_CONNECT_PROTOCOL setting from RFC 8441, which netty does not define
+     */
+    private static final char SETTINGS_ENABLE_CONNECT_PROTOCOL = 0x8;
+
     private final MuServerImpl server;
     private final NettyHandlerAdapter nettyHandlerAdapter;
 
@@ -16,12 +23,26 @@ class Http2ConnectionBuilder
     @Override
     public Http2Connection build() {
         initialSettings().maxHeaderListSize(server.settings().maxHeadersSize);
+        if (server.settings().http2Config.webSockets) {
+            initialSettings().put(SETTINGS_ENABLE_CONNECT_PROTOCOL, Long.valueOf(1));
+        }
         return super.build();
     }
 
     @Override
     protected Http2Connection build(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder,
                                     Http2Settings initialSettings) {
+        // netty's decoder cannot be given a different headers decoder, so it is replaced with one that reads headers
+        // with a decoder that keeps netty's header validation but can also allow the :protocol pseudo-header
+        decoder.close();
+        Http2FrameReader reader = new DefaultHttp2FrameReader(
+            new MuHttp2HeadersDecoder(server.settings().maxHeadersSize, server.settings().http2Config.webSockets));
+        decoder = new DefaultHttp2ConnectionDecoder(encoder.connection(), encoder, reader, promisedRequestVerifier(),
+            isAutoAckSettingsFrame(), isAutoAckPingFrame());
+        if (decoderEnforceMaxConsecutiveEmptyDataFrames() > 0) {
+            decoder = new EmptyDataFrameLimitDecoder(decoder, decoderEnforceMaxConsecutiveEmptyDataFrames());
+        }
+
         if (server.settings().gzipEnabled) {
             // using the delegate lets us intercept the writeHeaders, which is needed for a hack
             MuGzipHttp2ConnectionEncoder delegate = new MuGzipHttp2ConnectionEncoder(encoder);
@@ -31,4 +52,67 @@ class Http2ConnectionBuilder
         frameListener(handler);
         return handler;
     }
+
+    /**
+     * Closes the connection if a client sends too many empty DATA frames in a row, which is what netty does for the
+     * decoder that this builder replaces.
+     */
+    private static class EmptyDataFrameLimitDecoder extends DecoratingHttp2ConnectionDecoder {
+        private final int maxConsecutiveEmptyFrames;
+
+        private EmptyDataFrameLimitDecoder(Http2ConnectionDecoder delegate, int maxConsecutiveEmptyFrames) {
+            super(delegate);
+            this.maxConsecutiveEmptyFrames = maxConsecutiveEmptyFrames;
+        }
+
+        @Override
+        public void frameListener(Http2FrameListener listener) {
+            super.frameListener(listener == null ? null : new EmptyDataFrameListener(listener, maxConsecutiveEmptyFrames));
+        }
+
+        @Override
+        public Http2FrameListener frameListener() {
+            Http2FrameListener listener = super.frameListener();
+            return listener instanceof EmptyDataFrameListener ? ((EmptyDataFrameListener) listener).delegate() : listener;
+        }
+    }
+
+    private static class EmptyDataFrameListener extends Http2FrameListenerDecorator {
+        private final int maxConsecutiveEmptyFrames;
+        private boolean violationDetected;
+        private int emptyDataFrames;
+
+        private EmptyDataFrameListener(Http2FrameListener listener, int maxConsecutiveEmptyFrames) {
+            super(listener);
+            this.maxConsecutiveEmptyFrames = maxConsecutiveEmptyFrames;
+        }
+
+        private Http2FrameListener delegate() {
+            return listener;
+        }
+
+        @Override
+        public int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream) throws Http2Exception {
+            if (endOfStream || data.isReadable()) {
+                emptyDataFrames = 0;
+            } else if (emptyDataFrames++ == maxConsecutiveEmptyFrames && !violationDetected) {
+                violationDetected = true;
+                throw Http2Exception.connectionError(Http2Error.ENHANCE_YOUR_CALM,
+                    "Maximum number %d of empty data frames without end_of_stream flag received", maxConsecutiveEmptyFrames);
+            }
+            return super.onDataRead(ctx, streamId, data, padding, endOfStream);
+        }
+
+        @Override
+        public void onHeadersRead(ChannelHandlerContext ctx, int streamId, io.netty.handler.codec.http2.Http2Headers headers, int padding, boolean endStream) throws Http2Exception {
+            emptyDataFrames = 0;
+            super.onHeadersRead(ctx, streamId, headers, padding, endStream);
+        }
+
+        @Override
+        public void onHeadersRead(ChannelHandlerContext ctx, int streamId, io.netty.handler.codec.http2.Http2Headers headers, int streamDependency, short weight, boolean exclusive, int padding, boolean endStream) throws Http2Exception {
+            emptyDataFrames = 0;
+            super.onHeadersRead(ctx, streamId, headers, streamDependency, weight, exclusive, padding, endStream);
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package io.muserver;
+
+import io.netty.handler.codec.http2.Http2CodecUtil;
+
+import java.util.*;
+
+/**
+ * Limits how many requests from a single HTTP2 connection are passed to the handler executor at once, queuing the
+ * rest in arrival order or, if priority scheduling is on, in order of urgency and then stream weight.
+ * <p>This class is not thread safe and must only be used on the connection's event loop.</p>
+ */
+class Http2RequestScheduler {
+
+    /**
+     * The default urgency of a request as per RFC 9218
+     */
+    static final int DEFAULT_URGENCY = 3;
+
+    private final int maxInFlight;
+    private final Set<Integer> inFlight = new HashSet<>();
+    private final Map<Integer, QueuedRequest> queuedByStream = new HashMap<>();
+    private final PriorityQueue<QueuedRequest> queue;
+    private long sequence = 0;
+
+    Http2RequestScheduler(int maxInFlight, boolean priorityScheduling) {
+        this.maxInFlight = maxInFlight;
+        Comparator<QueuedRequest> arrivalOrder = Comparator.comparingLong(q -> q.sequence);
+        this.queue = new PriorityQueue<>(priorityScheduling
+            ? Comparator.<QueuedRequest>comparingInt(q -> q.urgency)
+                .thenComparing(Comparator.<QueuedRequest>comparingInt(q -> q.weight).reversed())
+                .thenComparing(arrivalOrder)
+            : arrivalOrder);
+    }
+
+    /**
+     * Runs the dispatcher now if there is capacity; otherwise queues it until an in-flight request finishes.
+     */
+    void submit(int streamId, short weight, int urgency, AsyncContext asyncContext, Runnable dispatcher) {
+        if (maxInFlight == 0) {
+            dispatcher.run();
+        } else if (inFlight.size() < maxInFlight) {
+            inFlight.add(streamId);
+            dispatcher.run();
+        } else {
+            QueuedRequest queued = new QueuedRequest(streamId, sequence++, weight, urgency, asyncContext, dispatcher);
+            queuedByStream.put(streamId, queued);
+            queue.add(queued);
+        }
+    }
+
+    /**
+     * Called when a request completes (successfully or not) so that the next queued request can be dispatched.
+     */
+    void onFinished(int streamId) {
+        if (maxInFlight == 0) {
+            return;
+        }
+        if (inFlight.remove(streamId)) {
+            QueuedRequest next;
+            while (inFlight.size() < maxInFlight && (next = queue.poll()) != null) {
+                queuedByStream.remove(next.streamId);
+                inFlight.add(next.streamId);
+                next.dispatcher.run();
+            }
+        } else {
+            QueuedRequest queued = queuedByStream.remove(streamId);
+            if (queued != null) {
+                queue.remove(queued);
+            }
+        }
+    }
+
+    /**
+     * Changes the position in the queue of a request that has not been dispatched yet.
+     * @param weight The new weight, or <code>-1</code> to leave unchanged
+     * @param urgency The new urgency, or <code>-1</code> to leave unchanged
+     */
+    void reprioritise(int streamId, short weight, int urgency) {
+        QueuedRequest queued = queuedByStream.get(streamId);
+        if (queued != null) {
+            queue.remove(queued);
+            if (weight != -1) {
+                queued.weight = weight;
+            }
+            if (urgency != -1) {
+                queued.urgency = urgency;
+            }
+            queue.add(queued);
+        }
+    }
+
+    /**
+     * Removes all queued requests, for example when the connection closes.
+     * @return The requests that were never dispatched
+     */
+    List<AsyncContext> clearQueued() {
+        List<AsyncContext> removed = new ArrayList<>(queue.size());
+        for (QueuedRequest queuedRequest : queue) {
+            removed.add(queuedRequest.asyncContext);
+        }
+        queue.clear();
+        queuedByStream.clear();
+        return removed;
+    }
+
+    int queuedCount() {
+        return queue.size();
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the urgency from an RFC 9218 priority field value such as <code>u=1, i</code>
+     * @param priority The value of a <code>priority</code> header or <code>PRIORITY_UPDATE</code> frame, which may be null
+     * @return A value from 0 (most urgent) to 7, or -1 if no valid urgency was specified
+     */
+    static int urgency(CharSequence priority) {
+        if (priority == null) {
+            return -1;
+        }
+        String value = priority.toString();
+        int start = 0;
+        while (start < value.length()) {
+            int end = value.indexOf(',', start);
+            if (end == -1) {
+                end = value.length();
+            }
+            String member = value.substring(start, end).trim();
+            if (member.length() == 3 && member.startsWith("u=")) {
+                int u = member.charAt(2) - '0';
+                return (u >= 0 && u <= 7) ? u : -1;
+            }
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Converts an RFC 9218 urgency into an RFC 7540 stream weight, so that the flow controller's byte distributor
+     * gives more urgent streams a greater share of the connection.
+     */
+    static short weightForUrgency(int urgency) {
+        switch (urgency) {
+            case 0: return 256;
+            case 1: return 128;
+            case 2: return 64;
+            case 4: return 8;
+            case 5: return 4;
+            case 6: return 2;
+            case 7: return 1;
+            default: return Http2CodecUtil.DEFAULT_PRIORITY_WEIGHT;
+        }
+    }
+
+    private static class QueuedRequest {
+        private final int streamId;
+        private final long sequence;
+        private short weight;
+        private int urgency;
+        private final AsyncContext asyncContext;
+        private final Runnable dispatcher;
+
+        private QueuedRequest(int streamId, long sequence, short weight, int urgency, AsyncContext asyncContext, Runnable dispatcher) {
+            this.streamId = streamId;
+            this.sequence = sequence;
+            this.weight = weight;
+            this.urgency = urgency;
+            this.asyncContext = asyncContext;
+            this.dispatcher = dispatcher;
+        }
+    }
+}
@@ -6,9 +6,12 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http2.Http2ConnectionEncoder;
+import io.netty.handler.codec.http2.Http2Error;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 class Http2Response extends NettyResponseAdaptor {
     private static final Logger log = LoggerFactory.getLogger(Http2Response.class);
 
@@ -17,19 +20,90 @@ class Http2Response extends NettyResponseAdaptor {
     private final Http2ConnectionEncoder encoder;
     private final int streamId;
     private final ServerSettings settings;
+    private final Http2Connection connection;
+    private final int maxUnwrittenBytes; // -1 if writes never wait for the client
+    private final AtomicLong unwrittenBytes = new AtomicLong();
+    private final Object writabilityLock = new Object();
+    private volatile boolean awaitingWritability = false;
 
-    Http2Response(ChannelHandlerContext ctx, NettyRequestAdapter request, Http2Headers headers, Http2ConnectionEncoder encoder, int streamId, ServerSettings settings) {
+    Http2Response(ChannelHandlerContext ctx, NettyRequestAdapter request, Http2Headers headers, Http2ConnectionEncoder encoder, int streamId, ServerSettings settings, Http2Connection connection, int maxUnwrittenBytes) {
         super(request, headers);
         this.ctx = ctx;
         this.headers = headers;
         this.encoder = encoder;
         this.streamId = streamId;
         this.settings = settings;
+        this.connection = connection;
+        this.maxUnwrittenBytes = maxUnwrittenBytes;
+    }
+
+    @Override
+    public boolean push(String path) {
+        checkPushPath(path);
+        if (outputState == OutputState.FULL_SENT || outputState == OutputState.FINISHED || outputState == OutputState.DISCONNECTED) {
+            return false;
+        }
+        return connection.push(streamId, request, path);
     }
 
     @Override
     protected ChannelFuture writeToChannel(boolean isLast, ByteBuf content) {
-        return writeToChannel(ctx, encoder, streamId, content, isLast);
+        long size = content.readableBytes();
+        unwrittenBytes.addAndGet(size);
+        ChannelFuture future = writeToChannel(ctx, encoder, streamId, content, isLast);
+        future.addListener(f -> {
+            // the promise is completed by the remote flow controller once the data fits in the stream's window and is written
+            long remaining = unwrittenBytes.addAndGet(-size);
+            if (awaitingWritability && remaining <= maxUnwrittenBytes) {
+                signalWritable();
+            }
+        });
+        return future;
+    }
+
+    private void signalWritable() {
+        synchronized (writabilityLock) {
+            writabilityLock.notifyAll();
+        }
+    }
+
+    @Override
+    void onCancelled() {
+        super.onCancelled();
+        signalWritable();
+    }
+
+    long unwrittenBytes() {
+        return unwrittenBytes.get();
+    }
+
+    int maxUnwrittenBytes() {
+        return maxUnwrittenBytes;
+    }
+
+    @Override
+    protected void awaitWritable() {
+        if (maxUnwrittenBytes == -1 || unwrittenBytes.get() <= maxUnwrittenBytes || ctx.executor().inEventLoop()) {
+            return;
+        }
+        boolean interrupted = false;
+        synchronized (writabilityLock) {
+            awaitingWritability = true;
+            try {
+                while (unwrittenBytes.get() > maxUnwrittenBytes && connectionOpen() && !clientDisconnected()) {
+                    try {
+                        writabilityLock.wait(1000);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                awaitingWritability = false;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     static ChannelFuture writeToChannel(ChannelHandlerContext ctx, Http2ConnectionEncoder encoder, int streamId, ByteBuf content, boolean isLast) {
@@ -108,6 +182,15 @@ class Http2Response extends NettyResponseAdaptor {
         return ctx.channel().close();
     }
 
+    @Override
+    void abort() {
+        // only this request's stream is reset, as other requests may be using the connection
+        ctx.executor().execute(() -> {
+            encoder.writeRstStream(ctx, streamId, Http2Error.CANCEL.code(), ctx.newPromise());
+            ctx.channel().flush();
+        });
+    }
+
     @Override
     protected ChannelFuture writeLastContentMarker() {
         return writeToChannel(true, Unpooled.directBuffer(0));
@@ -6,28 +6,46 @@ import io.netty.handler.codec.http2.Http2Exception;
 import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.codec.http2.HttpConversionUtil;
 
+/**
+ * A view of an HTTP2 request as a netty HTTP1 request, for netty codecs that need one. The HTTP1 headers are only
+ * created if they are asked for.
+ */
 class Http2To1RequestAdapter implements HttpRequest {
-    private final HttpMethod nettyMeth;
+    private static final HttpVersion HTTP_2 = new HttpVersion("HTTP/2.0", true);
+    private final Method method;
     private final String uri;
     private final Http2Headers headers;
     private final int streamId;
+    private final boolean webSocketConnect;
     private HttpHeaders http1Headers;
 
-    Http2To1RequestAdapter(int streamId, HttpMethod nettyMeth, String uri, Http2Headers headers) {
+    Http2To1RequestAdapter(int streamId, Method method, String uri, Http2Headers headers, boolean webSocketConnect) {
         this.streamId = streamId;
-        this.nettyMeth = nettyMeth;
+        this.method = method;
         this.uri = uri;
         this.headers = headers;
+        this.webSocketConnect = webSocketConnect;
+    }
+
+    int streamId() {
+        return streamId;
+    }
+
+    /**
+     * @return True if this is an extended CONNECT request to open a websocket on the stream, as per RFC 8441
+     */
+    boolean isWebSocketConnect() {
+        return webSocketConnect;
     }
 
     @Override
     public HttpMethod getMethod() {
-        return nettyMeth;
+        return method();
     }
 
     @Override
     public HttpMethod method() {
-        return nettyMeth;
+        return HttpMethod.valueOf(method.name());
     }
 
     @Override
@@ -57,12 +75,12 @@ class Http2To1RequestAdapter implements HttpRequest {
 
     @Override
     public HttpVersion getProtocolVersion() {
-        return HttpVersion.valueOf("HTTP/2.0");
+        return HTTP_2;
     }
 
     @Override
     public HttpVersion protocolVersion() {
-        return new HttpVersion("HTTP/2.0", true);
+        return HTTP_2;
     }
 
     @Override
@@ -0,0 +1,230 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.PromiseNotifier;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+
+/**
+ * <p>A channel for a websocket that is on a stream of an HTTP2 connection, as per RFC 8441.</p>
+ * <p>The websocket frames are encoded and decoded by the same netty handlers used for HTTP1 websockets, with the
+ * encoded bytes sent and received as the data of the stream. The channel runs on the event loop of the connection,
+ * is only writable while the stream's flow control window has space, and only gives received bytes back to the
+ * stream's flow control window as the websocket reads them.</p>
+ */
+class Http2WebSocketChannel extends AbstractChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    /**
+     * The index of the user-defined writability flag that reflects the writability of the stream
+     */
+    private static final int STREAM_WRITABILITY_INDEX = 1;
+
+    private final Http2Connection connection;
+    private final int streamId;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final ArrayDeque<ByteBuf> inbound = new ArrayDeque<>();
+    private volatile boolean open = true;
+    private boolean readPending = false;
+    private boolean delivering = false;
+    private boolean inputEnded = false;
+
+    Http2WebSocketChannel(Channel parent, Http2Connection connection, int streamId) {
+        super(parent);
+        this.connection = connection;
+        this.streamId = streamId;
+        config.setAutoRead(false);
+        pipeline().addFirst("http2stream", new StreamWriter());
+    }
+
+    int streamId() {
+        return streamId;
+    }
+
+    /**
+     * Called on the event loop when data is received on the stream
+     */
+    void onDataRead(ByteBuf data, boolean endOfStream) {
+        if (!open) {
+            return;
+        }
+        if (data.isReadable()) {
+            inbound.add(data.retain());
+        }
+        inputEnded = endOfStream;
+        deliverInbound();
+    }
+
+    /**
+     * Called on the event loop when the writability of the stream changes
+     */
+    void setStreamWritable(boolean writable) {
+        ChannelOutboundBuffer outboundBuffer = unsafe().outboundBuffer();
+        if (outboundBuffer != null) {
+            outboundBuffer.setUserDefinedWritability(STREAM_WRITABILITY_INDEX, writable);
+        }
+    }
+
+    private void deliverInbound() {
+        if (delivering) {
+            return;
+        }
+        delivering = true;
+        try {
+            ByteBuf next;
+            while (readPending && open && (next = inbound.poll()) != null) {
+                readPending = false;
+                connection.consumeWebSocketBytes(streamId, next.readableBytes());
+                pipeline().fireChannelRead(next);
+                pipeline().fireChannelReadComplete();
+            }
+        } finally {
+            delivering = false;
+        }
+        if (inputEnded && inbound.isEmpty() && open) {
+            // the client has ended the stream, which is the equivalent of closing an HTTP1 connection
+            close();
+        }
+    }
+
+    @Override
+    protected void doBeginRead() {
+        readPending = true;
+        deliverInbound();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        // writes are sent to the stream by the StreamWriter so never reach the outbound buffer
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doClose() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        ByteBuf next;
+        while ((next = inbound.poll()) != null) {
+            next.release();
+        }
+        connection.onWebSocketClosed(streamId);
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new AbstractUnsafe() {
+            @Override
+            public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+                promise.setFailure(new UnsupportedOperationException());
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop == parent().eventLoop();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return parent().localAddress();
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return parent().remoteAddress();
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    /**
+     * The first handler in the pipeline, which writes the encoded frames as data on the stream. The write promises are
+     * completed once the HTTP2 flow controller has written the data, so the websocket does not reuse message buffers
+     * that are waiting for the stream's flow control window.
+     */
+    private class StreamWriter extends ChannelOutboundHandlerAdapter {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            if (msg instanceof ByteBuf) {
+                connection.writeWebSocketData(streamId, (ByteBuf) msg, false).addListener(new PromiseNotifier<>(promise));
+            } else {
+                ReferenceCountUtil.release(msg);
+                promise.setFailure(new UnsupportedOperationException("Unsupported message type " + msg.getClass()));
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            connection.flush();
+        }
+    }
+
+    /**
+     * The last handler in the pipeline of the stream, which passes frames and events to the websocket session in the
+     * same way as {@link Http1Connection} does for websockets on HTTP1 connections.
+     */
+    static class StreamHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame msg) {
+            MuWebSocketSessionImpl session = Http1Connection.getWebSocket(ctx);
+            if (session != null) {
+                Http1Connection.onWebSocketFrame(ctx, session, msg);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Http1Connection.onWebSocketInactive(ctx);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            Http1Connection.onWebSocketWritabilityChanged(ctx);
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (!Http1Connection.onWebSocketException(ctx, cause)) {
+                ctx.close();
+            }
+        }
+    }
+}
@@ -76,8 +76,9 @@ public interface HttpConnection {
 
     /**
      * The websockets on this connection.
-     * <p>Note that in Mu Server websockets are only on HTTP/1.1 connections and there is a 1:1 mapping between
-     * a websocket and an HTTP Connection. This means the returned set is either empty or has a size of 1.</p>
+     * <p>An HTTP/1.1 connection that has been upgraded to a websocket has a 1:1 mapping between the websocket and
+     * the connection, so the returned set is either empty or has a size of 1. HTTP/2 connections can have many
+     * websockets when {@link Http2ConfigBuilder#withWebSockets(boolean)} is enabled.</p>
      * @return A readonly set of active websockets being used on this connection
      */
     Set<MuWebSocket> activeWebsockets();
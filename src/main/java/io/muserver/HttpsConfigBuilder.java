@@ -3,6 +3,7 @@ package io.muserver;
 import javax.net.ssl.KeyManagerFactory;
 import java.io.File;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A builder for specifying HTTPS config.
@@ -110,6 +111,116 @@ public class HttpsConfigBuilder extends SSLContextBuilder {
         return (HttpsConfigBuilder) super.withProtocols(protocols);
     }
 
+    /**
+     * Specifies whether to use OpenSSL for TLS rather than the JDK's TLS implementation, if it is available.
+     * <p>OpenSSL is available when a <code>netty-tcnative</code> library, such as <code>netty-tcnative-boringssl-static</code>,
+     * is on the classpath. If it is not available, then the JDK implementation is used. The provider in use can be
+     * found with {@link SSLInfo#providerName()}.</p>
+     * <p>If this is not set, then OpenSSL is used if it is available.</p>
+     *
+     * @param openSslIfAvailable <code>true</code> to use OpenSSL when it is available; <code>false</code> to always use the JDK
+     * @return This builder
+     */
+    @Override
+    public HttpsConfigBuilder withOpenSslIfAvailable(boolean openSslIfAvailable) {
+        return (HttpsConfigBuilder) super.withOpenSslIfAvailable(openSslIfAvailable);
+    }
+
+    /**
+     * Sets the maximum number of TLS sessions that the server caches so that clients can resume them without a full handshake.
+     *
+     * @param size The maximum number of sessions, or <code>0</code> for no limit. If not set, the TLS provider's default is used.
+     * @return This builder
+     */
+    @Override
+    public HttpsConfigBuilder withSessionCacheSize(long size) {
+        return (HttpsConfigBuilder) super.withSessionCacheSize(size);
+    }
+
+    /**
+     * Sets how long a TLS session can be resumed for after it was created.
+     *
+     * @param duration The timeout, or <code>0</code> for no limit. If not set, the TLS provider's default is used.
+     * @param unit     The unit of the duration.
+     * @return This builder
+     */
+    @Override
+    public HttpsConfigBuilder withSessionTimeout(long duration, TimeUnit unit) {
+        return (HttpsConfigBuilder) super.withSessionTimeout(duration, unit);
+    }
+
+    /**
+     * Enables stateless TLS session tickets, which are encrypted with keys that are randomly generated and replaced
+     * periodically.
+     * <p>Tickets let clients resume sessions without the server needing to cache them. After each rotation the
+     * previous key is kept so that tickets issued shortly before the rotation can still be used.</p>
+     * <p>This requires OpenSSL (see {@link #withOpenSslIfAvailable(boolean)}) and is ignored when the JDK provider is
+     * used. On JDK 13 and later, the JDK provider's own stateless tickets can be enabled with the
+     * <code>jdk.tls.server.enableSessionTicketExtension</code> system property.</p>
+     *
+     * @param period How often a new key is generated, or <code>0</code> to not use server-generated ticket keys (the default).
+     * @param unit   The unit of the period.
+     * @return This builder
+     */
+    @Override
+    public HttpsConfigBuilder withSessionTicketKeyRotation(long period, TimeUnit unit) {
+        return (HttpsConfigBuilder) super.withSessionTicketKeyRotation(period, unit);
+    }
+
+    /**
+     * Checks a keystore file for changes periodically and, when it changes, swaps in a new TLS context for new
+     * connections. Existing connections are not affected.
+     * <p>This applies when the keystore was loaded with {@link #withKeystore(File)}, including in any host configs.
+     * The file is checked on a background thread. A changed file is only used if it can be loaded as a
+     * keystore with the configured passwords; otherwise a warning is logged and the current certificate continues to
+     * be used until the next valid change.</p>
+     * <p>The check interval is taken from the config the server is started with.</p>
+     *
+     * @param checkInterval How often to check the file, or <code>0</code> to not reload it (the default)
+     * @param unit          The unit of the interval
+     * @return This builder
+     */
+    @Override
+    public HttpsConfigBuilder withKeystoreReload(long checkInterval, TimeUnit unit) {
+        return (HttpsConfigBuilder) super.withKeystoreReload(checkInterval, unit);
+    }
+
+    /**
+     * Uses a different certificate for clients that ask for the given host name with Server Name Indication (SNI).
+     * <p>Clients that ask for a host name that has no host config, or that do not use SNI, are served with the
+     * certificate of this builder.</p>
+     * <p>The TLS context for a host is only created when a client first asks for it. The most recently used contexts
+     * are cached (see {@link #withHostConfigCacheSize(int)}).</p>
+     * <p>To change the certificate of some hosts while the server is running, pass a new config to
+     * {@link MuServer#changeHttpsConfig(HttpsConfigBuilder)}. Hosts that are given the same <code>hostConfig</code>
+     * instance as before keep their cached contexts, so only the changed hosts are reloaded.</p>
+     *
+     * @param hostname   A host name such as <code>www.example.org</code>, or a wildcard such as <code>*.example.org</code>
+     *                   which matches a single label in place of the <code>*</code>. Exact names take precedence
+     *                   over wildcards.
+     * @param hostConfig The HTTPS config for the host. Its protocols, ciphers and other settings are used for connections
+     *                   to the host.
+     * @return This builder
+     */
+    public HttpsConfigBuilder withHostConfig(String hostname, HttpsConfigBuilder hostConfig) {
+        addHostConfig(hostname, hostConfig);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of TLS contexts for the host configs added with {@link #withHostConfig(String, HttpsConfigBuilder)}
+     * that are kept in memory. When the limit is reached, the least recently used one is discarded and re-created
+     * if it is needed again.
+     * <p>The default is 1000.</p>
+     *
+     * @param size The maximum number of host contexts to cache
+     * @return This builder
+     */
+    public HttpsConfigBuilder withHostConfigCacheSize(int size) {
+        setHostConfigCacheSize(size);
+        return this;
+    }
+
     /**
      * Creates an SSL config builder that will serve HTTPS over a self-signed SSL cert for the localhost domain.
      * <p>As no clients should trust this cert, this should be used only for testing purposes.</p>
@@ -0,0 +1,89 @@
+package io.muserver;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Calls an action when something has had no activity for a period, using a timer that can be shared by many
+ * idle timeouts.</p>
+ * <p>The owner only records the time of its last activity, so activity never touches the timer. When the timeout
+ * expires it checks that time and, if there has been activity since it was scheduled, schedules itself again for the
+ * remaining time, so a tick of the timer only does work for owners that are idle or have been active.</p>
+ * <p>The timeout stops after calling the action, which should call {@link #start()} once it has dealt with the idle
+ * period to keep checking.</p>
+ */
+class IdleTimeout implements TimerTask {
+
+    private final HashedWheelTimer timer;
+    private final long periodNanos;
+    private final LongSupplier lastActivityNanos;
+    private final Consumer<IdleTimeout> onIdle;
+    private volatile Timeout timeout;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param timer             The timer to schedule on
+     * @param periodNanos       The time without activity after which the action is called
+     * @param lastActivityNanos Gets the {@link System#nanoTime()} of the last activity, called each time the timeout expires
+     * @param onIdle            The action to call on the timer thread when the period has passed without activity
+     */
+    IdleTimeout(HashedWheelTimer timer, long periodNanos, LongSupplier lastActivityNanos, Consumer<IdleTimeout> onIdle) {
+        this.timer = timer;
+        this.periodNanos = periodNanos;
+        this.lastActivityNanos = lastActivityNanos;
+        this.onIdle = onIdle;
+    }
+
+    /**
+     * Starts waiting for a full period, unless this has been cancelled
+     */
+    void start() {
+        schedule(periodNanos);
+    }
+
+    private void schedule(long delayNanos) {
+        if (!cancelled) {
+            try {
+                timeout = timer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+                if (cancelled) {
+                    timeout.cancel();
+                }
+            } catch (IllegalStateException e) {
+                // the timer has been stopped because the server is shutting down
+            }
+        }
+    }
+
+    /**
+     * Stops this timeout. It cannot be started again.
+     */
+    void cancel() {
+        cancelled = true;
+        Timeout current = this.timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+        if (cancelled) {
+            return;
+        }
+        long remaining = periodNanos - (System.nanoTime() - lastActivityNanos.getAsLong());
+        if (remaining > 0) {
+            schedule(remaining);
+        } else {
+            onIdle.accept(this);
+        }
+    }
+}
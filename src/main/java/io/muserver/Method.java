@@ -1,5 +1,10 @@
 package io.muserver;
 
+import io.netty.util.AsciiString;
+
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * An HTTP Method
  */
@@ -7,8 +12,29 @@ public enum Method {
 
 	GET, POST, HEAD, OPTIONS, PUT, DELETE, TRACE, CONNECT, PATCH;
 
+	private static final Map<AsciiString, Method> byAsciiName = new HashMap<>();
+	static {
+		for (Method method : values()) {
+			byAsciiName.put(AsciiString.cached(method.name()), method);
+		}
+	}
+
 	static Method fromNetty(io.netty.handler.codec.http.HttpMethod method) {
 		return Method.valueOf(method.name());
 	}
 
+	/**
+	 * Looks up a method from the value of an HTTP2 <code>:method</code> pseudo-header without creating any strings.
+	 * @param name The method name
+	 * @return The method, or <code>null</code> if it is not a supported method
+	 */
+	static Method fromHttp2(CharSequence name) {
+		if (name == null) {
+			return null;
+		}
+		AsciiString asciiName = AsciiString.of(name);
+		Method method = byAsciiName.get(asciiName);
+		return method != null ? method : byAsciiName.get(asciiName.toUpperCase());
+	}
+
 }
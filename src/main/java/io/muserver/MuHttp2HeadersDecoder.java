@@ -0,0 +1,112 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersDecoder;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.AsciiString;
+
+import static io.netty.handler.codec.http2.Http2Headers.PseudoHeaderName.getPseudoHeader;
+import static io.netty.handler.codec.http2.Http2Headers.PseudoHeaderName.hasPseudoHeaderFormat;
+
+/**
+ * A headers decoder that validates request headers like netty does, but which can also allow the <code>:protocol</code>
+ * pseudo-header from RFC 8441 that netty does not know about.
+ * <p>Netty's HPACK decoder rejects any pseudo-header it does not know when validation is on, so its HPACK-level
+ * validation is turned off and the same rules are applied here instead, as each header is decoded so that the order
+ * the client sent them in is known. Duplicate pseudo-headers and connection-specific headers are also rejected, as
+ * required by RFC 7540 section 8.1.2. Header names are still validated by netty's {@link DefaultHttp2Headers}.</p>
+ * <p>A request that breaks these rules is a stream error, so the stream is reset with a <code>PROTOCOL_ERROR</code>.</p>
+ */
+class MuHttp2HeadersDecoder extends DefaultHttp2HeadersDecoder {
+
+    static final AsciiString PROTOCOL_PSEUDO_HEADER = AsciiString.cached(":protocol");
+
+    private final boolean allowProtocolPseudoHeader;
+
+    /**
+     * @param maxHeaderListSize         The maximum size of a decoded header list
+     * @param allowProtocolPseudoHeader Whether the <code>:protocol</code> pseudo-header is allowed
+     */
+    MuHttp2HeadersDecoder(long maxHeaderListSize, boolean allowProtocolPseudoHeader) {
+        super(false, maxHeaderListSize, -1);
+        this.allowProtocolPseudoHeader = allowProtocolPseudoHeader;
+    }
+
+    @Override
+    public Http2Headers decodeHeaders(int streamId, ByteBuf headerBlock) throws Http2Exception {
+        ValidatingHeaders headers = (ValidatingHeaders) super.decodeHeaders(streamId, headerBlock);
+        if (headers.error != null) {
+            throw Http2Exception.streamError(streamId, Http2Error.PROTOCOL_ERROR, headers.error);
+        }
+        return headers;
+    }
+
+    @Override
+    protected Http2Headers newHeaders() {
+        return new ValidatingHeaders(numberOfHeadersGuess(), allowProtocolPseudoHeader);
+    }
+
+    /**
+     * Headers that record the first rule broken while they are added rather than throwing, because the HPACK decoder
+     * must finish decoding the block to keep its dynamic table in sync with the client's.
+     */
+    private static class ValidatingHeaders extends DefaultHttp2Headers {
+        private final boolean allowProtocolPseudoHeader;
+        private boolean seenRegularHeader = false;
+        private String error;
+
+        private ValidatingHeaders(int sizeHint, boolean allowProtocolPseudoHeader) {
+            super(true, sizeHint);
+            this.allowProtocolPseudoHeader = allowProtocolPseudoHeader;
+        }
+
+        @Override
+        public Http2Headers add(CharSequence name, CharSequence value) {
+            if (error == null) {
+                error = validate(name, value);
+            }
+            return super.add(name, value);
+        }
+
+        private String validate(CharSequence name, CharSequence value) {
+            if (hasPseudoHeaderFormat(name)) {
+                if (seenRegularHeader) {
+                    return "Pseudo-header field '" + name + "' found after regular header.";
+                }
+                Http2Headers.PseudoHeaderName pseudoHeader = getPseudoHeader(name);
+                boolean isProtocol = pseudoHeader == null && allowProtocolPseudoHeader && PROTOCOL_PSEUDO_HEADER.contentEquals(name);
+                if (pseudoHeader == null && !isProtocol) {
+                    return "Invalid HTTP/2 pseudo-header '" + name + "' encountered.";
+                }
+                if (pseudoHeader != null && !pseudoHeader.isRequestOnly()) {
+                    return "Response pseudo-header '" + name + "' found in a request.";
+                }
+                if (contains(name)) {
+                    return "Duplicate HTTP/2 pseudo-header '" + name + "' encountered.";
+                }
+            } else {
+                seenRegularHeader = true;
+                if (isConnectionSpecific(name)) {
+                    return "Connection-specific header '" + name + "' is not allowed in HTTP/2.";
+                }
+                if (HttpHeaderNames.TE.contentEqualsIgnoreCase(name) && !HttpHeaderValues.TRAILERS.contentEqualsIgnoreCase(value)) {
+                    return "The 'te' header can only have the value 'trailers' in HTTP/2.";
+                }
+            }
+            return null;
+        }
+
+        private static boolean isConnectionSpecific(CharSequence name) {
+            return HttpHeaderNames.CONNECTION.contentEqualsIgnoreCase(name)
+                || HttpHeaderNames.KEEP_ALIVE.contentEqualsIgnoreCase(name)
+                || HttpHeaderNames.PROXY_CONNECTION.contentEqualsIgnoreCase(name)
+                || HttpHeaderNames.TRANSFER_ENCODING.contentEqualsIgnoreCase(name)
+                || HttpHeaderNames.UPGRADE.contentEqualsIgnoreCase(name);
+        }
+    }
+}
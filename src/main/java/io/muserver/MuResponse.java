@@ -115,4 +115,17 @@ public interface MuResponse {
      * @return Returns <code>true</code> if any data has been sent to the client; otherwise <code>false</code>.
      */
     boolean hasStartedSendingData();
+
+    /**
+     * <p>Uses HTTP/2 server push to send the resource at the given path to the client before the client asks for it.</p>
+     * <p>A push promise is sent to the client and then a <code>GET</code> request for the path is run through the
+     * normal handler chain on a new stream, with the <code>Accept-Encoding</code>, <code>Accept-Language</code>,
+     * <code>User-Agent</code>, <code>Cookie</code> and <code>Authorization</code> headers copied from this request.</p>
+     * <p>This should be called before the response body is sent. It has no effect for HTTP/1 requests, requests that
+     * were themselves pushed, or when the client has disabled server push.</p>
+     * @param path The absolute path (and optional querystring) of the resource to push, for example <code>/css/site.css</code>
+     * @return <code>true</code> if a push promise will be sent to the client; otherwise <code>false</code>
+     * @throws IllegalArgumentException Thrown if the path is null or does not start with a <code>/</code>
+     */
+    boolean push(String path);
 }
\ No newline at end of file
@@ -13,10 +13,12 @@ import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseEncoder;
 import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SniHandler;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +57,7 @@ public class MuServerBuilder {
     private Http2Config http2Config;
     private long idleTimeoutMills = TimeUnit.MINUTES.toMillis(5);
     private ExecutorService executor;
+    private ExecutorService handshakeExecutor;
     private long maxRequestSize = 24 * 1024 * 1024;
     private List<ResponseCompleteListener> responseCompleteListeners;
     private HashedWheelTimer wheelTimer;
@@ -231,6 +234,24 @@ public class MuServerBuilder {
         return withHttp2Config(http2Config.build());
     }
 
+    /**
+     * <p>Sets an executor to run the CPU-intensive parts of TLS handshakes on, such as key exchange and signing.</p>
+     * <p>By default these run on the connection's event loop, which means that a burst of new HTTPS connections can
+     * delay the reading and writing of requests on established connections that share the event loop. Using a
+     * separate executor keeps the event loops free for established connections.</p>
+     * <p>Use a bounded executor so that handshakes are shed during a reconnect storm: if the executor
+     * rejects a task, the handshake fails and the connection is closed. The number of handshake tasks waiting for
+     * the executor is available from {@link SSLInfo#queuedHandshakeTasks()}.</p>
+     * <p>The executor is shut down when the server stops.</p>
+     *
+     * @param handshakeExecutor The executor to use, or <code>null</code> to run handshakes on the event loops (the default)
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withHandshakeExecutor(ExecutorService handshakeExecutor) {
+        this.handshakeExecutor = handshakeExecutor;
+        return this;
+    }
+
     /**
      * Sets the thread executor service to run requests on. By default {@link Executors#newCachedThreadPool()}
      * is used.
@@ -469,7 +490,8 @@ public class MuServerBuilder {
             throw new IllegalArgumentException("No ports were configured. Please call MuServerBuilder.withHttpPort(int) or MuServerBuilder.withHttpsPort(int)");
         }
 
-        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, idleTimeoutMills, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip, rateLimiters);
+        Http2Config http2Config = this.http2Config != null ? this.http2Config : Http2ConfigBuilder.http2Config().build();
+        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, idleTimeoutMills, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip, rateLimiters, http2Config);
 
         ExecutorService handlerExecutor = this.executor;
         if (handlerExecutor == null) {
@@ -481,6 +503,10 @@ public class MuServerBuilder {
         NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
         NioEventLoopGroup workerGroup = new NioEventLoopGroup();
         List<Channel> channels = new ArrayList<>();
+        List<ExecutorService> backgroundExecutors = new ArrayList<>();
+
+        // used for websocket keep-alives and SSE heartbeats; the thread is only started when first needed
+        HashedWheelTimer serverTimer = new HashedWheelTimer(new DefaultThreadFactory("mu-server-timer", true), 10, TimeUnit.MILLISECONDS);
 
         ExecutorService finalHandlerExecutor = handlerExecutor;
         Runnable shutdown = () -> {
@@ -488,10 +514,17 @@ public class MuServerBuilder {
                 if (wheelTimer != null) {
                     wheelTimer.stop();
                 }
+                serverTimer.stop();
                 for (Channel channel : channels) {
                     channel.close().sync();
                 }
                 finalHandlerExecutor.shutdown();
+                if (handshakeExecutor != null) {
+                    handshakeExecutor.shutdown();
+                }
+                for (ExecutorService backgroundExecutor : backgroundExecutors) {
+                    backgroundExecutor.shutdownNow();
+                }
                 bossGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
                 workerGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
 
@@ -505,8 +538,9 @@ public class MuServerBuilder {
             MuStatsImpl stats = new MuStatsImpl(trafficShapingHandler.trafficCounter());
             SslContextProvider sslContextProvider = null;
 
-            boolean http2Enabled = http2Config != null && http2Config.enabled;
-            MuServerImpl server = new MuServerImpl(stats, http2Enabled, settings);
+            boolean http2Enabled = http2Config.enabled;
+            MuServerImpl server = new MuServerImpl(stats, http2Enabled, settings,
+                new WebSocketLivenessManager(serverTimer, stats), new SseHeartbeatScheduler(serverTimer));
 
             Channel httpChannel = httpPort < 0 ? null : createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpPort, null, trafficShapingHandler, server, false, idleTimeoutMills);
             Channel httpsChannel;
@@ -514,9 +548,24 @@ public class MuServerBuilder {
                 httpsChannel = null;
             } else {
                 SSLContextBuilder toUse = this.sslContextBuilder != null ? this.sslContextBuilder : HttpsConfigBuilder.unsignedLocalhost();
-                SslContext nettySslContext = toUse.toNettySslContext(http2Enabled);
-                log.debug("SSL Context is " + nettySslContext);
-                sslContextProvider = new SslContextProvider(nettySslContext);
+                ExecutorService hostContextExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("mu-ssl-context", true));
+                backgroundExecutors.add(hostContextExecutor);
+                sslContextProvider = new SslContextProvider(toUse, http2Enabled, handshakeExecutor, hostContextExecutor);
+                long ticketKeyRotationMillis = toUse.ticketKeyRotationMillis();
+                if (ticketKeyRotationMillis > 0) {
+                    SslContextProvider provider = sslContextProvider;
+                    if (!provider.supportsTicketKeys()) {
+                        log.info("Session ticket key rotation is only used with OpenSSL, which is not being used");
+                    }
+                    provider.rotateTicketKeys();
+                    workerGroup.scheduleAtFixedRate(provider::rotateTicketKeys, ticketKeyRotationMillis, ticketKeyRotationMillis, TimeUnit.MILLISECONDS);
+                }
+                long keystoreReloadMillis = toUse.keystoreReloadMillis();
+                if (keystoreReloadMillis > 0) {
+                    ScheduledExecutorService keystoreReloader = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("mu-keystore-reload", true));
+                    backgroundExecutors.add(keystoreReloader);
+                    keystoreReloader.scheduleWithFixedDelay(sslContextProvider::reloadChangedKeystores, keystoreReloadMillis, keystoreReloadMillis, TimeUnit.MILLISECONDS);
+                }
                 httpsChannel = createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpsPort, sslContextProvider, trafficShapingHandler, server, http2Enabled, idleTimeoutMills);
             }
             URI uri = null;
@@ -564,11 +613,29 @@ public class MuServerBuilder {
                     p.addLast("idle", new IdleStateHandler(0, 0, idleTimeoutMills, TimeUnit.MILLISECONDS));
                     p.addLast(trafficShapingHandler);
                     if (usesSsl) {
-                        SslHandler sslHandler = sslContextProvider.get().newHandler(socketChannel.alloc());
-                        SSLParameters params = sslHandler.engine().getSSLParameters();
-                        params.setUseCipherSuitesOrder(true);
-                        sslHandler.engine().setSSLParameters(params);
-                        p.addLast("ssl", sslHandler);
+                        long acceptedAt = System.currentTimeMillis();
+                        long acceptedAtNanos = System.nanoTime();
+                        SslContextProvider.Contexts contexts = sslContextProvider.contexts();
+                        if (contexts.sniMapping == null) {
+                            SslHandler sslHandler = sslContextProvider.newHandler(contexts.defaultContext, socketChannel.alloc());
+                            p.addLast("ssl", configureSslHandler(sslHandler, sslContextProvider, acceptedAt, acceptedAtNanos));
+                        } else {
+                            p.addLast("ssl", new SniHandler(contexts.sniMapping) {
+                                @Override
+                                protected void replaceHandler(ChannelHandlerContext ctx, String hostname, SslContext sslContext) {
+                                    SslHandler sslHandler = null;
+                                    try {
+                                        sslHandler = configureSslHandler(sslContextProvider.newHandler(sslContext, ctx.alloc()), sslContextProvider, acceptedAt, acceptedAtNanos);
+                                        ctx.pipeline().replace(this, "ssl", sslHandler);
+                                        sslHandler = null;
+                                    } finally {
+                                        if (sslHandler != null) {
+                                            ReferenceCountUtil.safeRelease(sslHandler.engine());
+                                        }
+                                    }
+                                }
+                            });
+                        }
                     }
                     boolean addAlpn = http2 && usesSsl;
                     if (addAlpn) {
@@ -591,6 +658,18 @@ public class MuServerBuilder {
         return bound.sync().channel();
     }
 
+    private static SslHandler configureSslHandler(SslHandler sslHandler, SslContextProvider sslContextProvider, long acceptedAt, long acceptedAtNanos) {
+        SSLParameters params = sslHandler.engine().getSSLParameters();
+        params.setUseCipherSuitesOrder(true);
+        sslHandler.engine().setSSLParameters(params);
+        sslHandler.handshakeFuture().addListener(f -> {
+            if (f.isSuccess()) {
+                sslContextProvider.onHandshakeComplete(sslHandler.engine().getSession(), acceptedAt, System.nanoTime() - acceptedAtNanos);
+            }
+        });
+        return sslHandler;
+    }
+
     static void setupHttp1Pipeline(ChannelPipeline p, NettyHandlerAdapter nettyHandlerAdapter, MuServerImpl server, String proto) {
         p.addLast("decoder", new HttpRequestDecoder(server.settings().maxUrlSize + LENGTH_OF_METHOD_AND_PROTOCOL, server.settings().maxHeadersSize, 8192));
         p.addLast("encoder", new HttpResponseEncoder() {
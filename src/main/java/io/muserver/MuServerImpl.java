@@ -13,6 +13,8 @@ class MuServerImpl implements MuServer {
     private URI httpsUri;
     private Runnable shutdown;
     final MuStatsImpl stats;
+    final WebSocketLivenessManager webSocketLiveness;
+    final SseHeartbeatScheduler sseHeartbeats;
     private InetSocketAddress address;
     private SslContextProvider sslContextProvider;
     private final boolean http2Enabled;
@@ -30,8 +32,10 @@ class MuServerImpl implements MuServer {
         this.shutdown = shutdown;
     }
 
-    MuServerImpl(MuStatsImpl stats, boolean http2Enabled, ServerSettings settings) {
+    MuServerImpl(MuStatsImpl stats, boolean http2Enabled, ServerSettings settings, WebSocketLivenessManager webSocketLiveness, SseHeartbeatScheduler sseHeartbeats) {
         this.stats = stats;
+        this.webSocketLiveness = webSocketLiveness;
+        this.sseHeartbeats = sseHeartbeats;
         this.http2Enabled = http2Enabled;
         this.settings = settings;
     }
@@ -115,7 +119,7 @@ class MuServerImpl implements MuServer {
     public void changeSSLContext(SSLContextBuilder newSSLContext) {
         Mutils.notNull("newSSLContext", newSSLContext);
         try {
-            sslContextProvider.set(newSSLContext.toNettySslContext(http2Enabled));
+            sslContextProvider.set(newSSLContext, http2Enabled);
         } catch (Exception e) {
             throw new MuException("Error while changing SSL Certificate. The old one will still be used.", e);
         }
@@ -49,6 +49,25 @@ public interface MuStats {
      */
     long failedToConnect();
 
+    /**
+     * @return The number of times the server has checked whether a websocket has been idle for its read timeout or ping
+     * period. All websockets are checked by a single timer that is shared by the server, so this shows the cost of
+     * websocket keep-alives.
+     */
+    long webSocketLivenessChecks();
+
+    /**
+     * @return The number of pings sent to websockets because nothing had been sent to them within the period set with
+     * {@link WebSocketHandlerBuilder#withPingSentAfterNoWritesFor(int, java.util.concurrent.TimeUnit)}
+     */
+    long webSocketPingsSent();
+
+    /**
+     * @return The number of times websockets have not received any messages within the timeout set with
+     * {@link WebSocketHandlerBuilder#withIdleReadTimeout(long, java.util.concurrent.TimeUnit)}
+     */
+    long webSocketIdleTimeouts();
+
     /**
      * @return The requests that are currently in-flight
      */
@@ -15,6 +15,9 @@ class MuStatsImpl implements MuStats {
     private final AtomicLong invalidHttpRequests = new AtomicLong(0);
     private final AtomicLong rejectedDueToOverload = new AtomicLong(0);
     private final AtomicLong failedToConnect = new AtomicLong(0);
+    private final AtomicLong webSocketLivenessChecks = new AtomicLong(0);
+    private final AtomicLong webSocketPingsSent = new AtomicLong(0);
+    private final AtomicLong webSocketIdleTimeouts = new AtomicLong(0);
     private final Set<MuRequest> activeRequests = ConcurrentHashMap.newKeySet();
 
     MuStatsImpl(TrafficCounter trafficCounter) {
@@ -61,6 +64,21 @@ class MuStatsImpl implements MuStats {
         return failedToConnect.get();
     }
 
+    @Override
+    public long webSocketLivenessChecks() {
+        return webSocketLivenessChecks.get();
+    }
+
+    @Override
+    public long webSocketPingsSent() {
+        return webSocketPingsSent.get();
+    }
+
+    @Override
+    public long webSocketIdleTimeouts() {
+        return webSocketIdleTimeouts.get();
+    }
+
     @Override
     public Set<MuRequest> activeRequests() {
         return Collections.unmodifiableSet(activeRequests);
@@ -88,6 +106,18 @@ class MuStatsImpl implements MuStats {
         failedToConnect.incrementAndGet();
     }
 
+    void onWebSocketLivenessCheck() {
+        webSocketLivenessChecks.incrementAndGet();
+    }
+
+    void onWebSocketPingSent() {
+        webSocketPingsSent.incrementAndGet();
+    }
+
+    void onWebSocketIdleTimeout() {
+        webSocketIdleTimeouts.incrementAndGet();
+    }
+
     void onConnectionOpened() {
         activeConnections.incrementAndGet();
     }
@@ -39,6 +39,49 @@ public interface MuWebSocket {
      */
     void onBinary(ByteBuffer buffer, DoneCallback onComplete) throws Exception;
 
+    /**
+     * <p>Called when part of a fragmented text message is received from the client.</p>
+     * <p>This is only called if partial messages are enabled with {@link WebSocketHandlerBuilder#withPartialMessages(boolean)}.
+     * Otherwise, fragments are joined by the server and the whole message is passed to {@link #onText(String, DoneCallback)}.
+     * Messages that are not fragmented are always passed to {@link #onText(String, DoneCallback)}.</p>
+     * <p>The next fragment is not read until <code>onComplete</code> is called, so the client is slowed down if
+     * fragments are received faster than they can be processed.</p>
+     * @param message The text of this fragment. Characters split between fragments are delivered with the later fragment.
+     * @param isLast <code>true</code> if this is the final fragment of the message
+     * @param onComplete A callback that must be run with <code>onComplete.run()</code> when the fragment has been processed.
+     * @throws Exception Any exceptions thrown will result in the onError method being called with the thrown exception being used as the <code>cause</code> parameter.
+     */
+    default void onPartialText(String message, boolean isLast, DoneCallback onComplete) throws Exception {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support partial text messages");
+    }
+
+    /**
+     * <p>Called when part of a fragmented binary message is received from the client.</p>
+     * <p>This is only called if partial messages are enabled with {@link WebSocketHandlerBuilder#withPartialMessages(boolean)}.
+     * Otherwise, fragments are joined by the server and the whole message is passed to {@link #onBinary(ByteBuffer, DoneCallback)}.
+     * Messages that are not fragmented are always passed to {@link #onBinary(ByteBuffer, DoneCallback)}.</p>
+     * <p>The next fragment is not read until <code>onComplete</code> is called, so the client is slowed down if
+     * fragments are received faster than they can be processed.</p>
+     * @param buffer The bytes of this fragment.
+     * @param isLast <code>true</code> if this is the final fragment of the message
+     * @param onComplete A callback that must be run with <code>onComplete.run()</code> when the byte buffer is no longer needed. Failure to call this will result in memory leaks.
+     * @throws Exception Any exceptions thrown will result in the onError method being called with the thrown exception being used as the <code>cause</code> parameter.
+     */
+    default void onPartialBinary(ByteBuffer buffer, boolean isLast, DoneCallback onComplete) throws Exception {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support partial binary messages");
+    }
+
+    /**
+     * <p>Called when the session changes between being able to accept more messages without queuing them, and not.</p>
+     * <p>A session becomes unwritable when the client is not reading messages as quickly as they are sent. Pausing
+     * sends while unwritable keeps the memory used by the session small. See {@link MuWebSocketSession#isWritable()}
+     * and {@link WebSocketHandlerBuilder#withMaxQueuedBytes(long)}.</p>
+     * @param isWritable The new writability of the session
+     * @throws Exception Any exceptions thrown will result in the onError method being called with the thrown exception being used as the <code>cause</code> parameter.
+     */
+    default void onWritabilityChanged(boolean isWritable) throws Exception {
+    }
+
     /**
      * Called when the client has closed the connection.
      * @param statusCode The closure code. See <a href="https://tools.ietf.org/html/rfc6455#section-7.4">https://tools.ietf.org/html/rfc6455#section-7.4</a>
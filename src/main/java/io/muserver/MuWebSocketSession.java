@@ -28,6 +28,32 @@ public interface MuWebSocketSession {
      */
     void sendBinary(ByteBuffer message, DoneCallback doneCallback);
 
+    /**
+     * <p>Sends part of a text message to the client asynchronously, so that a large message can be streamed as a
+     * series of fragments rather than being held in memory all at once.</p>
+     * <p>The first call with <code>isLast</code> set to <code>false</code> starts a fragmented message, and the message
+     * ends with the next call where <code>isLast</code> is <code>true</code>. Other text or binary messages cannot be
+     * sent until the fragmented message ends, although pings and pongs can be.</p>
+     * @param message The text of this fragment. This should not end with the first half of a surrogate pair.
+     * @param isLast <code>true</code> if this is the final fragment of the message
+     * @param doneCallback The callback to call when the write succeeds or fails. Waiting for this before sending the
+     *                     next fragment ensures that fragments are not sent more quickly than the client reads them.
+     */
+    void sendText(String message, boolean isLast, DoneCallback doneCallback);
+
+    /**
+     * <p>Sends part of a binary message to the client asynchronously, so that a large message can be streamed as a
+     * series of fragments rather than being held in memory all at once.</p>
+     * <p>The first call with <code>isLast</code> set to <code>false</code> starts a fragmented message, and the message
+     * ends with the next call where <code>isLast</code> is <code>true</code>. Other text or binary messages cannot be
+     * sent until the fragmented message ends, although pings and pongs can be.</p>
+     * @param message The bytes of this fragment
+     * @param isLast <code>true</code> if this is the final fragment of the message
+     * @param doneCallback The callback to call when the write succeeds or fails. Waiting for this before sending the
+     *                     next fragment ensures that fragments are not sent more quickly than the client reads them.
+     */
+    void sendBinary(ByteBuffer message, boolean isLast, DoneCallback doneCallback);
+
     /**
      * Sends a ping message to the client, which is used for keeping sockets alive.
      * @param payload The message to send.
@@ -64,4 +90,21 @@ public interface MuWebSocketSession {
      * @return The client's address
      */
     InetSocketAddress remoteAddress();
+
+    /**
+     * Returns <code>true</code> if messages sent now would be written straight away rather than being queued until
+     * the client reads earlier messages. {@link MuWebSocket#onWritabilityChanged(boolean)} is called when this changes.
+     * @return The writability of the session
+     */
+    boolean isWritable();
+
+    /**
+     * @return The number of bytes of messages that have been sent but not yet written to the connection
+     */
+    long queuedBytes();
+
+    /**
+     * @return The number of messages dropped because the outbound queue was full, when using {@link WebSocketQueueFullAction#DROP_OLDEST}
+     */
+    long droppedMessages();
 }
@@ -2,38 +2,201 @@ package io.muserver;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 class MuWebSocketSessionImpl implements MuWebSocketSession {
     static final byte[] PING_BYTES = {'m', 'u'};
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
     private static final Logger log = LoggerFactory.getLogger(MuWebSocketSessionImpl.class);
 
     private volatile boolean closeSent = false;
+    private int outgoingFragmentedOpcode = 0; // guarded by writeLock
+    private int incomingFragmentedOpcode = 0;
+    private CharsetDecoder textDecoder;
+    private ByteBuffer textRemainder;
 
     private final ChannelHandlerContext ctx;
     final MuWebSocket muWebSocket;
+    private final boolean extensionsActive;
+    private final long maxQueuedBytes;
+    private final WebSocketQueueFullAction queueFullAction;
+
+    private final Object writeLock = new Object();
+    private final ArrayDeque<PendingWrite> pending = new ArrayDeque<>();
+    private long pendingBytes = 0; // guarded by writeLock
+    private boolean reportedWritable = true; // guarded by writeLock
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile long lastWriteNanos = lastReadNanos;
 
-    MuWebSocketSessionImpl(ChannelHandlerContext ctx, MuWebSocket muWebSocket) {
+    MuWebSocketSessionImpl(ChannelHandlerContext ctx, MuWebSocket muWebSocket, WebSocketSettings settings, boolean extensionsActive) {
         this.ctx = ctx;
         this.muWebSocket = muWebSocket;
+        this.extensionsActive = extensionsActive;
+        this.maxQueuedBytes = settings.maxQueuedBytes;
+        this.queueFullAction = settings.queueFullAction;
+        ctx.channel().closeFuture().addListener(future -> {
+            List<Runnable> afterUnlock = new ArrayList<>();
+            synchronized (writeLock) {
+                failPendingWrites(new ClientDisconnectedException(), afterUnlock);
+            }
+            runAll(afterUnlock);
+        });
     }
 
     @Override
     public void sendText(String message, DoneCallback doneCallback) {
-        writeAsync(new TextWebSocketFrame(message), doneCallback);
+        writeData(OPCODE_TEXT, Unpooled.copiedBuffer(message, UTF_8), false, true, doneCallback);
     }
 
     @Override
     public void sendBinary(ByteBuffer message, DoneCallback doneCallback) {
-        ByteBuf bb = Unpooled.wrappedBuffer(message);
-        writeAsync(new BinaryWebSocketFrame(bb), doneCallback);
+        writeData(OPCODE_BINARY, Unpooled.wrappedBuffer(message), false, true, doneCallback);
+    }
+
+    @Override
+    public void sendText(String message, boolean isLast, DoneCallback doneCallback) {
+        writeData(OPCODE_TEXT, Unpooled.copiedBuffer(message, UTF_8), true, isLast, doneCallback);
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer message, boolean isLast, DoneCallback doneCallback) {
+        writeData(OPCODE_BINARY, Unpooled.wrappedBuffer(message), true, isLast, doneCallback);
+    }
+
+    /**
+     * Queues a text or binary frame. The state of any fragmented message being sent is checked and updated while
+     * holding the write lock, along with queueing the frame, so that concurrent senders can never interleave the
+     * frames of two messages.
+     */
+    private void writeData(int opcode, ByteBuf content, boolean isFragment, boolean isLast, DoneCallback doneCallback) {
+        int size = content.readableBytes();
+        List<Runnable> afterUnlock = new ArrayList<>(1);
+        synchronized (writeLock) {
+            try {
+                // any wait for space happens before the fragment state changes, as the lock is released while waiting
+                awaitQueueSpace(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                content.release();
+                afterUnlock.add(() -> invokeCallback(doneCallback, e));
+            }
+            if (afterUnlock.isEmpty()) {
+                int inProgress = outgoingFragmentedOpcode;
+                WebSocketFrame frame = null;
+                if (closeSent) {
+                    afterUnlock.add(() -> invokeCallback(doneCallback, new IllegalStateException("Writes are not allowed as the socket has already been closed")));
+                } else if (!isFragment) {
+                    if (inProgress == 0) {
+                        frame = opcode == OPCODE_TEXT ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content);
+                    }
+                } else if (inProgress == 0) {
+                    frame = opcode == OPCODE_TEXT ? new TextWebSocketFrame(isLast, 0, content) : new BinaryWebSocketFrame(isLast, 0, content);
+                    outgoingFragmentedOpcode = isLast ? 0 : opcode;
+                } else if (inProgress == opcode) {
+                    frame = new ContinuationWebSocketFrame(isLast, 0, content);
+                    if (isLast) {
+                        outgoingFragmentedOpcode = 0;
+                    }
+                }
+                if (frame != null) {
+                    // only whole messages can be dropped, as dropping one fragment would corrupt the rest of its message
+                    boolean droppable = isLast && !(frame instanceof ContinuationWebSocketFrame);
+                    enqueueLocked(frame, size, true, droppable, doneCallback, afterUnlock);
+                } else {
+                    content.release();
+                    if (!closeSent) {
+                        afterUnlock.add(() -> invokeCallback(doneCallback, new IllegalStateException("Messages cannot be sent until the fragmented "
+                            + (inProgress == OPCODE_TEXT ? "text" : "binary") + " message currently being sent has its last fragment sent")));
+                    }
+                }
+            }
+        }
+        runAll(afterUnlock);
+    }
+
+    /**
+     * Called on the event loop when the first fragment of an incoming fragmented message is received
+     */
+    void onFragmentedMessageStarted(int opcode) {
+        incomingFragmentedOpcode = opcode;
+    }
+
+    /**
+     * Called on the event loop when a continuation frame is received
+     * @return The opcode of the message that the fragment belongs to
+     */
+    int onContinuationFrame(boolean isLast) {
+        int opcode = incomingFragmentedOpcode;
+        if (isLast) {
+            incomingFragmentedOpcode = 0;
+        }
+        return opcode;
+    }
+
+    /**
+     * Decodes a fragment of a text message, holding back any bytes of a character that continues in the next fragment.
+     */
+    String decodeTextFragment(ByteBuf content, boolean isLast) {
+        if (textDecoder == null) {
+            textDecoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+        ByteBuffer in;
+        if (textRemainder == null) {
+            in = content.nioBuffer();
+        } else {
+            in = ByteBuffer.allocate(textRemainder.remaining() + content.readableBytes());
+            in.put(textRemainder).put(content.nioBuffer());
+            in.flip();
+        }
+        // UTF-8 never decodes to more chars than bytes
+        CharBuffer out = CharBuffer.allocate(in.remaining());
+        CoderResult result = textDecoder.decode(in, out, isLast);
+        if (!result.isError() && isLast) {
+            result = textDecoder.flush(out);
+        }
+        if (result.isError()) {
+            textDecoder.reset();
+            textRemainder = null;
+            close(1007, "Invalid UTF-8");
+            throw new WebSocketProtocolException("Invalid UTF-8 in text message", null);
+        }
+        if (isLast) {
+            textDecoder.reset();
+            textRemainder = null;
+        } else if (in.hasRemaining()) {
+            textRemainder = ByteBuffer.allocate(in.remaining());
+            textRemainder.put(in);
+            textRemainder.flip();
+        } else {
+            textRemainder = null;
+        }
+        out.flip();
+        return out.toString();
     }
 
     @Override
@@ -76,28 +239,291 @@ class MuWebSocketSessionImpl implements MuWebSocketSession {
         return (InetSocketAddress) ctx.channel().remoteAddress();
     }
 
-    private void writeAsync(WebSocketFrame msg, DoneCallback doneCallback) {
+    /**
+     * Writes a message that has already been framed by {@link #encodeFrame(int, ByteBuf)}, so that the same bytes can
+     * be shared between many sessions. If an extension such as compression is active on this session then a new frame
+     * is created around the payload instead.
+     * @return false if the session is closed or is part way through sending a fragmented message, and nothing was written
+     */
+    boolean sendEncoded(ByteBuf encodedFrame, int opcode, ByteBuf payload) {
+        List<Runnable> afterUnlock = new ArrayList<>(1);
+        synchronized (writeLock) {
+            if (closeSent || outgoingFragmentedOpcode != 0 || !ctx.channel().isActive()) {
+                return false;
+            }
+            Object msg;
+            if (extensionsActive) {
+                ByteBuf content = payload.retainedDuplicate();
+                msg = opcode == OPCODE_TEXT ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content);
+            } else {
+                msg = encodedFrame.retainedDuplicate();
+            }
+            // groups only send to writable sessions and have their own policy for slow members, so the limit is not applied
+            enqueueLocked(msg, payload.readableBytes(), false, true, DoneCallback.NoOp, afterUnlock);
+        }
+        runAll(afterUnlock);
+        return true;
+    }
+
+    /**
+     * Creates the bytes of a single final unmasked frame, as would be written by netty's websocket frame encoder.
+     * The returned buffer takes ownership of the payload.
+     */
+    static ByteBuf encodeFrame(int opcode, ByteBuf payload) {
+        int length = payload.readableBytes();
+        ByteBuf header;
+        if (length <= 125) {
+            header = Unpooled.buffer(2).writeByte(0x80 | opcode).writeByte(length);
+        } else if (length <= 0xFFFF) {
+            header = Unpooled.buffer(4).writeByte(0x80 | opcode).writeByte(126).writeShort(length);
+        } else {
+            header = Unpooled.buffer(10).writeByte(0x80 | opcode).writeByte(127).writeLong(length);
+        }
+        return Unpooled.wrappedBuffer(header, payload);
+    }
+
+    /**
+     * Called on the event loop when a frame is received, so that the session is not timed out
+     */
+    void onFrameRead() {
+        lastReadNanos = System.nanoTime();
+    }
 
+    /**
+     * @return The {@link System#nanoTime()} when a frame was last received, or when the session was created
+     */
+    long lastReadNanos() {
+        return lastReadNanos;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} when a frame was last written, or when the session was created
+     */
+    long lastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    ChannelFuture closeFuture() {
+        return ctx.channel().closeFuture();
+    }
+
+    /**
+     * Closes the connection without waiting for queued messages to be sent
+     */
+    void abort() {
+        ctx.channel().close();
+    }
+
+    /**
+     * Writes a control frame, which may be sent in the middle of a fragmented message and is not subject to the
+     * queue limit
+     */
+    private void writeAsync(WebSocketFrame msg, DoneCallback doneCallback) {
         if (closeSent && !(msg instanceof CloseWebSocketFrame)) {
+            msg.release();
             try {
                 doneCallback.onComplete(new IllegalStateException("Writes are not allowed as the socket has already been closed"));
             } catch (Exception ignored) {
             }
+            return;
         }
-        ctx.channel()
-            .writeAndFlush(msg)
-            .addListener((ChannelFutureListener) future1 -> {
+        enqueue(msg, msg.content().readableBytes(), false, false, doneCallback);
+    }
+
+    /**
+     * Writes the message to the channel if it is writable and nothing is waiting to be written, otherwise adds it to
+     * the pending queue which is drained as the channel becomes writable. If the message would take the queued bytes
+     * over the session's limit then the configured {@link WebSocketQueueFullAction} is applied first.
+     */
+    private void enqueue(Object msg, int size, boolean limited, boolean droppable, DoneCallback doneCallback) {
+        List<Runnable> afterUnlock = new ArrayList<>(1);
+        synchronized (writeLock) {
+            enqueueLocked(msg, size, limited, droppable, doneCallback, afterUnlock);
+        }
+        runAll(afterUnlock);
+    }
+
+    /**
+     * Must be called while holding the write lock. Callbacks, and listeners on write futures (which run straight
+     * away if the write has already completed), are added to <code>afterUnlock</code> so that no user code runs
+     * while the lock is held.
+     */
+    private void enqueueLocked(Object msg, int size, boolean limited, boolean droppable, DoneCallback doneCallback, List<Runnable> afterUnlock) {
+        if (limited && maxQueuedBytes > 0 && queuedBytes() + size > maxQueuedBytes) {
+            if (queueFullAction == WebSocketQueueFullAction.CLOSE) {
+                ReferenceCountUtil.release(msg);
+                closeForFullQueue(afterUnlock);
+                afterUnlock.add(() -> invokeCallback(doneCallback, new MuException("The message was not sent as the websocket outbound queue is full")));
+                return;
+            } else if (queueFullAction == WebSocketQueueFullAction.DROP_OLDEST) {
+                dropOldest(size, afterUnlock);
+            } else {
                 try {
-                    if (future1.isSuccess()) {
-                        doneCallback.onComplete(null);
-                    } else {
-                        doneCallback.onComplete(future1.cause());
-                    }
-                } catch (Throwable e) {
-                    log.warn("Unhandled exception from write callback", e);
-                    close(1011, "Server error");
+                    awaitQueueSpace(size);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ReferenceCountUtil.release(msg);
+                    afterUnlock.add(() -> invokeCallback(doneCallback, e));
+                    return;
                 }
-            });
+            }
+        }
+        if (pending.isEmpty() && ctx.channel().isWritable()) {
+            writeNow(msg, size, doneCallback, afterUnlock);
+        } else {
+            pending.add(new PendingWrite(msg, size, droppable, doneCallback));
+            pendingBytes += size;
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock. If the queue full action is {@link WebSocketQueueFullAction#BLOCK}
+     * then waits until a message of the given size fits in the queue. It is not possible to block on the event loop,
+     * in which case this returns straight away and the message is just queued.
+     */
+    private void awaitQueueSpace(int size) throws InterruptedException {
+        if (maxQueuedBytes > 0 && queueFullAction == WebSocketQueueFullAction.BLOCK && !ctx.executor().inEventLoop()) {
+            while (ctx.channel().isActive() && queuedBytes() > 0 && queuedBytes() + size > maxQueuedBytes) {
+                writeLock.wait(1000);
+            }
+        }
+    }
+
+    private void dropOldest(int spaceNeeded, List<Runnable> afterUnlock) {
+        Iterator<PendingWrite> iterator = pending.iterator();
+        while (iterator.hasNext() && queuedBytes() + spaceNeeded > maxQueuedBytes) {
+            PendingWrite candidate = iterator.next();
+            if (candidate.droppable) {
+                iterator.remove();
+                pendingBytes -= candidate.size;
+                droppedMessages.incrementAndGet();
+                ReferenceCountUtil.release(candidate.msg);
+                afterUnlock.add(() -> invokeCallback(candidate.doneCallback, new MuException("The message was dropped as the websocket outbound queue was full")));
+            }
+        }
+    }
+
+    private void closeForFullQueue(List<Runnable> afterUnlock) {
+        failPendingWrites(new MuException("The websocket was closed as its outbound queue was full"), afterUnlock);
+        if (!closeSent) {
+            closeSent = true;
+            Http1Connection.clearWebSocket(ctx);
+            writeNow(new CloseWebSocketFrame(1008, "Outbound queue full"), 0, error -> ctx.close(), afterUnlock);
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock, so that messages are written in the order they were queued.
+     */
+    private void writeNow(Object msg, int size, DoneCallback doneCallback, List<Runnable> afterUnlock) {
+        inFlightBytes.addAndGet(size);
+        ChannelFuture future = ctx.channel().writeAndFlush(msg);
+        afterUnlock.add(() -> future.addListener((ChannelFutureListener) future1 -> {
+            inFlightBytes.addAndGet(-size);
+            if (maxQueuedBytes > 0 && queueFullAction == WebSocketQueueFullAction.BLOCK) {
+                synchronized (writeLock) {
+                    writeLock.notifyAll();
+                }
+            }
+            try {
+                if (future1.isSuccess()) {
+                    lastWriteNanos = System.nanoTime();
+                    doneCallback.onComplete(null);
+                } else {
+                    doneCallback.onComplete(future1.cause());
+                }
+            } catch (Throwable e) {
+                log.warn("Unhandled exception from write callback", e);
+                close(1011, "Server error");
+            }
+        }));
+    }
+
+    /**
+     * Called on the event loop when the channel's writability changes, to send queued messages and let the
+     * websocket know if the session has become writable or unwritable.
+     */
+    void onChannelWritabilityChanged() throws Exception {
+        List<Runnable> afterUnlock = new ArrayList<>();
+        boolean writable;
+        boolean changed = false;
+        synchronized (writeLock) {
+            PendingWrite next;
+            while (ctx.channel().isWritable() && (next = pending.poll()) != null) {
+                pendingBytes -= next.size;
+                writeNow(next.msg, next.size, next.doneCallback, afterUnlock);
+            }
+            writable = isWritable();
+            if (!closeSent && writable != reportedWritable) {
+                reportedWritable = writable;
+                changed = true;
+            }
+        }
+        runAll(afterUnlock);
+        if (changed) {
+            muWebSocket.onWritabilityChanged(writable);
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock
+     */
+    private void failPendingWrites(Throwable cause, List<Runnable> afterUnlock) {
+        PendingWrite next;
+        while ((next = pending.poll()) != null) {
+            ReferenceCountUtil.release(next.msg);
+            DoneCallback doneCallback = next.doneCallback;
+            afterUnlock.add(() -> invokeCallback(doneCallback, cause));
+        }
+        pendingBytes = 0;
+        writeLock.notifyAll();
+    }
+
+    private static void runAll(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    private static void invokeCallback(DoneCallback doneCallback, Throwable error) {
+        try {
+            doneCallback.onComplete(error);
+        } catch (Exception e) {
+            log.warn("Unhandled exception from write callback", e);
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        synchronized (writeLock) {
+            return pending.isEmpty() && ctx.channel().isWritable();
+        }
+    }
+
+    @Override
+    public long queuedBytes() {
+        synchronized (writeLock) {
+            return pendingBytes + inFlightBytes.get();
+        }
+    }
+
+    @Override
+    public long droppedMessages() {
+        return droppedMessages.get();
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final int size;
+        private final boolean droppable;
+        private final DoneCallback doneCallback;
+
+        private PendingWrite(Object msg, int size, boolean droppable, DoneCallback doneCallback) {
+            this.msg = msg;
+            this.size = size;
+            this.droppable = droppable;
+            this.doneCallback = doneCallback;
+        }
     }
 
 }
@@ -64,7 +64,15 @@ class NettyHandlerAdapter {
     }
 
     void onHeaders(DoneCallback addedToExecutorCallback, AsyncContext muCtx, Headers headers) {
+        prepareRequest(muCtx, headers);
+        dispatch(addedToExecutorCallback, muCtx);
+    }
 
+    /**
+     * Sets up the request so that request body data can be received. This must be called before {@link #dispatch(DoneCallback, AsyncContext)}
+     * and can be called some time before it, in which case request body data is buffered until a handler reads it.
+     */
+    void prepareRequest(AsyncContext muCtx, Headers headers) {
         NettyRequestAdapter request = (NettyRequestAdapter) muCtx.request;
         if (headers.hasBody()) {
             // There will be a request body, so set the streams
@@ -73,6 +81,13 @@ class NettyHandlerAdapter {
             muCtx.requestBody = requestBodyStream;
         }
         request.nettyAsyncContext = muCtx;
+    }
+
+    /**
+     * Runs the handler chain for a prepared request on the handler executor
+     */
+    void dispatch(DoneCallback addedToExecutorCallback, AsyncContext muCtx) {
+        NettyRequestAdapter request = (NettyRequestAdapter) muCtx.request;
         try {
             executor.execute(() -> {
 
@@ -13,9 +13,13 @@ import io.netty.handler.codec.http.multipart.Attribute;
 import io.netty.handler.codec.http.multipart.FileUpload;
 import io.netty.handler.codec.http.multipart.HttpPostMultipartRequestDecoder;
 import io.netty.handler.codec.http.multipart.InterfaceHttpData;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionUtil;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,11 +27,11 @@ import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import static io.muserver.Cookie.nettyToMu;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -39,13 +43,16 @@ class NettyRequestAdapter implements MuRequest {
     private final Channel channel;
     private final HttpRequest request;
     private final MuServer server;
-    private final URI serverUri;
-    private final URI uri;
+    private final String scheme;
+    private final String host;
+    private URI serverUri;
+    private URI uri;
     private final Method method;
     private final Headers headers;
     AsyncContext nettyAsyncContext;
     private GrowableByteBufferInputStream inputStream;
-    private final RequestParameters query;
+    private final String requestUri;
+    private RequestParameters query;
     private RequestParameters form;
     private boolean bodyRead = false;
     private List<Cookie> cookies;
@@ -68,11 +75,12 @@ class NettyRequestAdapter implements MuRequest {
         this.keepalive = keepalive;
         this.protocol = protocol;
         this.connection = connection;
-        this.serverUri = URI.create(proto + "://" + host + uri).normalize();
+        this.scheme = proto;
+        this.host = host;
         this.headers = headers;
-        this.uri = getUri(headers, proto, host, uri, serverUri);
-        this.relativePath = this.uri.getRawPath();
-        this.query = new NettyRequestParameters(new QueryStringDecoder(uri, true));
+        this.requestUri = uri;
+        int queryStart = uri.indexOf('?');
+        this.relativePath = queryStart == -1 ? uri : uri.substring(0, queryStart);
         this.method = method;
     }
 
@@ -94,6 +102,61 @@ class NettyRequestAdapter implements MuRequest {
         return keepalive;
     }
 
+    /**
+     * Gets the path and query of a request target in a normalised form, i.e. with <code>.</code> and <code>..</code>
+     * segments and repeated slashes removed. The given string is returned as-is when it is already normalised,
+     * which is the case for nearly all requests, so that it does not need to be parsed into a URI.
+     * @param requestUri The request target from the request line or <code>:path</code> pseudo-header
+     * @return The path with the query string, if there was one
+     * @throws URISyntaxException The request target is not a valid URI
+     */
+    static String normaliseRelativeUri(String requestUri) throws URISyntaxException {
+        if (isNormalisedRelativeUri(requestUri)) {
+            return requestUri;
+        }
+        URI parsed = new URI(requestUri).normalize();
+        String s = parsed.getRawPath();
+        if (Mutils.nullOrEmpty(s)) {
+            s = "/";
+        }
+        String q = parsed.getRawQuery();
+        if (q != null) {
+            s += "?" + q;
+        }
+        return s;
+    }
+
+    private static boolean isNormalisedRelativeUri(String requestUri) {
+        int len = requestUri.length();
+        if (len == 0 || requestUri.charAt(0) != '/') {
+            return false;
+        }
+        boolean inPath = true;
+        char prev = 0;
+        for (int i = 0; i < len; i++) {
+            char c = requestUri.charAt(i);
+            if (c == '?') {
+                inPath = false;
+            } else if (c == '%') {
+                if (i + 2 >= len || Character.digit(requestUri.charAt(i + 1), 16) == -1 || Character.digit(requestUri.charAt(i + 2), 16) == -1) {
+                    return false;
+                }
+            } else if (inPath && prev == '/' && (c == '/' || c == '.')) {
+                return false;
+            } else if (!isUnreservedOrSubDelimiter(c)) {
+                return false;
+            }
+            prev = c;
+        }
+        return true;
+    }
+
+    private static boolean isUnreservedOrSubDelimiter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '-' || c == '.' || c == '_' || c == '~' || c == '/' || c == ':' || c == '@'
+            || c == '!' || c == '$' || c == '&' || c == '\'' || c == '(' || c == ')' || c == '*' || c == '+' || c == ',' || c == ';' || c == '=';
+    }
+
     private static URI getUri(Headers h, String scheme, String hostHeader, String requestUri, URI serverUri) {
         try {
             List<ForwardedHeader> forwarded = h.forwarded();
@@ -133,11 +196,17 @@ class NettyRequestAdapter implements MuRequest {
 
 
     public URI uri() {
+        if (uri == null) {
+            uri = getUri(headers, scheme, host, requestUri, serverURI());
+        }
         return uri;
     }
 
 
     public URI serverURI() {
+        if (serverUri == null) {
+            serverUri = URI.create(scheme + "://" + host + requestUri).normalize();
+        }
         return serverUri;
     }
 
@@ -212,6 +281,9 @@ class NettyRequestAdapter implements MuRequest {
 
     @Override
     public RequestParameters query() {
+        if (query == null) {
+            query = new NettyRequestParameters(new QueryStringDecoder(requestUri, true));
+        }
         return query;
     }
 
@@ -222,7 +294,7 @@ class NettyRequestAdapter implements MuRequest {
     }
 
     public List<String> parameters(String name) {
-        return query.getAll(name);
+        return query().getAll(name);
     }
 
     public String formValue(String name) throws IOException {
@@ -416,9 +488,36 @@ class NettyRequestAdapter implements MuRequest {
         }
     }
 
-    boolean websocketUpgrade(MuWebSocket muWebSocket, HttpHeaders responseHeaders, long idleReadTimeoutMills, long pingAfterWriteMillis, int maxFramePayloadLength) throws IOException {
+    /**
+     * Ends an async response immediately, without sending data that is waiting to be written
+     */
+    void abort() {
+        AsyncContext asyncContext = nettyAsyncContext;
+        asyncContext.onCancelled(false);
+        ((NettyResponseAdaptor) asyncContext.response).abort();
+    }
+
+    /**
+     * @return True if this is an HTTP2 extended CONNECT request to open a websocket on the request's stream
+     */
+    boolean isWebSocketConnect() {
+        return request instanceof Http2To1RequestAdapter && ((Http2To1RequestAdapter) request).isWebSocketConnect();
+    }
+
+    boolean websocketUpgrade(MuWebSocket muWebSocket, HttpHeaders responseHeaders, WebSocketSettings settings) throws IOException {
+        WebSocketServerExtension deflate = settings.perMessageDeflate == null ? null : negotiateExtension(settings.perMessageDeflate);
+        if (isWebSocketConnect()) {
+            if (!"13".equals(headers.get(HeaderNames.SEC_WEBSOCKET_VERSION))) {
+                throw new UnsupportedOperationException();
+            }
+            if (deflate != null) {
+                responseHeaders.add(HeaderNames.SEC_WEBSOCKET_EXTENSIONS, extensionHeaderValue(deflate.newReponseData()));
+            }
+            ((Http2Connection) connection).acceptWebSocket(((Http2To1RequestAdapter) request).streamId(), muWebSocket, responseHeaders, settings, deflate);
+            return true;
+        }
         String url = "ws" + uri().toString().substring(4);
-        WebSocketServerHandshakerFactory factory = new WebSocketServerHandshakerFactory(url, null, false, maxFramePayloadLength);
+        WebSocketServerHandshakerFactory factory = new WebSocketServerHandshakerFactory(url, null, deflate != null, settings.maxFramePayloadLength);
 
         if (inputStream().isPresent()) {
             try (InputStream is = inputStream().get()) {
@@ -434,15 +533,28 @@ class NettyRequestAdapter implements MuRequest {
         if (handshaker == null) {
             throw new UnsupportedOperationException();
         }
+        if (deflate != null) {
+            responseHeaders.add(HeaderNames.SEC_WEBSOCKET_EXTENSIONS, extensionHeaderValue(deflate.newReponseData()));
+        }
 
-        ctx.channel().pipeline().replace("idle", "idle",
-            new IdleStateHandler(idleReadTimeoutMills, pingAfterWriteMillis, 0, TimeUnit.MILLISECONDS));
-        MuWebSocketSessionImpl session = new MuWebSocketSessionImpl(ctx, muWebSocket);
+        // the idle timeout and pings of the websocket are handled by the server's shared liveness manager
+        ctx.channel().pipeline().remove("idle");
+        MuWebSocketSessionImpl session = new MuWebSocketSessionImpl(ctx, muWebSocket, settings, deflate != null);
         Http1Connection.setAsyncContext(ctx, null);
         ctx.channel().attr(Http1Connection.WEBSOCKET_ATTRIBUTE).set(session);
+        ctx.channel().attr(Http1Connection.WEBSOCKET_OUTBOUND_ATTRIBUTE).set(session);
         handshaker.handshake(ctx.channel(), fullReq, responseHeaders, ctx.channel().newPromise())
             .addListener(future -> {
                 if (future.isSuccess()) {
+                    if (deflate != null) {
+                        // inbound frames are inflated after the websocket decoder; outbound frames are deflated before the encoder
+                        ctx.pipeline().addBefore(ctx.name(), "wsextdecoder", deflate.newExtensionDecoder());
+                        ctx.pipeline().addBefore(ctx.name(), "wsextencoder", deflate.newExtensionEncoder());
+                    }
+                    if (!settings.partialMessages) {
+                        ctx.pipeline().addBefore(ctx.name(), "wsaggregator", new WebSocketFrameAggregator(settings.maxMessageLength));
+                    }
+                    ((MuServerImpl) server).webSocketLiveness.register(session, ctx.executor(), settings);
                     muWebSocket.onConnect(session);
                     ctx.channel().read();
                 } else {
@@ -453,6 +565,35 @@ class NettyRequestAdapter implements MuRequest {
         return true;
     }
 
+    /**
+     * Finds the first extension offered by the client in its <code>Sec-WebSocket-Extensions</code> header(s) that
+     * the given handshaker accepts.
+     */
+    private WebSocketServerExtension negotiateExtension(WebSocketServerExtensionHandshaker extensionHandshaker) {
+        List<String> offered = request.headers().getAll(HeaderNames.SEC_WEBSOCKET_EXTENSIONS);
+        if (offered.isEmpty()) {
+            return null;
+        }
+        for (WebSocketExtensionData data : WebSocketExtensionUtil.extractExtensions(String.join(",", offered))) {
+            WebSocketServerExtension extension = extensionHandshaker.handshakeExtension(data);
+            if (extension != null) {
+                return extension;
+            }
+        }
+        return null;
+    }
+
+    static String extensionHeaderValue(WebSocketExtensionData data) {
+        StringBuilder sb = new StringBuilder(data.name());
+        for (Map.Entry<String, String> param : data.parameters().entrySet()) {
+            sb.append("; ").append(param.getKey());
+            if (param.getValue() != null) {
+                sb.append('=').append(param.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
 
     private static class AsyncHandleImpl implements AsyncHandle {
 
@@ -498,7 +639,7 @@ class NettyRequestAdapter implements MuRequest {
 
         @Override
         public void write(ByteBuffer data, DoneCallback callback) {
-            ChannelFuture writeFuture = (ChannelFuture) write(data);
+            ChannelFuture writeFuture = write(data, false);
             writeFuture.addListener(future -> {
                 try {
                     if (future.isSuccess()) {
@@ -526,9 +667,14 @@ class NettyRequestAdapter implements MuRequest {
 
         @Override
         public Future<Void> write(ByteBuffer data) {
+            // callers of this method often do not wait on the returned future, so optionally wait for the client to accept more data
+            return write(data, true);
+        }
+
+        private ChannelFuture write(ByteBuffer data, boolean waitForWritability) {
             NettyResponseAdaptor response = (NettyResponseAdaptor) request.nettyAsyncContext.response;
             try {
-                return response.write(data);
+                return response.write(data, waitForWritability);
             } catch (Throwable e) {
                 return request.channel.newFailedFuture(e);
             }
@@ -97,15 +97,22 @@ abstract class NettyResponseAdaptor implements MuResponse {
         return write(textToBuffer(text), false);
     }
 
-    ChannelFuture write(ByteBuffer data) {
+    ChannelFuture write(ByteBuffer data, boolean waitForWritability) {
         if (outputState == OutputState.NOTHING) {
             startStreaming();
         }
-        return write(Unpooled.wrappedBuffer(data), false);
+        return write(Unpooled.wrappedBuffer(data), false, waitForWritability);
     }
 
     protected final ChannelFuture write(ByteBuf data, boolean sync) {
+        return write(data, sync, sync);
+    }
+
+    private ChannelFuture write(ByteBuf data, boolean sync, boolean waitForWritability) {
         throwIfFinished();
+        if (waitForWritability) {
+            awaitWritable();
+        }
         int size = data.writerIndex();
 
         bytesStreamed += size;
@@ -133,6 +140,13 @@ abstract class NettyResponseAdaptor implements MuResponse {
 
     protected abstract void onContentLengthMismatch();
 
+    /**
+     * Called before a write from a caller that is not waiting on the write's future, so that implementations can
+     * block the writing thread while the client is not accepting data. The default implementation does not block.
+     */
+    protected void awaitWritable() {
+    }
+
     abstract ChannelFuture writeToChannel(boolean isLast, ByteBuf content);
 
     public void sendChunk(String text) {
@@ -189,6 +203,19 @@ abstract class NettyResponseAdaptor implements MuResponse {
         return this.writer;
     }
 
+    @Override
+    public boolean push(String path) {
+        checkPushPath(path);
+        return false;
+    }
+
+    static void checkPushPath(String path) {
+        Mutils.notNull("path", path);
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Pushed paths must be absolute paths starting with '/' but got " + path);
+        }
+    }
+
     @Override
     public boolean hasStartedSendingData() {
         return outputState != OutputState.NOTHING;
@@ -263,6 +290,13 @@ abstract class NettyResponseAdaptor implements MuResponse {
 
     protected abstract ChannelFuture closeConnection();
 
+    /**
+     * Stops sending the response immediately, discarding any data that has not been written yet
+     */
+    void abort() {
+        closeConnection();
+    }
+
     protected abstract boolean connectionOpen();
 
     protected abstract ChannelFuture writeLastContentMarker();
@@ -0,0 +1,307 @@
+package io.muserver;
+
+import io.muserver.rest.PathMatch;
+import io.muserver.rest.UriPattern;
+
+import javax.ws.rs.NotAllowedException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A handler that routes requests to many {@link RouteHandler}s, created with {@link RouteTableBuilder#routeTable()}.</p>
+ * <p>Adding each route with {@link MuServerBuilder#addHandler(Method, String, RouteHandler)} means every request
+ * is checked against the regular expression of each route in turn. A route table instead compiles its routes into a
+ * tree of path segments, so finding the route for a request takes time proportional to the length of the path
+ * rather than the number of routes.</p>
+ * <p>When more than one route matches a path, a route with a literal segment is chosen over a route with a path
+ * parameter in that position, regardless of the order that the routes were added. Templates that cannot be
+ * represented as a tree of whole segments (for example <code>/files/{name}.txt</code>, or a parameter with a regular
+ * expression that can match a <code>/</code>) are matched with their regular expression, in the order they were added,
+ * only when no other route matches.</p>
+ */
+public class RouteTable implements MuHandler {
+
+    private static final Pattern SEGMENT_SAFE_REGEX = Pattern.compile("([\\w\\-\\[\\]+*?|()]|\\\\[dws])*");
+
+    private final Node root = new Node();
+    private final List<Route> regexRoutes = new ArrayList<>();
+    private final boolean methodNotAllowedResponses;
+    private int maxParams = 0;
+
+    RouteTable(List<Route> routes, boolean methodNotAllowedResponses) {
+        this.methodNotAllowedResponses = methodNotAllowedResponses;
+        for (Route route : routes) {
+            if (!addToTree(route)) {
+                regexRoutes.add(route);
+            }
+        }
+    }
+
+    @Override
+    public boolean handle(MuRequest request, MuResponse response) throws Exception {
+        Lookup lookup = lookup(request.method(), request.relativePath());
+        if (lookup.route != null) {
+            lookup.route.handler.handle(request, response, lookup.pathParams);
+            return true;
+        }
+        if (methodNotAllowedResponses && !lookup.allowedMethods.isEmpty()) {
+            List<String> allowed = lookup.allowedMethods.stream().map(Enum::name).collect(Collectors.toList());
+            response.headers().set(HeaderNames.ALLOW, String.join(", ", allowed));
+            throw new NotAllowedException(allowed.get(0), allowed.subList(1, allowed.size()).toArray(new String[0]));
+        }
+        return false;
+    }
+
+    /**
+     * Finds the route for a request
+     * @param method The request method
+     * @param rawPath The URL-encoded path, relative to the context of this handler
+     * @return The matching route and its path parameters, or if there is no matching route then the methods of any
+     * routes that match the path
+     */
+    Lookup lookup(Method method, String rawPath) {
+        int start = rawPath.startsWith("/") ? 1 : 0;
+        int end = rawPath.length();
+        if (end > start && rawPath.charAt(end - 1) == '/') {
+            end--;
+        }
+        Search search = new Search(method, rawPath, end, maxParams);
+        Route route = start == end ? search.terminal(root) : search.find(root, start, 0);
+        if (route != null) {
+            return new Lookup(route, route.params(search.values), Collections.emptySet());
+        }
+        for (Route regexRoute : regexRoutes) {
+            PathMatch match = regexRoute.pattern.matcher(rawPath);
+            if (match.fullyMatches()) {
+                if (regexRoute.method == null || regexRoute.method == method) {
+                    return new Lookup(regexRoute, match.params(), Collections.emptySet());
+                }
+                search.allowed.add(regexRoute.method);
+            }
+        }
+        return new Lookup(null, Collections.emptyMap(), search.allowed);
+    }
+
+    /**
+     * Adds the route to the tree, if the template is made up of literal segments and parameters that match a
+     * single segment
+     * @return false if the route needs to be matched with its regular expression
+     */
+    private boolean addToTree(Route route) {
+        String template = trimSlashes(route.template);
+        if (template.isEmpty()) {
+            root.add(route);
+            return true;
+        }
+        List<String> names = new ArrayList<>();
+        Node node = root;
+        for (String segment : template.split("/", -1)) {
+            if (segment.indexOf('{') == -1 && segment.indexOf('}') == -1) {
+                if (segment.indexOf('%') != -1) {
+                    return false;
+                }
+                node = node.literal(Mutils.urlEncode(segment));
+            } else {
+                if (!segment.startsWith("{") || segment.indexOf('}') != segment.length() - 1 || segment.indexOf('{', 1) != -1) {
+                    return false;
+                }
+                String name = segment.substring(1, segment.length() - 1).trim();
+                String regex = null;
+                if (name.contains(":")) {
+                    String[] nameInfo = name.split("\\s*:\\s*", 2);
+                    name = nameInfo[0];
+                    regex = nameInfo[1];
+                    if (regex.equals("[^/]+?")) {
+                        regex = null;
+                    } else if (regex.contains(".") || regex.contains("[^") || !SEGMENT_SAFE_REGEX.matcher(regex).matches()) {
+                        return false;
+                    }
+                }
+                if (names.contains(name)) {
+                    return false;
+                }
+                names.add(name);
+                node = node.param(regex);
+            }
+        }
+        route.paramNames = names.toArray(new String[0]);
+        maxParams = Math.max(maxParams, names.size());
+        node.add(route);
+        return true;
+    }
+
+    private static String trimSlashes(String template) {
+        int start = template.startsWith("/") ? 1 : 0;
+        int end = template.endsWith("/") && template.length() > start ? template.length() - 1 : template.length();
+        return template.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteTable{" +
+            "treeRoutes=" + root.count() +
+            ", regexRoutes=" + regexRoutes.size() +
+            '}';
+    }
+
+    static class Route {
+        final Method method;
+        final String template;
+        final UriPattern pattern;
+        final RouteHandler handler;
+        private String[] paramNames = new String[0];
+
+        Route(Method method, String template, RouteHandler handler) {
+            this.method = method;
+            this.template = template;
+            this.pattern = UriPattern.uriTemplateToRegex(template);
+            this.handler = handler;
+        }
+
+        private Map<String, String> params(String[] values) {
+            if (paramNames.length == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < paramNames.length; i++) {
+                params.put(paramNames[i], Mutils.urlDecode(values[i]));
+            }
+            return params;
+        }
+    }
+
+    static class Lookup {
+        /**
+         * The matching route, or null if no route matches the path and method
+         */
+        final Route route;
+        final Map<String, String> pathParams;
+        /**
+         * When there is no matching route, the methods of the routes that match the path
+         */
+        final Set<Method> allowedMethods;
+
+        private Lookup(Route route, Map<String, String> pathParams, Set<Method> allowedMethods) {
+            this.route = route;
+            this.pathParams = pathParams;
+            this.allowedMethods = allowedMethods;
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<ParamChild> params = new ArrayList<>();
+        private final Map<Method, Route> routes = new EnumMap<>(Method.class);
+        private Route anyMethodRoute;
+
+        Node literal(String segment) {
+            return literals.computeIfAbsent(segment, s -> new Node());
+        }
+
+        Node param(String regex) {
+            for (ParamChild param : params) {
+                if (Objects.equals(param.regex, regex)) {
+                    return param.node;
+                }
+            }
+            ParamChild param = new ParamChild(regex);
+            params.add(param);
+            return param.node;
+        }
+
+        void add(Route route) {
+            // as with a list of handlers, the first route added for a method wins
+            if (route.method == null) {
+                if (anyMethodRoute == null) {
+                    anyMethodRoute = route;
+                }
+            } else {
+                routes.putIfAbsent(route.method, route);
+            }
+        }
+
+        int count() {
+            int count = routes.size() + (anyMethodRoute == null ? 0 : 1);
+            for (Node child : literals.values()) {
+                count += child.count();
+            }
+            for (ParamChild param : params) {
+                count += param.node.count();
+            }
+            return count;
+        }
+    }
+
+    private static class ParamChild {
+        private final String regex;
+        private final Pattern pattern;
+        private final Node node = new Node();
+
+        private ParamChild(String regex) {
+            this.regex = regex;
+            this.pattern = regex == null ? null : Pattern.compile(regex);
+        }
+
+        boolean matches(String segment) {
+            return pattern == null ? !segment.isEmpty() : pattern.matcher(segment).matches();
+        }
+    }
+
+    /**
+     * A depth-first search of the tree for a single request, which backtracks to parameter segments when a
+     * literal segment leads to no route.
+     */
+    private static class Search {
+        private final Method method;
+        private final String path;
+        private final int end;
+        private final String[] values;
+        private final EnumSet<Method> allowed = EnumSet.noneOf(Method.class);
+
+        private Search(Method method, String path, int end, int maxParams) {
+            this.method = method;
+            this.path = path;
+            this.end = end;
+            this.values = new String[maxParams];
+        }
+
+        private Route find(Node node, int segmentStart, int depth) {
+            int slash = path.indexOf('/', segmentStart);
+            int segmentEnd = slash == -1 || slash > end ? end : slash;
+            String segment = path.substring(segmentStart, segmentEnd);
+            Node literal = node.literals.get(segment);
+            if (literal != null) {
+                Route route = next(literal, segmentEnd, depth);
+                if (route != null) {
+                    return route;
+                }
+            }
+            for (ParamChild param : node.params) {
+                if (param.matches(segment)) {
+                    values[depth] = segment;
+                    Route route = next(param.node, segmentEnd, depth + 1);
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Route next(Node node, int segmentEnd, int depth) {
+            return segmentEnd >= end ? terminal(node) : find(node, segmentEnd + 1, depth);
+        }
+
+        private Route terminal(Node node) {
+            Route route = node.routes.get(method);
+            if (route == null) {
+                route = node.anyMethodRoute;
+            }
+            if (route == null) {
+                allowed.addAll(node.routes.keySet());
+            }
+            return route;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.muserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Used to create a {@link RouteTable}, which is a handler that efficiently routes requests to a large number of
+ * route handlers.</p>
+ * <p>Sample usage:</p>
+ * <pre><code>
+ *     MuServerBuilder.httpsServer()
+ *         .addHandler(RouteTableBuilder.routeTable()
+ *             .addRoute(Method.GET, "/users", listUsers)
+ *             .addRoute(Method.GET, "/users/{id}", getUser)
+ *             .addRoute(Method.DELETE, "/users/{id}", deleteUser)
+ *         )
+ *         .start();
+ * </code></pre>
+ */
+public class RouteTableBuilder implements MuHandlerBuilder<RouteTable> {
+
+    private final List<RouteTable.Route> routes = new ArrayList<>();
+    private boolean methodNotAllowedResponses = false;
+
+    /**
+     * Adds a route to the table.
+     *
+     * @param method      The method to match, or <code>null</code> to accept any method.
+     * @param uriTemplate A URL template. Supports plain URLs like <code>/abc</code> or paths
+     *                    with named parameters such as <code>/abc/{id}</code> or named parameters
+     *                    with regexes such as <code>/abc/{id : [0-9]+}</code> where the named
+     *                    parameter values can be accessed with the <code>pathParams</code>
+     *                    parameter in the route handler.
+     * @param handler     The handler to invoke if the method and URI matches. If null, then no route is added.
+     * @return This builder
+     * @throws IllegalArgumentException If the template is not valid
+     */
+    public RouteTableBuilder addRoute(Method method, String uriTemplate, RouteHandler handler) {
+        if (handler != null) {
+            routes.add(new RouteTable.Route(method, uriTemplate, handler));
+        }
+        return this;
+    }
+
+    /**
+     * <p>Specifies what happens when a request path matches one or more routes, but none of them are for the
+     * request's method.</p>
+     * <p>If <code>true</code> then a <code>405 Method Not Allowed</code> response is sent with an <code>Allow</code>
+     * header listing the methods of the matching routes. If <code>false</code> then the request is passed to the
+     * next handler, in the same way as when no routes match.</p>
+     * <p>The default is <code>false</code>.</p>
+     * @param methodNotAllowedResponses <code>true</code> to send 405 responses
+     * @return This builder
+     */
+    public RouteTableBuilder withMethodNotAllowedResponses(boolean methodNotAllowedResponses) {
+        this.methodNotAllowedResponses = methodNotAllowedResponses;
+        return this;
+    }
+
+    /**
+     * Creates a new builder
+     * @return A new route table builder
+     */
+    public static RouteTableBuilder routeTable() {
+        return new RouteTableBuilder();
+    }
+
+    /**
+     * Creates the route table, which can be added to a server or context with <code>addHandler</code>
+     * @return A new route table
+     */
+    @Override
+    public RouteTable build() {
+        return new RouteTable(new ArrayList<>(routes), methodNotAllowedResponses);
+    }
+}
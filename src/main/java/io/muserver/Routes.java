@@ -6,6 +6,8 @@ import io.muserver.rest.UriPattern;
 /**
  * A helper class to create a handler for a specific URL. See{@link MuServerBuilder#addHandler(Method, String, RouteHandler)}
  * for a simple way to add a routed handler to a server.
+ * <p>Each route created here is a separate handler that checks every request against its own regular expression.
+ * When there are many routes, use a {@link RouteTableBuilder#routeTable()} instead.</p>
  */
 public class Routes {
 
@@ -7,11 +7,11 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import java.io.*;
+import java.nio.file.Files;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
 
@@ -25,10 +25,19 @@ public class SSLContextBuilder {
     private String keystoreType = "JKS";
     private char[] keystorePassword = new char[0];
     private char[] keyPassword = new char[0];
-    private byte[] keystoreBytes;
+    private volatile byte[] keystoreBytes;
+    private volatile int keystoreVersion = 0;
+    private File keystoreFile;
+    private long keystoreReloadMillis = 0;
     private SSLContext sslContext;
     private CipherSuiteFilter nettyCipherSuiteFilter;
     private KeyManagerFactory keyManagerFactory;
+    private Boolean openSslIfAvailable = null;
+    private long sessionCacheSize = -1;
+    private long sessionTimeoutSeconds = -1;
+    private long ticketKeyRotationMillis = 0;
+    private final Map<String, SSLContextBuilder> hostConfigs = new LinkedHashMap<>();
+    private int hostConfigCacheSize = 1000;
 
     public SSLContextBuilder withKeystoreType(String keystoreType) {
         this.keystoreType = keystoreType;
@@ -50,6 +59,7 @@ public class SSLContextBuilder {
 
     SSLContextBuilder withSSLContext(SSLContext sslContext) {
         keyManagerFactory = null;
+        keystoreFile = null;
         this.sslContext = sslContext;
         return this;
     }
@@ -62,10 +72,12 @@ public class SSLContextBuilder {
     protected void setKeystoreBytes(InputStream is, boolean closeAfter) {
         sslContext = null;
         keyManagerFactory = null;
+        keystoreFile = null;
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
             Mutils.copy(is, baos, 8192);
             this.keystoreBytes = baos.toByteArray();
+            this.keystoreVersion++;
         } catch (IOException e) {
             throw new MuException("Error while loading keystore", e);
         } finally {
@@ -102,6 +114,7 @@ public class SSLContextBuilder {
             throw new IllegalArgumentException("Could not open file", e);
         }
         setKeystoreBytes(fis, true);
+        this.keystoreFile = file;
         return this;
     }
 
@@ -129,6 +142,7 @@ public class SSLContextBuilder {
      */
     public SSLContextBuilder withKeyManagerFactory(KeyManagerFactory keyManagerFactory) {
         this.keystoreBytes = null;
+        this.keystoreFile = null;
         this.sslContext = null;
         this.keyManagerFactory = keyManagerFactory;
         return this;
@@ -173,6 +187,168 @@ public class SSLContextBuilder {
         return this;
     }
 
+    /**
+     * Specifies whether to use OpenSSL for TLS rather than the JDK's TLS implementation, if it is available.
+     * <p>OpenSSL is available when a <code>netty-tcnative</code> library, such as <code>netty-tcnative-boringssl-static</code>,
+     * is on the classpath. If it is not available, then the JDK implementation is used. The provider in use can be
+     * found with {@link SSLInfo#providerName()}.</p>
+     * <p>If this is not set, then OpenSSL is used if it is available.</p>
+     * <p>This has no effect if an {@link SSLContext} was given directly.</p>
+     *
+     * @param openSslIfAvailable <code>true</code> to use OpenSSL when it is available; <code>false</code> to always use the JDK
+     * @return This builder
+     */
+    public SSLContextBuilder withOpenSslIfAvailable(boolean openSslIfAvailable) {
+        this.openSslIfAvailable = openSslIfAvailable;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of TLS sessions that the server caches so that clients can resume them without a full handshake.
+     *
+     * @param size The maximum number of sessions, or <code>0</code> for no limit. If not set, the TLS provider's default is used.
+     * @return This builder
+     */
+    public SSLContextBuilder withSessionCacheSize(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The session cache size cannot be negative");
+        }
+        this.sessionCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Sets how long a TLS session can be resumed for after it was created.
+     *
+     * @param duration The timeout, or <code>0</code> for no limit. If not set, the TLS provider's default is used.
+     * @param unit     The unit of the duration.
+     * @return This builder
+     */
+    public SSLContextBuilder withSessionTimeout(long duration, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (duration < 0) {
+            throw new IllegalArgumentException("The session timeout cannot be negative");
+        }
+        this.sessionTimeoutSeconds = unit.toSeconds(duration);
+        return this;
+    }
+
+    /**
+     * Enables stateless TLS session tickets, which are encrypted with keys that are randomly generated and replaced
+     * periodically.
+     * <p>Tickets let clients resume sessions without the server needing to cache them. After each rotation the
+     * previous key is kept so that tickets issued shortly before the rotation can still be used.</p>
+     * <p>This requires OpenSSL (see {@link #withOpenSslIfAvailable(boolean)}) and is ignored when the JDK provider is
+     * used. On JDK 13 and later, the JDK provider's own stateless tickets can be enabled with the
+     * <code>jdk.tls.server.enableSessionTicketExtension</code> system property.</p>
+     *
+     * @param period How often a new key is generated, or <code>0</code> to not use server-generated ticket keys (the default).
+     * @param unit   The unit of the period.
+     * @return This builder
+     */
+    public SSLContextBuilder withSessionTicketKeyRotation(long period, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (period < 0) {
+            throw new IllegalArgumentException("The ticket key rotation period cannot be negative");
+        }
+        this.ticketKeyRotationMillis = unit.toMillis(period);
+        return this;
+    }
+
+    /**
+     * Checks a keystore file for changes periodically and, when it changes, swaps in a new TLS context for new
+     * connections. Existing connections are not affected.
+     * <p>This applies when the keystore was loaded with {@link #withKeystore(File)}, including in any host configs.
+     * The file is checked on a background thread. A changed file is only used if it can be loaded as a
+     * keystore with the configured passwords; otherwise a warning is logged and the current certificate continues to
+     * be used until the next valid change.</p>
+     * <p>The check interval is taken from the config the server is started with.</p>
+     *
+     * @param checkInterval How often to check the file, or <code>0</code> to not reload it (the default)
+     * @param unit          The unit of the interval
+     * @return This builder
+     */
+    public SSLContextBuilder withKeystoreReload(long checkInterval, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (checkInterval < 0) {
+            throw new IllegalArgumentException("The check interval cannot be negative");
+        }
+        this.keystoreReloadMillis = unit.toMillis(checkInterval);
+        return this;
+    }
+
+    long keystoreReloadMillis() {
+        return keystoreReloadMillis;
+    }
+
+    /**
+     * @return A number that changes each time the keystore is changed
+     */
+    int keystoreVersion() {
+        return keystoreVersion;
+    }
+
+    /**
+     * Re-reads the keystore file, if there is one, and uses it if it has changed and is valid.
+     * @return <code>true</code> if a new keystore was loaded
+     */
+    boolean reloadKeystoreIfChanged() {
+        File file = keystoreFile;
+        if (file == null) {
+            return false;
+        }
+        byte[] newBytes;
+        try {
+            newBytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            log.warn("Could not read " + Mutils.fullPath(file) + " so the current certificate will continue to be used", e);
+            return false;
+        }
+        if (Arrays.equals(newBytes, keystoreBytes)) {
+            return false;
+        }
+        try {
+            keyManagerFactoryFor(newBytes);
+        } catch (Exception e) {
+            log.warn("The changed keystore at " + Mutils.fullPath(file) + " could not be loaded so the current certificate " +
+                "will continue to be used", e);
+            return false;
+        }
+        keystoreBytes = newBytes;
+        keystoreVersion++;
+        log.info("Reloaded keystore from " + Mutils.fullPath(file));
+        return true;
+    }
+
+    long ticketKeyRotationMillis() {
+        return ticketKeyRotationMillis;
+    }
+
+    void addHostConfig(String hostname, SSLContextBuilder hostConfig) {
+        Mutils.notNull("hostname", hostname);
+        Mutils.notNull("hostConfig", hostConfig);
+        String key = hostname.toLowerCase(Locale.ROOT);
+        if (key.isEmpty() || key.indexOf('*', key.startsWith("*.") ? 1 : 0) != -1) {
+            throw new IllegalArgumentException("The hostname must be a host name or a wildcard such as *.example.org but was " + hostname);
+        }
+        hostConfigs.put(key, hostConfig);
+    }
+
+    void setHostConfigCacheSize(int hostConfigCacheSize) {
+        if (hostConfigCacheSize < 1) {
+            throw new IllegalArgumentException("The host config cache size must be at least 1");
+        }
+        this.hostConfigCacheSize = hostConfigCacheSize;
+    }
+
+    Map<String, SSLContextBuilder> hostConfigs() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(hostConfigs));
+    }
+
+    int hostConfigCacheSize() {
+        return hostConfigCacheSize;
+    }
+
     /**
      * @return Creates an SSLContext
      * @deprecated Pass this builder itself to the HttpsConfig rather than building an SSLContext
@@ -205,32 +381,47 @@ public class SSLContextBuilder {
         }
     }
 
+    private KeyManagerFactory keyManagerFactoryFor(byte[] keystoreBytes) throws Exception {
+        ByteArrayInputStream keystoreStream = new ByteArrayInputStream(keystoreBytes);
+        try {
+            KeyStore ks = KeyStore.getInstance(keystoreType);
+            ks.load(keystoreStream, keystorePassword);
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(ks, keyPassword);
+            return kmf;
+        } finally {
+            try {
+                keystoreStream.close();
+            } catch (IOException e) {
+                log.info("Error while closing keystore stream: " + e.getMessage());
+            }
+        }
+    }
+
     SslContext toNettySslContext(boolean http2) throws Exception {
         SslContextBuilder builder;
         if (sslContext != null) {
             return new JdkSslContext(sslContext, false, ClientAuth.NONE);
-        } else if (keystoreBytes != null) {
-            ByteArrayInputStream keystoreStream = new ByteArrayInputStream(keystoreBytes);
-            KeyManagerFactory kmf;
-            try {
-                KeyStore ks = KeyStore.getInstance(keystoreType);
-                ks.load(keystoreStream, keystorePassword);
-                kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                kmf.init(ks, keyPassword);
-            } finally {
-                try {
-                    keystoreStream.close();
-                } catch (IOException e) {
-                    log.info("Error while closing keystore stream: " + e.getMessage());
-                }
-            }
-            builder = SslContextBuilder.forServer(kmf);
+        }
+        byte[] keystoreBytes = this.keystoreBytes;
+        if (keystoreBytes != null) {
+            builder = SslContextBuilder.forServer(keyManagerFactoryFor(keystoreBytes));
         } else if (keyManagerFactory != null) {
             builder = SslContextBuilder.forServer(keyManagerFactory);
         } else {
             throw new IllegalStateException("No SSL info");
         }
 
+        if (openSslIfAvailable != null) {
+            builder.sslProvider(openSslIfAvailable && OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK);
+        }
+        if (sessionCacheSize >= 0) {
+            builder.sessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeoutSeconds >= 0) {
+            builder.sessionTimeout(sessionTimeoutSeconds);
+        }
+
         if (http2) {
             builder.applicationProtocolConfig(new ApplicationProtocolConfig(
                 ApplicationProtocolConfig.Protocol.ALPN, ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
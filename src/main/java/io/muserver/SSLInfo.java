@@ -23,6 +23,31 @@ public interface SSLInfo {
      */
     String providerName();
 
+    /**
+     * @return The number of TLS handshakes that have completed successfully since the server started
+     */
+    long completedHandshakes();
+
+    /**
+     * <p>Gets the number of completed handshakes that resumed a previous session (from the session cache or a session
+     * ticket) rather than doing a full handshake.</p>
+     * <p>The session resumption rate is this value divided by {@link #completedHandshakes()}.</p>
+     * @return The number of resumed handshakes since the server started
+     */
+    long resumedHandshakes();
+
+    /**
+     * @return The mean time, in milliseconds, from a connection being accepted until its TLS handshake completed,
+     * over all completed handshakes.
+     */
+    double averageHandshakeMillis();
+
+    /**
+     * @return The number of handshake tasks waiting to run on the executor set with
+     * {@link MuServerBuilder#withHandshakeExecutor(java.util.concurrent.ExecutorService)}, or 0 if none is set
+     */
+    int queuedHandshakeTasks();
+
     /**
      * <p>Gets the server certificates that are in use.</p>
      * <p>Note: The certificate information is found by making an HTTPS connection to
@@ -11,6 +11,8 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 class SSLInfoImpl implements SSLInfo {
     private static final Logger log = LoggerFactory.getLogger(SSLInfoImpl.class);
@@ -19,11 +21,20 @@ class SSLInfoImpl implements SSLInfo {
     private final List<String> ciphers;
     private volatile List<X509Certificate> cachedCerts = null;
     private volatile URI httpsUri;
+    private final AtomicLong completedHandshakes;
+    private final AtomicLong resumedHandshakes;
+    private final AtomicLong totalHandshakeNanos;
+    private final AtomicInteger queuedHandshakeTasks;
 
-    SSLInfoImpl(String providerName, List<String> protocols, List<String> ciphers) {
+    SSLInfoImpl(String providerName, List<String> protocols, List<String> ciphers, AtomicLong completedHandshakes,
+                AtomicLong resumedHandshakes, AtomicLong totalHandshakeNanos, AtomicInteger queuedHandshakeTasks) {
         this.providerName = providerName;
         this.protocols = protocols;
         this.ciphers = ciphers;
+        this.completedHandshakes = completedHandshakes;
+        this.resumedHandshakes = resumedHandshakes;
+        this.totalHandshakeNanos = totalHandshakeNanos;
+        this.queuedHandshakeTasks = queuedHandshakeTasks;
     }
 
     @Override
@@ -41,6 +52,27 @@ class SSLInfoImpl implements SSLInfo {
         return providerName;
     }
 
+    @Override
+    public long completedHandshakes() {
+        return completedHandshakes.get();
+    }
+
+    @Override
+    public long resumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    @Override
+    public double averageHandshakeMillis() {
+        long completed = completedHandshakes.get();
+        return completed == 0 ? 0 : totalHandshakeNanos.get() / 1_000_000.0 / completed;
+    }
+
+    @Override
+    public int queuedHandshakeTasks() {
+        return queuedHandshakeTasks.get();
+    }
+
     @Override
     public List<X509Certificate> certificates() {
         if (cachedCerts != null) {
@@ -88,6 +120,10 @@ class SSLInfoImpl implements SSLInfo {
             "providerName='" + providerName + '\'' +
             ", protocols=" + protocols +
             ", ciphers=" + ciphers +
+            ", completedHandshakes=" + completedHandshakes +
+            ", resumedHandshakes=" + resumedHandshakes +
+            ", averageHandshakeMillis=" + averageHandshakeMillis() +
+            ", queuedHandshakeTasks=" + queuedHandshakeTasks +
             '}';
     }
 
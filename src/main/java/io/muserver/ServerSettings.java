@@ -12,8 +12,9 @@ class ServerSettings {
     final boolean gzipEnabled;
     final Set<String> mimeTypesToGzip;
     final List<RateLimiter> rateLimiters;
+    final Http2Config http2Config;
 
-    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip, List<RateLimiter> rateLimiters) {
+    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip, List<RateLimiter> rateLimiters, Http2Config http2Config) {
         this.minimumGzipSize = minimumGzipSize;
         this.maxHeadersSize = maxHeadersSize;
         this.requestReadTimeoutMillis = requestReadTimeoutMillis;
@@ -22,6 +23,7 @@ class ServerSettings {
         this.gzipEnabled = gzipEnabled;
         this.mimeTypesToGzip = mimeTypesToGzip;
         this.rateLimiters = rateLimiters;
+        this.http2Config = http2Config;
     }
 
     boolean shouldCompress(String declaredLength, String contentType) {
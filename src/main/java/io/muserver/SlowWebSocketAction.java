@@ -0,0 +1,17 @@
+package io.muserver;
+
+/**
+ * What a {@link WebSocketGroup} does with a member that cannot keep up with the messages being sent to it.
+ */
+public enum SlowWebSocketAction {
+    /**
+     * The message is not sent to the slow member, which stays in the group and receives later messages once
+     * it has caught up.
+     */
+    DROP_MESSAGE,
+    /**
+     * The slow member's connection is closed without waiting for queued messages to be sent, and it is removed
+     * from the group.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,160 @@
+package io.muserver;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.AsyncMapping;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Maps the host name that a client asks for with SNI to the SslContext to use for it.
+ * <p>The SslContext for a host is built on a background executor the first time a client asks for it, so that the
+ * event loop is not blocked while the keystore is loaded, and the most recently used ones are cached.</p>
+ */
+class SniSslContextMapping implements AsyncMapping<String, SslContext> {
+    private static final Logger log = LoggerFactory.getLogger(SniSslContextMapping.class);
+
+    private final SslContext defaultContext;
+    private final Map<String, SSLContextBuilder> hostConfigs;
+    private final boolean http2;
+    private final Consumer<SslContext> onCreated;
+    private final Executor executor;
+    private final LinkedHashMap<String, CachedContext> cache; // guarded by itself
+    private final Map<String, CompletableFuture<SslContext>> building = new HashMap<>(); // guarded by cache
+
+    /**
+     * @param defaultContext The context to use when the client does not send a host name or no host config matches it
+     * @param hostConfigs    A map of lower-case host names, or wildcards such as <code>*.example.org</code>, to their configs
+     * @param cacheSize      The maximum number of host contexts to keep
+     * @param http2          Whether the contexts should advertise HTTP2 support
+     * @param previous       The mapping being replaced, if any, so that contexts of host configs that are the same
+     *                       instance and have not had their keystore reloaded can be reused
+     * @param onCreated      Called each time a host context is created
+     * @param executor       The executor that host contexts are built on
+     */
+    SniSslContextMapping(SslContext defaultContext, Map<String, SSLContextBuilder> hostConfigs, int cacheSize, boolean http2,
+                         SniSslContextMapping previous, Consumer<SslContext> onCreated, Executor executor) {
+        this.defaultContext = defaultContext;
+        this.hostConfigs = hostConfigs;
+        this.http2 = http2;
+        this.onCreated = onCreated;
+        this.executor = executor;
+        this.cache = new LinkedHashMap<String, CachedContext>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedContext> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        if (previous != null && previous.http2 == http2) {
+            previous.forEachCached(cached -> {
+                if (hostConfigs.get(cached.key) == cached.config && cached.config.keystoreVersion() == cached.keystoreVersion) {
+                    cache.put(cached.key, cached);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Future<SslContext> map(String hostname, Promise<SslContext> promise) {
+        String key = hostname == null ? null : configKey(hostname.toLowerCase(Locale.ROOT));
+        if (key == null) {
+            return promise.setSuccess(defaultContext);
+        }
+        CompletableFuture<SslContext> build;
+        synchronized (cache) {
+            CachedContext cached = cache.get(key);
+            if (cached != null) {
+                return promise.setSuccess(cached.context);
+            }
+            build = building.get(key);
+            if (build == null) {
+                build = new CompletableFuture<>();
+                building.put(key, build);
+                startBuild(key, build);
+            }
+        }
+        build.thenAccept(promise::trySuccess);
+        return promise;
+    }
+
+    private void startBuild(String key, CompletableFuture<SslContext> build) {
+        SSLContextBuilder config = hostConfigs.get(key);
+        try {
+            executor.execute(() -> {
+                int keystoreVersion = config.keystoreVersion();
+                SslContext context;
+                try {
+                    context = config.toNettySslContext(http2);
+                } catch (Exception e) {
+                    log.warn("Could not create the SSL context for " + key + " so the default certificate will be used", e);
+                    synchronized (cache) {
+                        building.remove(key);
+                    }
+                    build.complete(defaultContext);
+                    return;
+                }
+                onCreated.accept(context);
+                synchronized (cache) {
+                    building.remove(key);
+                    cache.put(key, new CachedContext(key, config, keystoreVersion, context));
+                }
+                build.complete(context);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not create the SSL context for " + key + " so the default certificate will be used", e);
+            building.remove(key);
+            build.complete(defaultContext);
+        }
+    }
+
+    private String configKey(String hostname) {
+        if (hostConfigs.containsKey(hostname)) {
+            return hostname;
+        }
+        int firstDot = hostname.indexOf('.');
+        if (firstDot > 0) {
+            String wildcard = "*" + hostname.substring(firstDot);
+            if (hostConfigs.containsKey(wildcard)) {
+                return wildcard;
+            }
+        }
+        return null;
+    }
+
+    void forEachCachedContext(Consumer<SslContext> consumer) {
+        forEachCached(cached -> consumer.accept(cached.context));
+    }
+
+    private void forEachCached(Consumer<CachedContext> consumer) {
+        CachedContext[] copy;
+        synchronized (cache) {
+            copy = cache.values().toArray(new CachedContext[0]);
+        }
+        for (CachedContext cached : copy) {
+            consumer.accept(cached);
+        }
+    }
+
+    private static class CachedContext {
+        private final String key;
+        private final SSLContextBuilder config;
+        private final int keystoreVersion;
+        private final SslContext context;
+
+        private CachedContext(String key, SSLContextBuilder config, int keystoreVersion, SslContext context) {
+            this.key = key;
+            this.config = config;
+            this.keystoreVersion = keystoreVersion;
+            this.context = context;
+        }
+    }
+}
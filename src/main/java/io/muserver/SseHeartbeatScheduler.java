@@ -0,0 +1,43 @@
+package io.muserver;
+
+import io.netty.util.HashedWheelTimer;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>Sends heartbeat comments to Server-Sent Event streams that have not had anything written to them for their
+ * heartbeat interval, using a single timer that is shared by all the publishers of a server.</p>
+ * <p>Publishers only record the time of their last write, and each one has an {@link IdleTimeout} based on that
+ * time. If a heartbeat cannot be written then the client has gone and the publisher is closed.</p>
+ */
+class SseHeartbeatScheduler {
+
+    private static final ByteBuffer HEARTBEAT = ByteBuffer.wrap(":\n\n".getBytes(UTF_8)).asReadOnlyBuffer();
+
+    private final HashedWheelTimer timer;
+
+    SseHeartbeatScheduler(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Starts sending heartbeats to a publisher's stream
+     * @param publisher The publisher
+     * @param intervalNanos The time without writes after which a heartbeat is sent
+     * @return The heartbeat timeout, which must be cancelled when the publisher closes
+     */
+    IdleTimeout start(AsyncSsePublisherImpl publisher, long intervalNanos) {
+        IdleTimeout heartbeat = new IdleTimeout(timer, intervalNanos, publisher::lastWriteNanos,
+            timeout -> publisher.writeBytes(HEARTBEAT.duplicate(), error -> {
+                if (error == null) {
+                    timeout.start();
+                } else {
+                    publisher.close();
+                }
+            }));
+        heartbeat.start();
+        return heartbeat;
+    }
+}
@@ -1,6 +1,7 @@
 package io.muserver;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -104,7 +105,30 @@ public interface SsePublisher {
     static SsePublisher start(MuRequest request, MuResponse response) {
         response.contentType(ContentTypes.TEXT_EVENT_STREAM);
         response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
-        return new SsePublisherImpl(request.handleAsync(), response);
+        return new SsePublisherImpl(request.handleAsync(), response, null, 0);
+    }
+
+    /**
+     * <p>Creates a new Server-Sent Events publisher that resumes the stream of a client that is reconnecting.</p>
+     * <p>This is the same as {@link #start(MuRequest, MuResponse)} except that if the request has a
+     * <code>Last-Event-ID</code> header then the events in the replay buffer that the client missed are sent before
+     * this method returns. Events sent with an ID by the returned publisher are added to the buffer.</p>
+     * @param request The current MuRequest
+     * @param response The current MuResponse
+     * @param replayBuffer The buffer of recent events for the stream that the client is subscribing to
+     * @return Returns a publisher that can be used to send messages to the client.
+     * @see SseReplayBuffer
+     */
+    static SsePublisher start(MuRequest request, MuResponse response, SseReplayBuffer replayBuffer) {
+        Mutils.notNull("replayBuffer", replayBuffer);
+        response.contentType(ContentTypes.TEXT_EVENT_STREAM);
+        response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
+        SseReplayBuffer.Replay replay = replayBuffer.replayAfter(request.headers().get(HeaderNames.LAST_EVENT_ID));
+        SsePublisherImpl publisher = new SsePublisherImpl(request.handleAsync(), response, replayBuffer, replay.upToSequence);
+        if (replay.data.length > 0) {
+            response.sendChunk(new String(replay.data, StandardCharsets.UTF_8));
+        }
+        return publisher;
     }
 }
 
@@ -112,10 +136,14 @@ class SsePublisherImpl implements SsePublisher {
 
     private final AsyncHandle asyncHandle;
     private final MuResponse response;
+    private final SseReplayBuffer replayBuffer;
+    private final long replayedUpTo;
 
-    SsePublisherImpl(AsyncHandle asyncHandle, MuResponse response) {
+    SsePublisherImpl(AsyncHandle asyncHandle, MuResponse response, SseReplayBuffer replayBuffer, long replayedUpTo) {
         this.asyncHandle = asyncHandle;
         this.response = response;
+        this.replayBuffer = replayBuffer;
+        this.replayedUpTo = replayedUpTo;
     }
 
     @Override
@@ -130,7 +158,13 @@ class SsePublisherImpl implements SsePublisher {
 
     @Override
     public void send(String message, String event, String eventID) throws IOException {
-        sendChunk(dataText(message, event, eventID));
+        String text = dataText(message, event, eventID);
+        if (replayBuffer != null && eventID != null
+            && replayBuffer.add(eventID, text.getBytes(StandardCharsets.UTF_8)) <= replayedUpTo) {
+            // already sent to the client when the buffered events were replayed
+            return;
+        }
+        sendChunk(text);
     }
 
     @Override
@@ -0,0 +1,27 @@
+package io.muserver;
+
+/**
+ * What an {@link AsyncSsePublisher} does when an event is sent while more than the maximum number of bytes set with
+ * {@link AsyncSsePublisher#setOutboundLimit(long, SseQueueFullAction)} is waiting to be written, which happens when
+ * a client reads more slowly than events are published.
+ */
+public enum SseQueueFullAction {
+    /**
+     * The event is not sent and its completion stage completes exceptionally. When the client has caught up, an
+     * event with the type <code>gap</code> is sent before the next event. Its data is the number of events that were
+     * dropped, so that the client knows it has missed events and can, for example, reload its state.
+     */
+    DROP_WITH_GAP_MARKER,
+    /**
+     * Only the latest event is kept until the client has caught up, and is then sent. Events that are replaced by a
+     * later event are not sent and their completion stages complete exceptionally. This is suitable for streams
+     * where each event is a snapshot of some state, so clients only need the latest one.
+     */
+    COALESCE_TO_LATEST,
+    /**
+     * The event is not sent, its completion stage completes exceptionally, and the connection to the client is
+     * closed immediately without sending the data that is waiting to be written. For HTTP2 only the request's
+     * stream is reset.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,152 @@
+package io.muserver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>A bounded buffer of recent Server-Sent Events that allows clients that reconnect to receive the events they
+ * missed while they were disconnected.</p>
+ * <p>When a browser reconnects to an event stream it sends the ID of the last event it received in the
+ * <code>Last-Event-ID</code> request header. A publisher created with {@link AsyncSsePublisher#start(MuRequest, MuResponse, SseReplayBuffer)}
+ * or {@link SsePublisher#start(MuRequest, MuResponse, SseReplayBuffer)} first sends the client every buffered event
+ * after that ID, and then any events published to it. If the ID is not in the buffer (for example because it has been
+ * evicted) then all buffered events are sent. Clients that connect without a <code>Last-Event-ID</code> are not sent
+ * any buffered events.</p>
+ * <p>Only events with an ID are buffered. Events sent with an ID by a publisher that uses this buffer are added to it
+ * automatically, and an event with an ID that is already in the buffer is not added again, so one buffer can be shared
+ * by all the publishers of a stream or topic. Use {@link #record(String, String, String)} to add events when no
+ * clients are connected. A publisher does not send a live event that it has already replayed to its client.</p>
+ * <p>The oldest events are evicted when the buffer has more than the maximum number of events or bytes. Create a
+ * buffer with {@link SseReplayBufferBuilder#sseReplayBuffer()}. This class is thread safe.</p>
+ */
+public class SseReplayBuffer {
+
+    private final int maxEvents;
+    private final long maxBytes;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<String, Entry> byId = new HashMap<>();
+    private long lastSequence = 0;
+    private long bytes = 0;
+
+    SseReplayBuffer(int maxEvents, long maxBytes) {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds an event to the buffer without sending it to any clients, so that it can be replayed to clients that
+     * reconnect. This does nothing if an event with the same ID is already in the buffer.
+     * @param message The message
+     * @param event An event name, or <code>null</code> for the default <code>message</code> type
+     * @param eventID The ID of the event
+     * @throws IllegalArgumentException If the event ID is null, or the ID or event name contains a line break
+     */
+    public void record(String message, String event, String eventID) {
+        Mutils.notNull("eventID", eventID);
+        add(eventID, SsePublisherImpl.dataText(message, event, eventID).getBytes(UTF_8));
+    }
+
+    /**
+     * @return The number of events currently in the buffer
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The total size of the buffered events, as sent to clients
+     */
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes all events from the buffer.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byId.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Adds an encoded event, unless an event with the same ID is already buffered.
+     * @return The sequence number of the event, which may have been added earlier by another publisher
+     */
+    synchronized long add(String eventID, byte[] encoded) {
+        Entry existing = byId.get(eventID);
+        if (existing != null) {
+            return existing.sequence;
+        }
+        Entry entry = new Entry(++lastSequence, eventID, encoded);
+        entries.add(entry);
+        byId.put(eventID, entry);
+        bytes += encoded.length;
+        while (entries.size() > maxEvents || (bytes > maxBytes && !entries.isEmpty())) {
+            Entry evicted = entries.poll();
+            byId.remove(evicted.id);
+            bytes -= evicted.data.length;
+        }
+        return entry.sequence;
+    }
+
+    /**
+     * Gets the events a reconnecting client has missed.
+     * @param lastEventID The value of the client's <code>Last-Event-ID</code> header, or null
+     * @return The events to send, and the sequence number of the last of them
+     */
+    synchronized Replay replayAfter(String lastEventID) {
+        if (lastEventID == null) {
+            return new Replay(new byte[0], 0);
+        }
+        Entry last = byId.get(lastEventID);
+        long after = last == null ? 0 : last.sequence;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            if (entry.sequence > after) {
+                out.write(entry.data, 0, entry.data.length);
+            }
+        }
+        return new Replay(out.toByteArray(), lastSequence);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SseReplayBuffer{" +
+            "events=" + entries.size() +
+            ", bytes=" + bytes +
+            ", maxEvents=" + maxEvents +
+            ", maxBytes=" + maxBytes +
+            '}';
+    }
+
+    static class Replay {
+        final byte[] data;
+        /**
+         * Events with this sequence number or lower have been replayed (or were sent before the client's last event),
+         * so are not sent again by the publisher.
+         */
+        final long upToSequence;
+
+        private Replay(byte[] data, long upToSequence) {
+            this.data = data;
+            this.upToSequence = upToSequence;
+        }
+    }
+
+    private static class Entry {
+        private final long sequence;
+        private final String id;
+        private final byte[] data;
+
+        private Entry(long sequence, String id, byte[] data) {
+            this.sequence = sequence;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.muserver;
+
+/**
+ * <p>Used to create an {@link SseReplayBuffer} that keeps recent Server-Sent Events so that they can be sent to
+ * clients that reconnect.</p>
+ */
+public class SseReplayBufferBuilder {
+
+    private int maxEvents = 1000;
+    private long maxBytes = 1024 * 1024;
+
+    /**
+     * <p>Sets the maximum number of events kept in the buffer. When this is exceeded the oldest event is removed.</p>
+     * <p>The default is <code>1000</code>.</p>
+     * @param maxEvents The maximum number of events, which must be at least 1
+     * @return This builder
+     */
+    public SseReplayBufferBuilder withMaxEvents(int maxEvents) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("maxEvents must be at least 1");
+        }
+        this.maxEvents = maxEvents;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum total size, in bytes, of the events kept in the buffer. When this is exceeded the oldest
+     * events are removed.</p>
+     * <p>The default is 1MB.</p>
+     * @param maxBytes The maximum size of the buffered events, which must be at least 1
+     * @return This builder
+     */
+    public SseReplayBufferBuilder withMaxBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Creates a new builder
+     * @return A new replay buffer builder
+     */
+    public static SseReplayBufferBuilder sseReplayBuffer() {
+        return new SseReplayBufferBuilder();
+    }
+
+    /**
+     * Creates the buffer from the builder
+     * @return A new, empty buffer
+     */
+    public SseReplayBuffer build() {
+        return new SseReplayBuffer(maxEvents, maxBytes);
+    }
+}
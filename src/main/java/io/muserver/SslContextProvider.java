@@ -1,46 +1,202 @@
 package io.muserver;
 
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.handler.ssl.JdkSslContext;
-import io.netty.handler.ssl.OpenSslContext;
-import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
-import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.security.SecureRandom;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
 
 class SslContextProvider {
+    private static final Logger log = LoggerFactory.getLogger(SslContextProvider.class);
 
-    private final AtomicReference<SslContext> nettySslContext = new AtomicReference<>();
+    private volatile Contexts contexts;
     private volatile SSLInfo sslInfo;
+    private final AtomicLong completedHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeNanos = new AtomicLong();
+    private final AtomicInteger queuedHandshakeTasks = new AtomicInteger();
+    private final Executor handshakeExecutor;
+    private final Executor hostContextExecutor;
+    private final SecureRandom random = new SecureRandom();
+    private volatile OpenSslSessionTicketKey[] ticketKeys = null;
+    private SSLContextBuilder config;
+    private boolean http2;
+
+    /**
+     * @param handshakeExecutor The executor to run SSLEngine delegated tasks on, or <code>null</code> to run them on the event loop
+     * @param hostContextExecutor The executor to build the contexts of SNI host configs on
+     */
+    SslContextProvider(SSLContextBuilder config, boolean http2, Executor handshakeExecutor, Executor hostContextExecutor) throws Exception {
+        this.hostContextExecutor = hostContextExecutor;
+        this.handshakeExecutor = handshakeExecutor == null ? null : task -> {
+            queuedHandshakeTasks.incrementAndGet();
+            try {
+                handshakeExecutor.execute(() -> {
+                    queuedHandshakeTasks.decrementAndGet();
+                    task.run();
+                });
+            } catch (RuntimeException e) {
+                queuedHandshakeTasks.decrementAndGet();
+                throw e;
+            }
+        };
+        set(config, http2);
+    }
 
-    SslContextProvider(SslContext context) {
-        set(context);
+    /**
+     * Creates a handler for a new connection that uses the handshake executor, if there is one
+     */
+    SslHandler newHandler(SslContext context, ByteBufAllocator allocator) {
+        return handshakeExecutor == null ? context.newHandler(allocator) : context.newHandler(allocator, handshakeExecutor);
     }
 
     public SslContext get() {
-        return nettySslContext.get();
+        return contexts.defaultContext;
     }
 
-    public void set(SslContext newValue) {
-        String provider = (newValue instanceof JdkSslContext)
+    /**
+     * @return The default context and SNI mapping to use for a new connection
+     */
+    Contexts contexts() {
+        return contexts;
+    }
+
+    /**
+     * Replaces the default context and any host-specific contexts
+     */
+    synchronized void set(SSLContextBuilder config, boolean http2) throws Exception {
+        SslContext defaultContext = config.toNettySslContext(http2);
+        log.debug("SSL Context is " + defaultContext);
+        Map<String, SSLContextBuilder> hostConfigs = config.hostConfigs();
+        Contexts previous = this.contexts;
+        SniSslContextMapping sniMapping = hostConfigs.isEmpty() ? null
+            : new SniSslContextMapping(defaultContext, hostConfigs, config.hostConfigCacheSize(), http2,
+            previous == null ? null : previous.sniMapping, context -> applyTicketKeys(context, ticketKeys), hostContextExecutor);
+        sslInfo = createSslInfo(defaultContext);
+        applyTicketKeys(defaultContext, ticketKeys);
+        this.config = config;
+        this.http2 = http2;
+        this.contexts = new Contexts(defaultContext, sniMapping);
+    }
+
+    private SSLInfo createSslInfo(SslContext context) {
+        String provider = (context instanceof JdkSslContext)
             ? "JDK"
-            : (newValue instanceof OpenSslContext || newValue instanceof ReferenceCountedOpenSslContext)
+            : (context instanceof OpenSslContext || context instanceof ReferenceCountedOpenSslContext)
             ? "OpenSSL"
             : "unknown";
-        SSLEngine engine = newValue.newEngine(ByteBufAllocator.DEFAULT);
+        SSLEngine engine = context.newEngine(ByteBufAllocator.DEFAULT);
         List<String> protocols = asList(engine.getEnabledProtocols());
         List<String> ciphers = asList(engine.getEnabledCipherSuites());
-        sslInfo = new SSLInfoImpl(provider, protocols, ciphers);
         engine.closeOutbound();
-        nettySslContext.set(newValue);
+        return new SSLInfoImpl(provider, protocols, ciphers, completedHandshakes, resumedHandshakes, totalHandshakeNanos, queuedHandshakeTasks);
+    }
+
+    /**
+     * Reloads any keystore files of the current config that have changed and, if any did, replaces the contexts
+     * used for new connections.
+     */
+    synchronized void reloadChangedKeystores() {
+        boolean changed = config.reloadKeystoreIfChanged();
+        for (SSLContextBuilder hostConfig : config.hostConfigs().values()) {
+            changed |= hostConfig.reloadKeystoreIfChanged();
+        }
+        if (changed) {
+            try {
+                set(config, http2);
+            } catch (Exception e) {
+                log.warn("Could not create a new SSL context after a keystore changed. The old one will still be used.", e);
+            }
+        }
     }
 
     SSLInfo sslInfo() {
         return sslInfo;
     }
 
+    /**
+     * Records a successful handshake.
+     * @param session The negotiated session
+     * @param handshakeStartMillis The epoch millis of when the connection was accepted
+     * @param durationNanos The time from the connection being accepted until the handshake completed
+     */
+    void onHandshakeComplete(SSLSession session, long handshakeStartMillis, long durationNanos) {
+        totalHandshakeNanos.addAndGet(durationNanos);
+        completedHandshakes.incrementAndGet();
+        // A resumed session keeps the creation time of the connection that originally negotiated it
+        if (session != null && session.getCreationTime() < handshakeStartMillis) {
+            resumedHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return True if the current context uses OpenSSL, which is required for server-generated session ticket keys
+     */
+    boolean supportsTicketKeys() {
+        return get().sessionContext() instanceof OpenSslSessionContext;
+    }
+
+    /**
+     * Generates a new session ticket key, keeping the previous one so that recently issued tickets can still be decrypted.
+     * <p>This does nothing when the current context does not use OpenSSL.</p>
+     */
+    void rotateTicketKeys() {
+        if (!supportsTicketKeys()) {
+            return;
+        }
+        OpenSslSessionTicketKey newKey = new OpenSslSessionTicketKey(randomBytes(OpenSslSessionTicketKey.NAME_SIZE),
+            randomBytes(OpenSslSessionTicketKey.HMAC_KEY_SIZE), randomBytes(OpenSslSessionTicketKey.AES_KEY_SIZE));
+        OpenSslSessionTicketKey[] current = ticketKeys;
+        OpenSslSessionTicketKey[] keys = current == null
+            ? new OpenSslSessionTicketKey[]{newKey}
+            : new OpenSslSessionTicketKey[]{newKey, current[0]};
+        ticketKeys = keys;
+        Contexts contexts = this.contexts;
+        applyTicketKeys(contexts.defaultContext, keys);
+        if (contexts.sniMapping != null) {
+            contexts.sniMapping.forEachCachedContext(context -> applyTicketKeys(context, keys));
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void applyTicketKeys(SslContext context, OpenSslSessionTicketKey[] keys) {
+        if (keys != null && context != null) {
+            SSLSessionContext sessionContext = context.sessionContext();
+            if (sessionContext instanceof OpenSslSessionContext) {
+                ((OpenSslSessionContext) sessionContext).setTicketKeys(keys);
+            }
+        }
+    }
+
+    /**
+     * The default context and the SNI mapping, which are replaced together so that a new connection never sees one
+     * from an old config and the other from a new config.
+     */
+    static class Contexts {
+        final SslContext defaultContext;
+        final SniSslContextMapping sniMapping; // null if there are no host-specific configs
+
+        private Contexts(SslContext defaultContext, SniSslContextMapping sniMapping) {
+            this.defaultContext = defaultContext;
+            this.sniMapping = sniMapping;
+        }
+    }
+
 }
@@ -0,0 +1,160 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A group of web socket sessions that messages can be broadcast to.</p>
+ * <p>A message sent to the group is encoded into a web socket frame once, and the same bytes are then written
+ * to every member, so the cost of sending a message depends mostly on the number of messages rather than the number
+ * of messages multiplied by the number of members. (Members that have negotiated compression have the shared payload
+ * compressed for their connection.)</p>
+ * <p>Sessions are removed from the group automatically when their connections close.</p>
+ * <p>Create a group with {@link WebSocketGroupBuilder#webSocketGroup()}. This class is thread safe.</p>
+ */
+public class WebSocketGroup {
+
+    private final Map<MuWebSocketSessionImpl, ChannelFutureListener> members = new ConcurrentHashMap<>();
+    private final SlowWebSocketAction slowMemberAction;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnectedMembers = new AtomicLong();
+
+    WebSocketGroup(SlowWebSocketAction slowMemberAction) {
+        this.slowMemberAction = slowMemberAction;
+    }
+
+    /**
+     * Adds a session to this group.
+     * @param session A session, for example from {@link MuWebSocket#onConnect(MuWebSocketSession)}
+     * @return <code>true</code> if added; <code>false</code> if it was already a member
+     * @throws IllegalArgumentException if the session was not created by this server
+     */
+    public boolean add(MuWebSocketSession session) {
+        Mutils.notNull("session", session);
+        if (!(session instanceof MuWebSocketSessionImpl)) {
+            throw new IllegalArgumentException("Only sessions created by Mu Server can be added to a group");
+        }
+        MuWebSocketSessionImpl member = (MuWebSocketSessionImpl) session;
+        ChannelFutureListener removeOnClose = future -> members.remove(member);
+        if (members.putIfAbsent(member, removeOnClose) != null) {
+            return false;
+        }
+        member.closeFuture().addListener(removeOnClose);
+        return true;
+    }
+
+    /**
+     * Removes a session from this group. It is not necessary to call this when a session closes.
+     * @param session The session to remove
+     * @return <code>true</code> if it was removed; <code>false</code> if it was not a member
+     */
+    public boolean remove(MuWebSocketSession session) {
+        if (!(session instanceof MuWebSocketSessionImpl)) {
+            return false;
+        }
+        MuWebSocketSessionImpl member = (MuWebSocketSessionImpl) session;
+        ChannelFutureListener removeOnClose = members.remove(member);
+        if (removeOnClose == null) {
+            return false;
+        }
+        member.closeFuture().removeListener(removeOnClose);
+        return true;
+    }
+
+    /**
+     * @return The number of sessions currently in the group
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return A snapshot of the sessions currently in the group
+     */
+    public Set<MuWebSocketSession> members() {
+        return new HashSet<>(members.keySet());
+    }
+
+    /**
+     * Sends a text message to every member of the group asynchronously.
+     * @param message The message to send
+     * @return The number of members the message was written to, which excludes members that were skipped or
+     * disconnected for being too slow.
+     */
+    public int sendText(String message) {
+        Mutils.notNull("message", message);
+        return broadcast(MuWebSocketSessionImpl.OPCODE_TEXT, ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, message));
+    }
+
+    /**
+     * Sends a binary message to every member of the group asynchronously.
+     * <p>The buffer is not copied, so its contents must not be changed after calling this method.</p>
+     * @param message The message to send
+     * @return The number of members the message was written to, which excludes members that were skipped or
+     * disconnected for being too slow.
+     */
+    public int sendBinary(ByteBuffer message) {
+        Mutils.notNull("message", message);
+        return broadcast(MuWebSocketSessionImpl.OPCODE_BINARY, Unpooled.wrappedBuffer(message));
+    }
+
+    private int broadcast(int opcode, ByteBuf payload) {
+        ByteBuf encodedFrame = MuWebSocketSessionImpl.encodeFrame(opcode, payload.retain());
+        try {
+            int sent = 0;
+            for (MuWebSocketSessionImpl member : members.keySet()) {
+                if (!member.isWritable()) {
+                    if (slowMemberAction == SlowWebSocketAction.DISCONNECT) {
+                        if (remove(member)) {
+                            disconnectedMembers.incrementAndGet();
+                            member.abort();
+                        }
+                    } else {
+                        droppedMessages.incrementAndGet();
+                    }
+                } else if (member.sendEncoded(encodedFrame, opcode, payload)) {
+                    sent++;
+                }
+            }
+            return sent;
+        } finally {
+            encodedFrame.release();
+            payload.release();
+        }
+    }
+
+    /**
+     * @return The number of times a message was not sent to a member because it was too slow, when using
+     * {@link SlowWebSocketAction#DROP_MESSAGE}
+     */
+    public long droppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * @return The number of members disconnected for being too slow, when using {@link SlowWebSocketAction#DISCONNECT}
+     */
+    public long disconnectedMembers() {
+        return disconnectedMembers.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WebSocketGroup{" +
+            "size=" + members.size() +
+            ", slowMemberAction=" + slowMemberAction +
+            ", droppedMessages=" + droppedMessages +
+            ", disconnectedMembers=" + disconnectedMembers +
+            '}';
+    }
+}
@@ -0,0 +1,40 @@
+package io.muserver;
+
+/**
+ * <p>Used to create a {@link WebSocketGroup} that sends the same messages to many web socket sessions.</p>
+ */
+public class WebSocketGroupBuilder {
+
+    private SlowWebSocketAction slowMemberAction = SlowWebSocketAction.DROP_MESSAGE;
+
+    /**
+     * <p>Specifies what happens when a message is sent to the group while a member's connection already has more
+     * data queued than the channel's write buffer high water mark, which happens when a client reads more slowly than
+     * messages are sent.</p>
+     * <p>The default is {@link SlowWebSocketAction#DROP_MESSAGE}.</p>
+     * @param action The action to take
+     * @return This builder
+     * @throws IllegalArgumentException If the action is null
+     */
+    public WebSocketGroupBuilder withSlowMemberAction(SlowWebSocketAction action) {
+        Mutils.notNull("action", action);
+        this.slowMemberAction = action;
+        return this;
+    }
+
+    /**
+     * Creates a new builder
+     * @return A new web socket group builder
+     */
+    public static WebSocketGroupBuilder webSocketGroup() {
+        return new WebSocketGroupBuilder();
+    }
+
+    /**
+     * Creates the group from the builder
+     * @return A new, empty group
+     */
+    public WebSocketGroup build() {
+        return new WebSocketGroup(slowMemberAction);
+    }
+}
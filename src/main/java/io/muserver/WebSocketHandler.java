@@ -11,16 +11,12 @@ public class WebSocketHandler implements MuHandler {
 
     private final MuWebSocketFactory factory;
     private final String path;
-    private final long idleReadTimeoutMills;
-    private final long pingAfterWriteMillis;
-    private final int maxFramePayloadLength;
+    private final WebSocketSettings settings;
 
-    WebSocketHandler(MuWebSocketFactory factory, String path, long idleReadTimeoutMills, long pingAfterWriteMillis, int maxFramePayloadLength) {
+    WebSocketHandler(MuWebSocketFactory factory, String path, WebSocketSettings settings) {
         this.factory = factory;
         this.path = path;
-        this.idleReadTimeoutMills = idleReadTimeoutMills;
-        this.pingAfterWriteMillis = pingAfterWriteMillis;
-        this.maxFramePayloadLength = maxFramePayloadLength;
+        this.settings = settings;
     }
 
     @Override
@@ -45,7 +41,7 @@ public class WebSocketHandler implements MuHandler {
         NettyRequestAdapter reqImpl = (NettyRequestAdapter) request;
         boolean upgraded;
         try {
-            upgraded = reqImpl.websocketUpgrade(muWebSocket, nettyHeaders, idleReadTimeoutMills, pingAfterWriteMillis, maxFramePayloadLength);
+            upgraded = reqImpl.websocketUpgrade(muWebSocket, nettyHeaders, settings);
         } catch (UnsupportedOperationException e) {
             response.status(426);
             response.headers().set(HeaderNames.SEC_WEBSOCKET_VERSION, "13");
@@ -58,7 +54,8 @@ public class WebSocketHandler implements MuHandler {
     }
 
     static boolean isWebSocketUpgrade(MuRequest request) {
-        return request.headers().contains(HeaderNames.UPGRADE, HeaderValues.WEBSOCKET, true);
+        return request.headers().contains(HeaderNames.UPGRADE, HeaderValues.WEBSOCKET, true)
+            || request instanceof NettyRequestAdapter && ((NettyRequestAdapter) request).isWebSocketConnect();
     }
 
 }
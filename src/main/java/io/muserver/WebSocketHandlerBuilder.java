@@ -1,5 +1,6 @@
 package io.muserver;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,6 +13,16 @@ public class WebSocketHandlerBuilder implements MuHandlerBuilder<WebSocketHandle
     private long idleReadTimeoutMills = TimeUnit.MINUTES.toMillis(5);
     private long pingAfterWriteMillis = TimeUnit.SECONDS.toMillis(30);
     private int maxFramePayloadLength = 65536;
+    private boolean partialMessages = false;
+    private int maxMessageLength = 65536;
+    private long maxQueuedBytes = 0;
+    private WebSocketQueueFullAction queueFullAction = WebSocketQueueFullAction.BLOCK;
+    private boolean perMessageDeflate = false;
+    private int compressionLevel = 6;
+    private int clientMaxWindowBits = 15;
+    private boolean serverNoContextTakeoverAllowed = true;
+    private boolean clientNoContextTakeover = false;
+    private int minimumCompressionSize = 256;
 
     /**
      * <p>Sets the factory that decides whether to create a websocket connection for a request.</p>
@@ -84,6 +95,150 @@ public class WebSocketHandlerBuilder implements MuHandlerBuilder<WebSocketHandle
         return this;
     }
 
+    /**
+     * <p>Specifies whether fragmented messages from clients are passed to the websocket a fragment at a time.</p>
+     * <p>When <code>true</code>, each fragment is passed to {@link MuWebSocket#onPartialText(String, boolean, DoneCallback)}
+     * or {@link MuWebSocket#onPartialBinary(ByteBuffer, boolean, DoneCallback)} as it arrives, which means large
+     * messages do not need to be held in memory. When <code>false</code>, the fragments are joined by the server
+     * (up to the {@link #withMaxMessageLength(int)} limit) and passed to {@link MuWebSocket#onText(String, DoneCallback)}
+     * or {@link MuWebSocket#onBinary(ByteBuffer, DoneCallback)}.</p>
+     * <p>The default is <code>false</code>.</p>
+     * @param partialMessages <code>true</code> to receive fragments as they arrive
+     * @return This builder
+     */
+    public WebSocketHandlerBuilder withPartialMessages(boolean partialMessages) {
+        this.partialMessages = partialMessages;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size in bytes of a fragmented message when fragments are joined by the server. If a client
+     * sends a longer message then the connection is closed with status code <code>1009</code>.
+     * <p>This does not apply when {@link #withPartialMessages(boolean)} is <code>true</code>, and messages that are
+     * sent in a single frame are limited by {@link #withMaxFramePayloadLength(int)} instead.</p>
+     * <p>The default is <code>65536</code>.</p>
+     * @param maxMessageLength The maximum allowed size in bytes of a fragmented message.
+     * @return This builder
+     */
+    public WebSocketHandlerBuilder withMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength < 1024) {
+            throw new IllegalArgumentException("The maxMessageLength must be at least 1024 bytes");
+        }
+        this.maxMessageLength = maxMessageLength;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of bytes of messages that can be queued for a session before the
+     * {@link #withQueueFullAction(WebSocketQueueFullAction)} is applied. Messages are queued when a client reads them
+     * more slowly than they are sent.</p>
+     * <p>The default is <code>0</code>, which means there is no limit.</p>
+     * @param maxQueuedBytes The maximum queued bytes per session, or <code>0</code> for no limit
+     * @return This builder
+     */
+    public WebSocketHandlerBuilder withMaxQueuedBytes(long maxQueuedBytes) {
+        if (maxQueuedBytes < 0) {
+            throw new IllegalArgumentException("The maxQueuedBytes must be 0 or greater");
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+        return this;
+    }
+
+    /**
+     * Specifies what happens when a message is sent to a session that has already reached its
+     * {@link #withMaxQueuedBytes(long)} limit.
+     * <p>The default is {@link WebSocketQueueFullAction#BLOCK}.</p>
+     * @param queueFullAction The action to take
+     * @return This builder
+     * @throws IllegalArgumentException If the action is null
+     */
+    public WebSocketHandlerBuilder withQueueFullAction(WebSocketQueueFullAction queueFullAction) {
+        Mutils.notNull("queueFullAction", queueFullAction);
+        this.queueFullAction = queueFullAction;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether messages can be compressed using the <code>permessage-deflate</code> extension
+     * (<a href="https://tools.ietf.org/html/rfc7692">RFC 7692</a>).</p>
+     * <p>When enabled, compression is used only for clients that offer the extension in their upgrade request.
+     * Compression trades CPU and some per-connection memory for bandwidth, and works best for repetitive text such as JSON.</p>
+     * <p>The default is <code>false</code>.</p>
+     * @param enabled <code>true</code> to allow compression to be negotiated
+     * @return This builder
+     */
+    public WebSocketHandlerBuilder withPerMessageDeflate(boolean enabled) {
+        this.perMessageDeflate = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the compression level used when <code>permessage-deflate</code> is enabled.
+     * <p>The default is <code>6</code>.</p>
+     * @param compressionLevel A value from <code>0</code> (no compression) to <code>9</code> (best compression)
+     * @return This builder
+     * @see #withPerMessageDeflate(boolean)
+     */
+    public WebSocketHandlerBuilder withCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("The compressionLevel must be between 0 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Sets the maximum LZ77 window size that clients which advertise support for <code>client_max_window_bits</code>
+     * are asked to use when compressing messages sent to the server. Smaller windows use less memory on the client
+     * at the cost of a lower compression ratio.
+     * <p>The default is <code>15</code> (a 32KB window).</p>
+     * @param clientMaxWindowBits A value from <code>8</code> to <code>15</code>
+     * @return This builder
+     * @see #withPerMessageDeflate(boolean)
+     */
+    public WebSocketHandlerBuilder withClientMaxWindowBits(int clientMaxWindowBits) {
+        if (clientMaxWindowBits < 8 || clientMaxWindowBits > 15) {
+            throw new IllegalArgumentException("The clientMaxWindowBits must be between 8 and 15");
+        }
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        return this;
+    }
+
+    /**
+     * <p>Configures compression context takeover, which is where the compression dictionary is kept between
+     * messages so that later messages compress better.</p>
+     * <p>Keeping the context costs memory for each connection for as long as it is open. Disabling it means
+     * each message is compressed on its own.</p>
+     * @param serverNoContextTakeoverAllowed If <code>true</code> then compression is still negotiated when a client
+     *                                       asks the server not to keep its compression context. If <code>false</code>
+     *                                       then such clients get uncompressed messages. Defaults to <code>true</code>.
+     * @param clientNoContextTakeover If <code>true</code> then clients that support it are told not to keep their
+     *                                compression context between messages. Defaults to <code>false</code>.
+     * @return This builder
+     * @see #withPerMessageDeflate(boolean)
+     */
+    public WebSocketHandlerBuilder withContextTakeover(boolean serverNoContextTakeoverAllowed, boolean clientNoContextTakeover) {
+        this.serverNoContextTakeoverAllowed = serverNoContextTakeoverAllowed;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        return this;
+    }
+
+    /**
+     * Sets the size in bytes that a message sent by the server must be at least before it is compressed. Smaller
+     * messages are sent uncompressed, as compressing them uses CPU for little or no saving.
+     * <p>The default is <code>256</code>.</p>
+     * @param minimumCompressionSize The minimum size in bytes, or <code>0</code> to compress all messages.
+     * @return This builder
+     * @see #withPerMessageDeflate(boolean)
+     */
+    public WebSocketHandlerBuilder withMinimumCompressionSize(int minimumCompressionSize) {
+        if (minimumCompressionSize < 0) {
+            throw new IllegalArgumentException("The minimumCompressionSize must be 0 or greater");
+        }
+        this.minimumCompressionSize = minimumCompressionSize;
+        return this;
+    }
+
     /**
      * Creates the websocket handler.
      * @return A websocket handler
@@ -93,7 +248,11 @@ public class WebSocketHandlerBuilder implements MuHandlerBuilder<WebSocketHandle
         if (factory == null) {
             throw new IllegalStateException("A web socket factory must be specified");
         }
-        return new WebSocketHandler(factory, path, idleReadTimeoutMills, pingAfterWriteMillis, maxFramePayloadLength);
+        WebSocketSettings settings = new WebSocketSettings(idleReadTimeoutMills, pingAfterWriteMillis, maxFramePayloadLength, partialMessages, maxMessageLength,
+            maxQueuedBytes, queueFullAction,
+            perMessageDeflate ? WebSocketSettings.perMessageDeflate(compressionLevel, clientMaxWindowBits,
+                serverNoContextTakeoverAllowed, clientNoContextTakeover, minimumCompressionSize) : null);
+        return new WebSocketHandler(factory, path, settings);
     }
 
     /**
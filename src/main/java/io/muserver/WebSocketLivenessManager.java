@@ -0,0 +1,142 @@
+package io.muserver;
+
+import io.netty.handler.timeout.IdleState;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Sends pings to, and times out, the websockets of a server using a single timer that is shared by all sessions.</p>
+ * <p>Sessions only record the time of their last read and write, and each check is an {@link IdleTimeout} based on
+ * one of those times. Sessions that really are idle are collected per event loop so that all the pings and timeouts
+ * that are due in a tick of the timer are handled by a single task on each event loop.</p>
+ */
+class WebSocketLivenessManager {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketLivenessManager.class);
+
+    private final HashedWheelTimer timer;
+    private final MuStatsImpl stats;
+    private final ConcurrentHashMap<EventExecutor, Batch> batches = new ConcurrentHashMap<>();
+
+    WebSocketLivenessManager(HashedWheelTimer timer, MuStatsImpl stats) {
+        this.timer = timer;
+        this.stats = stats;
+    }
+
+    /**
+     * Starts the read timeout and ping checks for a session, which stop when the session's channel closes.
+     * @param session The session to check
+     * @param executor The event loop of the session's channel
+     * @param settings The settings of the websocket handler, where a timeout of 0 disables that check
+     */
+    void register(MuWebSocketSessionImpl session, EventExecutor executor, WebSocketSettings settings) {
+        Check readCheck = settings.idleReadTimeoutMills > 0
+            ? new Check(session, executor, IdleState.READER_IDLE, TimeUnit.MILLISECONDS.toNanos(settings.idleReadTimeoutMills)) : null;
+        Check writeCheck = settings.pingAfterWriteMillis > 0
+            ? new Check(session, executor, IdleState.WRITER_IDLE, TimeUnit.MILLISECONDS.toNanos(settings.pingAfterWriteMillis)) : null;
+        if (readCheck == null && writeCheck == null) {
+            return;
+        }
+        if (readCheck != null) {
+            readCheck.timeout.start();
+        }
+        if (writeCheck != null) {
+            writeCheck.timeout.start();
+        }
+        session.closeFuture().addListener(future -> {
+            if (readCheck != null) {
+                readCheck.timeout.cancel();
+            }
+            if (writeCheck != null) {
+                writeCheck.timeout.cancel();
+            }
+        });
+    }
+
+    private Batch batchFor(EventExecutor executor) {
+        return batches.computeIfAbsent(executor, Batch::new);
+    }
+
+    private class Check {
+        private final MuWebSocketSessionImpl session;
+        private final IdleState state;
+        private final IdleTimeout timeout;
+
+        private Check(MuWebSocketSessionImpl session, EventExecutor executor, IdleState state, long periodNanos) {
+            this.session = session;
+            this.state = state;
+            this.timeout = new IdleTimeout(timer, periodNanos, this::lastActivityNanos, idleTimeout -> batchFor(executor).add(this));
+        }
+
+        /**
+         * Called by the timer each time the check's timeout expires
+         */
+        private long lastActivityNanos() {
+            stats.onWebSocketLivenessCheck();
+            return state == IdleState.READER_IDLE ? session.lastReadNanos() : session.lastWriteNanos();
+        }
+
+        /**
+         * Called on the session's event loop once the session has been idle for the period
+         */
+        private void onIdle() {
+            if (timeout.isCancelled()) {
+                return;
+            }
+            if (state == IdleState.READER_IDLE) {
+                stats.onWebSocketIdleTimeout();
+            } else {
+                stats.onWebSocketPingSent();
+            }
+            Http1Connection.onWebSocketIdle(session, state);
+            timeout.start();
+        }
+    }
+
+    /**
+     * The checks that are due on an event loop, which are run by a single task on that event loop.
+     */
+    private static class Batch implements Runnable {
+        private final EventExecutor executor;
+        private final Queue<Check> due = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Batch(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        void add(Check check) {
+            due.add(check);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    log.debug("Could not check websockets as the event loop has shut down");
+                    due.clear();
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            Check check;
+            while ((check = due.poll()) != null) {
+                try {
+                    check.onIdle();
+                } catch (Exception e) {
+                    log.warn("Error while checking websocket liveness", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.muserver;
+
+/**
+ * What a web socket session does when a message is sent while the session already has the maximum number of bytes
+ * queued, as set by {@link WebSocketHandlerBuilder#withMaxQueuedBytes(long)}.
+ */
+public enum WebSocketQueueFullAction {
+    /**
+     * The thread sending the message is blocked until there is space in the queue. Messages sent on the session's
+     * event loop (for example from a {@link DoneCallback}) are queued without blocking.
+     */
+    BLOCK,
+    /**
+     * The oldest queued messages that have not started being written are dropped until there is space for the
+     * new message, and their callbacks are called with an exception. Fragments of partly sent messages, pings,
+     * pongs and close messages are never dropped.
+     */
+    DROP_OLDEST,
+    /**
+     * Queued messages are discarded and the connection is closed with status code <code>1008</code>.
+     */
+    CLOSE
+}
@@ -0,0 +1,60 @@
+package io.muserver;
+
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+
+class WebSocketSettings {
+    final long idleReadTimeoutMills;
+    final long pingAfterWriteMillis;
+    final int maxFramePayloadLength;
+    /**
+     * If false then fragmented messages are aggregated, up to maxMessageLength
+     */
+    final boolean partialMessages;
+    final int maxMessageLength;
+    /**
+     * The maximum bytes queued for a session before the queueFullAction applies, or 0 for no limit
+     */
+    final long maxQueuedBytes;
+    final WebSocketQueueFullAction queueFullAction;
+    /**
+     * The permessage-deflate negotiator, or null if compression is disabled
+     */
+    final WebSocketServerExtensionHandshaker perMessageDeflate;
+
+    WebSocketSettings(long idleReadTimeoutMills, long pingAfterWriteMillis, int maxFramePayloadLength, boolean partialMessages, int maxMessageLength,
+                      long maxQueuedBytes, WebSocketQueueFullAction queueFullAction, WebSocketServerExtensionHandshaker perMessageDeflate) {
+        this.idleReadTimeoutMills = idleReadTimeoutMills;
+        this.pingAfterWriteMillis = pingAfterWriteMillis;
+        this.maxFramePayloadLength = maxFramePayloadLength;
+        this.partialMessages = partialMessages;
+        this.maxMessageLength = maxMessageLength;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.queueFullAction = queueFullAction;
+        this.perMessageDeflate = perMessageDeflate;
+    }
+
+    static WebSocketServerExtensionHandshaker perMessageDeflate(int compressionLevel, int clientMaxWindowBits, boolean allowServerNoContextTakeover,
+                                                                boolean clientNoContextTakeover, int minimumCompressionSize) {
+        // Frames that start a message below the minimum size are sent uncompressed. Continuation frames are never
+        // skipped as netty requires every fragment of a compressed message to be compressed.
+        WebSocketExtensionFilter encoderFilter = frame -> !(frame instanceof ContinuationWebSocketFrame)
+            && frame.content().readableBytes() < minimumCompressionSize;
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            public WebSocketExtensionFilter encoderFilter() {
+                return encoderFilter;
+            }
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        // A client can only be allowed to limit the server's window when the zlib implementation supports it
+        boolean allowServerWindowSize = ZlibCodecFactory.isSupportingWindowSizeAndMemLevel();
+        return new PerMessageDeflateServerExtensionHandshaker(compressionLevel, allowServerWindowSize, clientMaxWindowBits,
+            allowServerNoContextTakeover, clientNoContextTakeover, filterProvider);
+    }
+}
@@ -37,8 +37,9 @@ public class ResourceHandler implements MuHandler {
     private final String directoryListingCss;
     private final DateTimeFormatter dateFormatter;
     private final ResourceCustomizer resourceCustomizer;
+    private final Map<String, List<String>> pushManifest;
 
-    ResourceHandler(ResourceProviderFactory resourceProviderFactory, String pathToServeFrom, String defaultFile, Map<String, ResourceType> extensionToResourceType, boolean directoryListingEnabled, String directoryListingCss, DateTimeFormatter dateFormatter, ResourceCustomizer resourceCustomizer) {
+    ResourceHandler(ResourceProviderFactory resourceProviderFactory, String pathToServeFrom, String defaultFile, Map<String, ResourceType> extensionToResourceType, boolean directoryListingEnabled, String directoryListingCss, DateTimeFormatter dateFormatter, ResourceCustomizer resourceCustomizer, Map<String, List<String>> pushManifest) {
         this.resourceProviderFactory = resourceProviderFactory;
         this.pathToServeFrom = pathToServeFrom;
         this.extensionToResourceType = extensionToResourceType;
@@ -47,6 +48,7 @@ public class ResourceHandler implements MuHandler {
         this.directoryListingCss = directoryListingCss;
         this.dateFormatter = dateFormatter;
         this.resourceCustomizer = resourceCustomizer;
+        this.pushManifest = pushManifest;
     }
 
     @Override
@@ -119,6 +121,14 @@ public class ResourceHandler implements MuHandler {
                     log.info("Ignoring range request due to invalid Range header value: " + rh);
                 }
             }
+            if (sendBody && pushManifest != null) {
+                List<String> toPush = pushManifest.get(decodedRelativePath);
+                if (toPush != null) {
+                    for (String path : toPush) {
+                        response.push(path);
+                    }
+                }
+            }
             try {
                 provider.sendTo(request, response, sendBody, maxAmountToSend);
             } catch (IOException | IllegalStateException ignored) {
@@ -244,7 +254,7 @@ public class ResourceHandler implements MuHandler {
             }
             return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType, false, null, DateTimeFormatter.ofPattern("yyyy/MM/dd hh:mm:ss")
                 .withLocale(Locale.US)
-                .withZone(ZoneId.systemDefault()), null);
+                .withZone(ZoneId.systemDefault()), null, null);
         }
     }
 
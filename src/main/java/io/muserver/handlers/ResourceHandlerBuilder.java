@@ -10,9 +10,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.*;
 
 import static io.muserver.handlers.ResourceType.DEFAULT_EXTENSION_MAPPINGS;
 
@@ -31,6 +29,7 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
     private boolean directoryListingEnabled = false;
     private String directoryListingCss = null;
     private ResourceCustomizer resourceCustomizer = null;
+    private Map<String, List<String>> pushManifest = null;
 
     /**
      * Specify custom filename extension to mime-type mappings. By default {@link ResourceType#DEFAULT_EXTENSION_MAPPINGS}
@@ -113,6 +112,19 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
         return this;
     }
 
+    /**
+     * <p>Specifies resources that should be sent to HTTP/2 clients with server push when a page is requested.</p>
+     * <p>The keys of the map are the paths of pages relative to this handler (e.g. <code>/index.html</code> - note
+     * that directory requests are mapped to the default file) and the values are the absolute URL paths of the assets
+     * that page links to, for example <code>/css/site.css</code>. See {@link io.muserver.MuResponse#push(String)} for details.</p>
+     * @param pushManifest A map of page path to the asset paths to push, or <code>null</code> to disable pushing (the default)
+     * @return This builder
+     */
+    public ResourceHandlerBuilder withPushManifest(Map<String, List<String>> pushManifest) {
+        this.pushManifest = pushManifest;
+        return this;
+    }
+
     /**
      * Creates the handler
      * @return The built handler
@@ -136,7 +148,15 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
                 .withZone(ZoneId.systemDefault());
         }
 
-        return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType, directoryListingEnabled, css, formatterToUse, this.resourceCustomizer);
+        Map<String, List<String>> manifest = null;
+        if (pushManifest != null) {
+            manifest = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : pushManifest.entrySet()) {
+                manifest.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
+        }
+
+        return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType, directoryListingEnabled, css, formatterToUse, this.resourceCustomizer, manifest);
     }
 
 
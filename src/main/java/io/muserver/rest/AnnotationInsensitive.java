@@ -0,0 +1,17 @@
+package io.muserver.rest;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>Specifies that a custom {@link javax.ws.rs.ext.MessageBodyReader} or {@link javax.ws.rs.ext.MessageBodyWriter}
+ * does not use the <code>annotations</code> parameter of <code>isReadable</code> or <code>isWriteable</code>.</p>
+ * <p>The provider chosen for a type and media type is cached. If every provider consulted is annotation
+ * insensitive then the choice is cached once for all annotations, otherwise it is cached separately for each set of
+ * annotations. The built-in providers are all annotation insensitive.</p>
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AnnotationInsensitive {
+
+}
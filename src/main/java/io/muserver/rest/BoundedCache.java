@@ -0,0 +1,89 @@
+package io.muserver.rest;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A concurrent map with a maximum number of entries, which are evicted with the CLOCK algorithm.</p>
+ * <p>Lookups do not lock, and only mark the entry they find as recently used. Adding an entry locks the cache. When
+ * the cache is full, a clock hand sweeps over the entries: a marked entry has its mark cleared and is skipped, and the
+ * first unmarked entry is removed to make space. An entry that is looked up at least once per sweep is therefore
+ * never evicted, however many one-off keys are added, and the cache never holds more than its maximum size.</p>
+ */
+class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Entry<K, V>> map;
+    private final ArrayList<Entry<K, V>> clock = new ArrayList<>(); // guarded by this
+    private int hand = 0; // guarded by this
+
+    BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+
+    V get(K key) {
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    synchronized void put(K key, V value) {
+        if (maxSize < 1) {
+            return;
+        }
+        Entry<K, V> existing = map.get(key);
+        int slot;
+        if (existing != null) {
+            slot = existing.slot;
+        } else if (clock.size() < maxSize) {
+            slot = clock.size();
+            clock.add(null);
+        } else {
+            slot = evict();
+        }
+        Entry<K, V> entry = new Entry<>(key, value, slot);
+        clock.set(slot, entry);
+        map.put(key, entry);
+    }
+
+    /**
+     * Removes the first entry the hand finds that has not been used since the hand last passed it
+     * @return The slot of the removed entry
+     */
+    private int evict() {
+        while (true) {
+            Entry<K, V> entry = clock.get(hand);
+            int slot = hand;
+            hand = (hand + 1) % clock.size();
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else {
+                map.remove(entry.key);
+                return slot;
+            }
+        }
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    private static class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final int slot;
+        private volatile boolean referenced = false;
+
+        private Entry(K key, V value, int slot) {
+            this.key = key;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
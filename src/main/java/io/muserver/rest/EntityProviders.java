@@ -9,35 +9,60 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * <p>Selects the message body readers and writers for request and response entities.</p>
+ * <p>The provider chosen for a given class, generic type and media type is cached. When all the providers that
+ * were consulted are {@link AnnotationInsensitive} the choice is cached regardless of annotations, so selection is a
+ * single map lookup; otherwise the choice is cached with the annotations as part of the key.</p>
+ */
 class EntityProviders {
 
+    private static final int MAX_CACHED_SELECTIONS = 1000;
+
     private final List<ProviderWrapper<MessageBodyReader<?>>> readers;
     final List<ProviderWrapper<MessageBodyWriter<?>>> writers;
+    private final boolean hasAnnotationSensitiveReaders;
+    private final boolean hasAnnotationSensitiveWriters;
+    private final SelectionCache<MessageBodyReader<?>> readerCache = new SelectionCache<>();
+    private final SelectionCache<MessageBodyWriter<?>> writerCache = new SelectionCache<>();
 
     public EntityProviders(List<MessageBodyReader> readers, List<MessageBodyWriter> writers) {
         this.readers = readers.stream().map(ProviderWrapper::reader).sorted().collect(Collectors.toList());
         this.writers = writers.stream().map(ProviderWrapper::writer).sorted().collect(Collectors.toList());
+        this.hasAnnotationSensitiveReaders = this.readers.stream().anyMatch(r -> r.annotationSensitive);
+        this.hasAnnotationSensitiveWriters = this.writers.stream().anyMatch(w -> w.annotationSensitive);
     }
     public MessageBodyReader<?> selectReader(Class<?> type, Type genericType, Annotation[] annotations, MediaType requestBodyMediaType) {
+        MessageBodyReader<?> cached = readerCache.get(type, genericType, requestBodyMediaType, annotations, hasAnnotationSensitiveReaders);
+        if (cached != null) {
+            return cached;
+        }
+        boolean consultedSensitive = false;
         for (ProviderWrapper<MessageBodyReader<?>> reader : readers) {
             boolean mediaTypeSupported = reader.mediaTypes.stream().anyMatch(mt -> mt.isCompatible(requestBodyMediaType));
-            if (mediaTypeSupported && reader.provider.isReadable(type, genericType, annotations, requestBodyMediaType)) {
-                return reader.provider;
+            if (mediaTypeSupported) {
+                consultedSensitive |= reader.annotationSensitive;
+                if (reader.provider.isReadable(type, genericType, annotations, requestBodyMediaType)) {
+                    readerCache.put(type, genericType, requestBodyMediaType, consultedSensitive, annotations, reader.provider);
+                    return reader.provider;
+                }
             }
         }
         throw new NotSupportedException("Could not find a suitable entity provider to read " + type);
     }
     public MessageBodyWriter<?> selectWriter(Class<?> type, Type genericType, Annotation[] annotations, MediaType responseMediaType) {
+        MessageBodyWriter<?> cached = writerCache.get(type, genericType, responseMediaType, annotations, hasAnnotationSensitiveWriters);
+        if (cached != null) {
+            return cached;
+        }
+
         // From 4.2.2
 
         // 3. SelectthesetofMessageBodyWriterprovidersthatsupport(seeSection4.2.3)theobjectandmedia type of the message entity body.
-        Optional<ProviderWrapper<MessageBodyWriter<?>>> best = writers.stream().filter(w -> w.supports(responseMediaType))
+        List<ProviderWrapper<MessageBodyWriter<?>>> candidates = writers.stream().filter(w -> w.supports(responseMediaType))
             .sorted((o1, o2) -> {
                 // 4. Sort the selected MessageBodyWriter providers with a primary key of generic type where providers whose generic
                 // type is the nearest superclass of the object class are sorted first
@@ -48,9 +73,7 @@ class EntityProviders {
                 }
 
                 // and a secondary key of media type
-                Integer min1 = o1.mediaTypes.stream().map(mt -> mt.isWildcardType() ? 2 : mt.isWildcardSubtype() ? 1 : 0).min(Comparator.naturalOrder()).orElse(2);
-                Integer min2 = o2.mediaTypes.stream().map(mt -> mt.isWildcardType() ? 2 : mt.isWildcardSubtype() ? 1 : 0).min(Comparator.naturalOrder()).orElse(2);
-                int mtCompare = min1.compareTo(min2);
+                int mtCompare = Integer.compare(o1.mediaTypeWildcardLevel, o2.mediaTypeWildcardLevel);
                 if (mtCompare != 0) {
                     return mtCompare;
                 }
@@ -58,11 +81,15 @@ class EntityProviders {
                 // Natural order is to prefer user-supplied
                 return o1.compareTo(o2);
             })
-            .filter(w -> w.provider.isWriteable(type, genericType, annotations, responseMediaType))
-            .findFirst();
+            .collect(Collectors.toList());
 
-        if (best.isPresent()) {
-            return best.get().provider;
+        boolean consultedSensitive = false;
+        for (ProviderWrapper<MessageBodyWriter<?>> candidate : candidates) {
+            consultedSensitive |= candidate.annotationSensitive;
+            if (candidate.provider.isWriteable(type, genericType, annotations, responseMediaType)) {
+                writerCache.put(type, genericType, responseMediaType, consultedSensitive, annotations, candidate.provider);
+                return candidate.provider;
+            }
         }
         throw new InternalServerErrorException("Could not find a suitable entity provider to write " + type);
     }
@@ -90,7 +117,59 @@ class EntityProviders {
             return Charset.forName(charset);
         }
     }
+    private static class SelectionCache<T> {
+        private final BoundedCache<Key, T> map = new BoundedCache<>(MAX_CACHED_SELECTIONS);
 
+        T get(Class<?> type, Type genericType, MediaType mediaType, Annotation[] annotations, boolean checkAnnotations) {
+            T provider = map.get(new Key(type, genericType, mediaType, false, null));
+            if (provider == null && checkAnnotations) {
+                provider = map.get(new Key(type, genericType, mediaType, true, annotations));
+            }
+            return provider;
+        }
 
-}
+        void put(Class<?> type, Type genericType, MediaType mediaType, boolean annotationSensitive, Annotation[] annotations, T provider) {
+            map.put(new Key(type, genericType, mediaType, annotationSensitive, annotationSensitive ? annotations : null), provider);
+        }
+    }
+
+    private static class Key {
+        private final Class<?> type;
+        private final Type genericType;
+        private final MediaType mediaType;
+        /**
+         * If false, the selection does not depend on the annotations
+         */
+        private final boolean annotationSensitive;
+        private final Annotation[] annotations;
+        private final int hash;
+
+        private Key(Class<?> type, Type genericType, MediaType mediaType, boolean annotationSensitive, Annotation[] annotations) {
+            this.type = type;
+            this.genericType = genericType;
+            this.mediaType = mediaType;
+            this.annotationSensitive = annotationSensitive;
+            this.annotations = annotations;
+            this.hash = 31 * Objects.hash(type, genericType, mediaType, annotationSensitive) + Arrays.hashCode(annotations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash &&
+                type == key.type &&
+                annotationSensitive == key.annotationSensitive &&
+                Objects.equals(genericType, key.genericType) &&
+                Objects.equals(mediaType, key.mediaType) &&
+                Arrays.equals(annotations, key.annotations);
+        }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
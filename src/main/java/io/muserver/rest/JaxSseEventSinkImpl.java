@@ -1,33 +1,36 @@
 package io.muserver.rest;
 
-import io.muserver.AsyncSsePublisher;
+import io.muserver.AsyncHandle;
 import io.muserver.MuResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.sse.OutboundSseEvent;
 import javax.ws.rs.sse.SseEventSink;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.TimeUnit;
 
 import static io.muserver.rest.JaxRSResponse.muHeadersToJaxObj;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 class JaxSseEventSinkImpl implements SseEventSink {
     private static final Logger log = LoggerFactory.getLogger(JaxSseEventSinkImpl.class);
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
 
-    private final AsyncSsePublisher ssePublisher;
+    private final AsyncHandle asyncHandle;
     private final MuResponse response;
-    private final EntityProviders entityProviders;
+    final EntityProviders entityProviders;
     private volatile boolean isClosed = false;
 
-    public JaxSseEventSinkImpl(AsyncSsePublisher ssePublisher, MuResponse response, EntityProviders entityProviders) {
-        this.ssePublisher = ssePublisher;
+    public JaxSseEventSinkImpl(AsyncHandle asyncHandle, MuResponse response, EntityProviders entityProviders) {
+        this.asyncHandle = asyncHandle;
         this.response = response;
         this.entityProviders = entityProviders;
     }
@@ -40,43 +43,133 @@ class JaxSseEventSinkImpl implements SseEventSink {
 
     @Override
     public CompletionStage<?> send(OutboundSseEvent event) {
+        ByteBuffer encoded;
+        try {
+            encoded = encode(event);
+        } catch (Throwable e) {
+            return encodingFailed(e);
+        }
+        return sendEncoded(encoded);
+    }
 
-        CompletionStage<?> stage = null;
+    static CompletionStage<?> encodingFailed(Throwable e) {
+        if (e instanceof ServerErrorException) {
+            log.warn("Server error while writing data to SSE stream", e);
+        }
+        CompletableFuture<?> f = new CompletableFuture<>();
+        f.completeExceptionally(e);
+        return f;
+    }
 
-        try {
-            if (event.isReconnectDelaySet()) {
-                stage = ssePublisher.setClientReconnectTime(event.getReconnectDelay(), TimeUnit.MILLISECONDS);
-            }
-            if (event.getComment() != null) {
-                stage = ssePublisher.sendComment(event.getComment());
+    /**
+     * Writes an event that has already been converted to the SSE wire format by {@link #encode(OutboundSseEvent)}.
+     * The buffer is not changed, so the same buffer can be sent to many sinks.
+     */
+    CompletionStage<?> sendEncoded(ByteBuffer encoded) {
+        CompletableFuture<?> stage = new CompletableFuture<>();
+        asyncHandle.write(encoded.duplicate(), error -> {
+            if (error == null) {
+                stage.complete(null);
+            } else {
+                stage.completeExceptionally(error);
             }
-            if (event.getData() != null) {
-                MessageBodyWriter messageBodyWriter = entityProviders.selectWriter(event.getType(), event.getGenericType(),
-                    new Annotation[0], event.getMediaType());
-                try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                    messageBodyWriter.writeTo(event.getData(), event.getType(), event.getGenericType(), new Annotation[0],
-                        event.getMediaType(), muHeadersToJaxObj(response.headers()), out);
-                    String data = new String(out.toByteArray(), UTF_8);
-                    stage = ssePublisher.send(data, event.getName(), event.getId());
-                }
+        });
+        return stage;
+    }
+
+    /**
+     * Converts an event to the bytes sent to the client, using the message body writer for the event's data.
+     * @param event The event to convert
+     * @return A read-only buffer with the reconnect time, comment, and data of the event
+     * @throws IOException If the message body writer fails
+     * @throws IllegalArgumentException If the event has nothing to send, or has an ID or name with a line break
+     */
+    ByteBuffer encode(OutboundSseEvent event) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (event.isReconnectDelaySet()) {
+            writeAscii(out, "retry: " + event.getReconnectDelay() + '\n');
+        }
+        if (event.getComment() != null) {
+            ensureNoLineBreaks(event.getComment(), "SSE Comments");
+            writeAscii(out, ":");
+            out.write(event.getComment().getBytes(UTF_8));
+            writeAscii(out, "\n\n");
+        }
+        if (event.getData() != null) {
+            MessageBodyWriter messageBodyWriter = entityProviders.selectWriter(event.getType(), event.getGenericType(),
+                NO_ANNOTATIONS, event.getMediaType());
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            messageBodyWriter.writeTo(event.getData(), event.getType(), event.getGenericType(), NO_ANNOTATIONS,
+                event.getMediaType(), jaxHeaders(), data);
+            if (event.getId() != null) {
+                ensureNoLineBreaks(event.getId(), "SSE IDs");
+                writeAscii(out, "id: ");
+                out.write(event.getId().getBytes(UTF_8));
+                out.write('\n');
             }
-            if (stage == null) {
-                throw new IllegalArgumentException("The event had nothing to send");
+            if (event.getName() != null) {
+                ensureNoLineBreaks(event.getName(), "SSE event names");
+                writeAscii(out, "event: ");
+                out.write(event.getName().getBytes(UTF_8));
+                out.write('\n');
             }
-        } catch (Throwable e) {
-            if (e instanceof ServerErrorException) {
-                log.warn("Server error while writing data to SSE stream", e);
+            writeDataLines(out, data.toByteArray());
+            out.write('\n');
+        }
+        if (out.size() == 0) {
+            throw new IllegalArgumentException("The event had nothing to send");
+        }
+        return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+    }
+
+    private MultivaluedMap<String, Object> jaxHeaders() {
+        return muHeadersToJaxObj(response.headers());
+    }
+
+    /**
+     * Writes each line of the data as a <code>data:</code> field. Line breaks are found in the UTF-8 bytes directly,
+     * as CR and LF bytes are never part of a multi-byte character. As with {@link String#split(String)}, trailing
+     * empty lines are not sent.
+     */
+    private static void writeDataLines(ByteArrayOutputStream out, byte[] data) throws IOException {
+        int end = data.length;
+        while (end > 0 && (data[end - 1] == '\n' || data[end - 1] == '\r')) {
+            end--;
+        }
+        if (end == 0 && data.length > 0) {
+            return;
+        }
+        int lineStart = 0;
+        int i = 0;
+        while (i <= end) {
+            if (i == end || data[i] == '\n' || data[i] == '\r') {
+                writeAscii(out, "data: ");
+                out.write(data, lineStart, i - lineStart);
+                out.write('\n');
+                if (i < end && data[i] == '\r' && i + 1 < end && data[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
             }
-            CompletableFuture<?> f = new CompletableFuture<>();
-            f.completeExceptionally(e);
-            stage = f;
+            i++;
+        }
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.write(value.charAt(i));
+        }
+    }
+
+    private static void ensureNoLineBreaks(String value, String thing) {
+        if (value.contains("\n") || value.contains("\r")) {
+            throw new IllegalArgumentException(thing + " cannot have new line characters in them");
         }
-        return stage;
     }
 
     @Override
     public void close() {
-        ssePublisher.close();
+        asyncHandle.complete();
         isClosed = true;
     }
 }
@@ -0,0 +1,85 @@
+package io.muserver.rest;
+
+import io.muserver.Method;
+
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A bounded cache of the resource method chosen by {@link RequestMatcher} for a request method, path, request
+ * content type and accept header. Only successful matches are cached.</p>
+ * <p>As the paths come from clients, entries are evicted with the CLOCK algorithm of {@link BoundedCache}, so a
+ * stream of one-off paths cannot push out the paths that are requested often.</p>
+ * @see BoundedCache
+ */
+class MatchCache {
+
+    private final BoundedCache<Key, ResourceMethod> map;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    MatchCache(int maxSize) {
+        this.map = new BoundedCache<>(maxSize);
+    }
+
+    ResourceMethod get(Key key) {
+        ResourceMethod resourceMethod = map.get(key);
+        if (resourceMethod == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return resourceMethod;
+    }
+
+    void put(Key key, ResourceMethod resourceMethod) {
+        map.put(key, resourceMethod);
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    static class Key {
+        private final Method method;
+        private final String path;
+        private final String contentType;
+        private final List<MediaType> acceptHeaders;
+        private final int hash;
+
+        Key(Method method, String path, String contentType, List<MediaType> acceptHeaders) {
+            this.method = method;
+            this.path = path;
+            this.contentType = contentType;
+            this.acceptHeaders = acceptHeaders;
+            this.hash = Objects.hash(method, path, contentType, acceptHeaders);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash &&
+                method == key.method &&
+                path.equals(key.path) &&
+                Objects.equals(contentType, key.contentType) &&
+                acceptHeaders.equals(key.acceptHeaders);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
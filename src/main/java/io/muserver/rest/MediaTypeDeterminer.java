@@ -7,6 +7,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.ext.MessageBodyWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Type;
 import java.util.*;
 
 import static java.util.Arrays.asList;
@@ -17,6 +18,10 @@ import static java.util.stream.Collectors.toSet;
  * An implementation of section 3.8 of the jax-rs 2.0 spec
  */
 class MediaTypeDeterminer {
+
+    private static final int MAX_CACHED_ACCEPT_HEADERS = 1000;
+    private static final BoundedCache<String, List<MediaType>> acceptHeaderCache = new BoundedCache<>(MAX_CACHED_ACCEPT_HEADERS);
+
     public static MediaType determine(ObjWithType responseObject, List<MediaType> classProduces, List<MediaType> methodProduces, List<ProviderWrapper<MessageBodyWriter<?>>> messageBodyWriters, List<MediaType> clientAccepts) {
 
         // 1. If the method returns an instance of Response whose metadata includes the response media type (Mspecified) then set Mselected = Mspecified, finis
@@ -110,16 +115,93 @@ class MediaTypeDeterminer {
             : emptyList();
     }
 
+    /**
+     * Parses the accept headers of a request. Clients send only a few distinct accept headers, so the parsed values
+     * are cached and the same read-only list is returned for the same header value.
+     */
     static List<MediaType> parseAcceptHeaders(List<String> headers) throws IllegalArgumentException {
-        List<MediaType> list = new ArrayList<>();
-        for (String header : headers) {
+        if (headers.isEmpty()) {
+            return emptyList();
+        }
+        String header = headers.size() == 1 ? headers.get(0) : String.join(",", headers);
+        List<MediaType> list = acceptHeaderCache.get(header);
+        if (list == null) {
+            List<MediaType> parsed = new ArrayList<>();
             String[] bits = header.split(",");
             for (String bit : bits) {
                 if (!bit.isEmpty()) {
-                    list.add(MediaType.valueOf(bit));
+                    parsed.add(MediaType.valueOf(bit));
                 }
             }
+            list = Collections.unmodifiableList(parsed);
+            acceptHeaderCache.put(header, list);
         }
         return list;
     }
+
+    /**
+     * <p>Remembers the media type chosen for a response, keyed on the produces values of the resource method, the
+     * class of the entity and the accept headers of the request.</p>
+     * <p>The produces and accept lists are compared by identity, which is cheap and works because the produces lists
+     * belong to the resource methods and {@link #parseAcceptHeaders(List)} returns the same list for the same
+     * header.</p>
+     */
+    static class NegotiationCache {
+        private static final int MAX_CACHED_RESULTS = 1000;
+        private final BoundedCache<Key, MediaType> cache = new BoundedCache<>(MAX_CACHED_RESULTS);
+
+        MediaType determine(ObjWithType responseObject, List<MediaType> classProduces, List<MediaType> methodProduces, List<ProviderWrapper<MessageBodyWriter<?>>> messageBodyWriters, List<MediaType> clientAccepts) {
+            if (responseObject.response != null && responseObject.response.getMediaType() != null) {
+                return responseObject.response.getMediaType();
+            }
+            Key key = new Key(responseObject.type, responseObject.genericType, classProduces, methodProduces, clientAccepts);
+            MediaType mediaType = cache.get(key);
+            if (mediaType == null) {
+                mediaType = MediaTypeDeterminer.determine(responseObject, classProduces, methodProduces, messageBodyWriters, clientAccepts);
+                cache.put(key, mediaType);
+            }
+            return mediaType;
+        }
+
+        int size() {
+            return cache.size();
+        }
+
+        private static class Key {
+            private final Class<?> type;
+            private final Type genericType;
+            private final List<MediaType> classProduces;
+            private final List<MediaType> methodProduces;
+            private final List<MediaType> clientAccepts;
+            private final int hash;
+
+            private Key(Class<?> type, Type genericType, List<MediaType> classProduces, List<MediaType> methodProduces, List<MediaType> clientAccepts) {
+                this.type = type;
+                this.genericType = genericType;
+                this.classProduces = classProduces;
+                this.methodProduces = methodProduces;
+                this.clientAccepts = clientAccepts;
+                this.hash = Objects.hash(type, genericType, System.identityHashCode(classProduces),
+                    System.identityHashCode(methodProduces), System.identityHashCode(clientAccepts));
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Key key = (Key) o;
+                return hash == key.hash &&
+                    type == key.type &&
+                    classProduces == key.classProduces &&
+                    methodProduces == key.methodProduces &&
+                    clientAccepts == key.clientAccepts &&
+                    Objects.equals(genericType, key.genericType);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+    }
 }
@@ -13,12 +13,22 @@ class ProviderWrapper<T> implements Comparable<ProviderWrapper<T>> {
     public final boolean isBuiltIn;
     public final List<MediaType> mediaTypes;
     public final Type genericType;
+    /**
+     * True if <code>isReadable</code> or <code>isWriteable</code> may depend on the annotations passed to it
+     */
+    public final boolean annotationSensitive;
+    /**
+     * 0 if a concrete media type is supported, 1 if the most specific is a wildcard subtype, otherwise 2
+     */
+    final int mediaTypeWildcardLevel;
 
     private ProviderWrapper(T provider, List<MediaType> mediaTypes, Type genericType) {
         this.provider = provider;
         this.isBuiltIn = provider.getClass().getPackage().getName().equals(ProviderWrapper.class.getPackage().getName());
         this.mediaTypes = mediaTypes;
         this.genericType = genericType;
+        this.annotationSensitive = !isBuiltIn && !provider.getClass().isAnnotationPresent(AnnotationInsensitive.class);
+        this.mediaTypeWildcardLevel = mediaTypes.stream().mapToInt(mt -> mt.isWildcardType() ? 2 : mt.isWildcardSubtype() ? 1 : 0).min().orElse(2);
     }
 
     public static ProviderWrapper<MessageBodyReader<?>> reader(MessageBodyReader<?> provider) {
@@ -81,6 +91,7 @@ class ProviderWrapper<T> implements Comparable<ProviderWrapper<T>> {
             ", isBuiltIn=" + isBuiltIn +
             ", mediaTypes=" + mediaTypes +
             ", genericType=" + genericType +
+            ", annotationSensitive=" + annotationSensitive +
             '}';
     }
 }
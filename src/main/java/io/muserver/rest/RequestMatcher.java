@@ -11,7 +11,6 @@ import java.util.*;
 
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 
 /**
  * <p>
@@ -28,71 +27,157 @@ class RequestMatcher {
     }
 
     static final List<MediaType> WILDCARD_AS_LIST = singletonList(MediaType.WILDCARD_TYPE);
-    private final List<ResourceClass> roots;
+    private static final Root[] NO_ROOTS = new Root[0];
+
+    /**
+     * For each literal first path segment, the roots that can match a path starting with that segment, in the order
+     * that the spec sorts candidate classes. These are the roots with that literal first segment, and roots whose
+     * first segment has a parameter.
+     */
+    private final Map<String, Root[]> rootsByFirstSegment = new HashMap<>();
+    /**
+     * The roots whose first segment has a parameter, in the order that the spec sorts candidate classes.
+     */
+    private final Root[] rootsWithParameterFirstSegment;
+    /**
+     * The methods found for recent requests, or null if caching is disabled
+     */
+    final MatchCache matchCache;
 
     RequestMatcher(List<ResourceClass> roots) {
+        this(roots, 0);
+    }
+
+    /**
+     * @param roots The root resource classes
+     * @param matchCacheSize The maximum number of matches to cache, or 0 to disable the cache
+     */
+    RequestMatcher(List<ResourceClass> roots, int matchCacheSize) {
         if (roots == null) {
             throw new NullPointerException("roots cannot be null");
         }
-        this.roots = roots;
+        this.matchCache = matchCacheSize > 0 ? new MatchCache(matchCacheSize) : null;
+        // The sort orders of steps one and two only depend on the templates, so they are worked out once here. The
+        // sorts are stable, so sorting first and then filtering the matches (as done per request) gives the same
+        // order as filtering and then sorting.
+        List<ResourceClass> sorted = new ArrayList<>(roots);
+        sorted.sort(RequestMatcher::compareRootResourceClasses);
+        Map<String, Group> groups = new HashMap<>();
+        List<Root> all = new ArrayList<>();
+        for (ResourceClass resourceClass : sorted) {
+            Group group = groups.computeIfAbsent(resourceClass.pathPattern.patternModuloVariableNames(), k -> new Group());
+            Root root = new Root(resourceClass, group, group.members.size());
+            group.members.add(root);
+            all.add(root);
+        }
+        for (Group group : groups.values()) {
+            group.sortSubResourceMethods();
+        }
+        List<Root> withParameter = new ArrayList<>();
+        Set<String> firstSegments = new HashSet<>();
+        for (Root root : all) {
+            if (root.firstSegment == null) {
+                withParameter.add(root);
+            } else {
+                firstSegments.add(root.firstSegment);
+            }
+        }
+        for (String firstSegment : firstSegments) {
+            List<Root> bucket = new ArrayList<>();
+            for (Root root : all) {
+                if (root.firstSegment == null || root.firstSegment.equals(firstSegment)) {
+                    bucket.add(root);
+                }
+            }
+            rootsByFirstSegment.put(firstSegment, bucket.toArray(NO_ROOTS));
+        }
+        this.rootsWithParameterFirstSegment = withParameter.toArray(NO_ROOTS);
     }
 
     MatchedMethod findResourceMethod(Method httpMethod, String path, List<MediaType> acceptHeaders, String requestBodyContentType) throws NotAllowedException, NotAcceptableException, NotSupportedException, NotMatchedException {
+        MatchCache.Key key = null;
+        if (matchCache != null) {
+            key = new MatchCache.Key(httpMethod, path, requestBodyContentType, acceptHeaders);
+            ResourceMethod cached = matchCache.get(key);
+            if (cached != null) {
+                return rematch(cached, path);
+            }
+        }
         Set<MatchedMethod> candidateMethods = getMatchedMethodsForPath(path);
-        return stepThreeIdentifyTheMethodThatWillHandleTheRequest(httpMethod, candidateMethods, requestBodyContentType, acceptHeaders);
+        MatchedMethod matchedMethod = stepThreeIdentifyTheMethodThatWillHandleTheRequest(httpMethod, candidateMethods, requestBodyContentType, acceptHeaders);
+        if (key != null) {
+            matchCache.put(key, matchedMethod.resourceMethod);
+        }
+        return matchedMethod;
+    }
+
+    /**
+     * Gets the path parameters for a method that was previously found for the same path, without running the
+     * matching algorithm again
+     */
+    private static MatchedMethod rematch(ResourceMethod resourceMethod, String path) {
+        PathMatch classMatch = resourceMethod.resourceClass.pathPattern.matcher(path);
+        MatchedClass matchedClass = new MatchedClass(resourceMethod.resourceClass, classMatch);
+        if (!resourceMethod.isSubResource()) {
+            return new MatchedMethod(matchedClass, resourceMethod, true, classMatch.params(), classMatch);
+        }
+        URI methodURI = URI.create(UriPattern.trimSlashes(classMatch.lastGroup()));
+        return matchedSubResource(matchedClass, resourceMethod, resourceMethod.pathPattern.matcher(methodURI));
     }
 
     Set<MatchedMethod> getMatchedMethodsForPath(String path) throws NotMatchedException {
         StepOneOutput stepOneOutput = stepOneIdentifyASetOfCandidateRootResourceClassesMatchingTheRequest(path);
         URI methodURI = stepOneOutput.unmatchedGroup == null ? null : URI.create(UriPattern.trimSlashes(stepOneOutput.unmatchedGroup));
-        return stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(methodURI, stepOneOutput.candidates);
+        return stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(methodURI, stepOneOutput);
     }
 
     StepOneOutput stepOneIdentifyASetOfCandidateRootResourceClassesMatchingTheRequest(String uri) throws NotMatchedException {
-        List<MatchedClass> candidates = roots.stream()
-            .map(rc -> new MatchedClass(rc, rc.pathPattern.matcher(uri)))
-            .filter(rc -> {
-                PathMatch matcher = rc.pathMatch;
-                // Remove members that do not match U.
-                // Remove members for which the final regular expression capturing group value is neither empty nor ‘/’ and the class has no subresource methods or locators.
-                return matcher.prefixMatches() && !(matcher.lastGroup() != null && rc.resourceClass.subResourceMethods().isEmpty());
-            })
-            .sorted((o1, o2) -> {
-                UriPattern o1pp = o1.resourceClass.pathPattern;
-                UriPattern o2pp = o2.resourceClass.pathPattern;
-                // "Sort E using the number of literal characters in each member as the primary key (descending order)"
-                int c = Integer.compare(o2pp.numberOfLiterals, o1pp.numberOfLiterals);
-                if (c == 0) {
-                    // "the number of capturing groups as a secondary key (descending order)"
-                    c = Integer.compare(o2pp.namedGroups().size(), o1pp.namedGroups().size());
+        int offset = uri.startsWith("/") ? 1 : 0;
+        int slash = uri.indexOf('/', offset);
+        String firstSegment = uri.substring(offset, slash == -1 ? uri.length() : slash);
+        Root[] roots = rootsByFirstSegment.getOrDefault(firstSegment, rootsWithParameterFirstSegment);
+
+        // The roots are already sorted, so the first member of E is the first root that matches U, where members
+        // that do not match U, or where the final capturing group is neither empty nor '/' and the class has no
+        // subresource methods or locators, are not members of E.
+        Root rMatch = null;
+        PathMatch rMatchPathMatch = null;
+        for (Root root : roots) {
+            if (uri.startsWith(root.resourceClass.pathPattern.literalPrefix, offset)) {
+                PathMatch matcher = root.resourceClass.pathPattern.matcher(uri);
+                if (root.isCandidate(matcher)) {
+                    rMatch = root;
+                    rMatchPathMatch = matcher;
+                    break;
                 }
-                if (c == 0) {
-                    // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
-                    c = Integer.compare(countNonDefaultGroups(o2.resourceClass.pathTemplate), countNonDefaultGroups(o1.resourceClass.pathTemplate));
-                }
-                return c;
-            })
-            .collect(toList());
-        if (candidates.isEmpty()) {
+            }
+        }
+        if (rMatch == null) {
             throw new NotMatchedException();
         }
-        // Set Rmatch to be the first member of E and set U to be the value of the final capturing group of Rmatch when matched against U
-        UriPattern rMatch = candidates.get(0).resourceClass.pathPattern;
-        String u = rMatch.matcher(uri).lastGroup();
+        // Set U to be the value of the final capturing group of Rmatch when matched against U
+        String u = rMatchPathMatch.lastGroup();
 
         // Let C0 be the set of classes Z such that R(TZ) = Rmatch. By definition, all root resource classes in C0 must be annotated with the same URI path template modulo variable names
-
-        List<MatchedClass> c0 = candidates.stream()
-            .filter(rc -> rc.resourceClass.pathPattern.equalModuloVariableNames(rMatch))
-            .collect(toList());
-        return new StepOneOutput(u, c0);
+        List<Root> members = rMatch.group.members;
+        List<MatchedClass> c0 = new ArrayList<>(members.size());
+        MatchedClass[] c0ByMember = new MatchedClass[members.size()];
+        for (Root member : members) {
+            PathMatch matcher = member == rMatch ? rMatchPathMatch : member.resourceClass.pathPattern.matcher(uri);
+            if (member.isCandidate(matcher)) {
+                MatchedClass matchedClass = new MatchedClass(member.resourceClass, matcher);
+                c0.add(matchedClass);
+                c0ByMember[member.index] = matchedClass;
+            }
+        }
+        return new StepOneOutput(u, c0, rMatch.group, c0ByMember);
     }
 
-    private Set<MatchedMethod> stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(URI relativeUri, List<MatchedClass> candidateClasses) throws NotMatchedException {
+    private Set<MatchedMethod> stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(URI relativeUri, StepOneOutput stepOneOutput) throws NotMatchedException {
         if (relativeUri == null) {
             // handle section 3.7.2 - 2(a)
             Set<MatchedMethod> candidates = new HashSet<>();
-            for (MatchedClass mc : candidateClasses) {
+            for (MatchedClass mc : stepOneOutput.candidates) {
                 for (ResourceMethod resourceMethod : mc.resourceClass.resourceMethods) {
                     if (!resourceMethod.isSubResource() && !resourceMethod.isSubResourceLocator()) {
                         MatchedMethod matchedMethod = new MatchedMethod(mc, resourceMethod, true, mc.pathMatch.params(), mc.pathMatch);
@@ -103,55 +188,137 @@ class RequestMatcher {
             if (!candidates.isEmpty()) {
                 return candidates;
             }
+            throw new NotMatchedException();
         }
 
-        List<MatchedMethod> candidates = new ArrayList<>();
-        for (MatchedClass candidateClass : candidateClasses) {
-            for (ResourceMethod resourceMethod : candidateClass.resourceClass.resourceMethods) {
-                if (resourceMethod.isSubResource() || resourceMethod.isSubResourceLocator()) {
-                    if (relativeUri != null) {
-                        PathMatch matcher = resourceMethod.pathPattern.matcher(relativeUri);
-                        if (matcher.prefixMatches()) {
-                            Map<String, String> combinedParams = new HashMap<>(candidateClass.pathMatch.params());
-                            combinedParams.putAll(matcher.params());
-                            candidates.add(new MatchedMethod(candidateClass, resourceMethod, true, combinedParams, matcher));
-                        }
+        // The sub-resource methods of all the classes in C0 are already sorted, so the first match decides the
+        // pattern, and the candidates are the members of E with that same pattern
+        String rawPath = relativeUri.getRawPath();
+        int offset = rawPath.startsWith("/") ? 1 : 0;
+        SubResource[] subResources = stepOneOutput.group.sortedSubResourceMethods;
+        for (int i = 0; i < subResources.length; i++) {
+            SubResource first = subResources[i];
+            MatchedClass firstClass = stepOneOutput.c0ByMember[first.member];
+            UriPattern pattern = first.resourceMethod.pathPattern;
+            if (firstClass == null || !rawPath.startsWith(pattern.literalPrefix, offset)) {
+                continue;
+            }
+            PathMatch firstMatch = pattern.matcher(rawPath);
+            if (firstMatch.prefixMatches()) {
+                Set<MatchedMethod> m = new HashSet<>();
+                m.add(matchedSubResource(firstClass, first.resourceMethod, firstMatch));
+                for (int j = i + 1; j < subResources.length; j++) {
+                    SubResource other = subResources[j];
+                    MatchedClass otherClass = stepOneOutput.c0ByMember[other.member];
+                    if (otherClass != null && other.resourceMethod.pathPattern.equals(pattern)) {
+                        m.add(matchedSubResource(otherClass, other.resourceMethod, other.resourceMethod.pathPattern.matcher(rawPath)));
                     }
                 }
+                return m;
             }
         }
+        throw new NotMatchedException();
+    }
 
-        candidates.sort((o1, o2) -> {
-            ResourceMethod rm1 = o1.resourceMethod;
-            ResourceMethod rm2 = o2.resourceMethod;
-            // "Sort E using the number of literal characters4 in each member as the primary key (descending order)"
-            int c = Integer.compare(rm2.pathPattern.numberOfLiterals, rm1.pathPattern.numberOfLiterals);
-            if (c == 0) {
-                // "the number of capturing groups as a secondary key (descending order)"
-                c = Integer.compare(rm2.pathPattern.namedGroups().size(), rm1.pathPattern.namedGroups().size());
-            }
-            if (c == 0) {
-                // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
-                c = Integer.compare(countNonDefaultGroups(rm2.pathTemplate), countNonDefaultGroups(rm1.pathTemplate));
-            }
-            if (c == 0) {
-                // "and the source of each member as quaternary key sorting those derived from sub-resource methods ahead of those derived from sub-resource locators"
-                // TODO: test that this is around the right way
-                c = Boolean.compare(o1.resourceMethod.isSubResourceLocator(), o2.resourceMethod.isSubResourceLocator());
-            }
-            return c;
-        });
+    private static MatchedMethod matchedSubResource(MatchedClass matchedClass, ResourceMethod resourceMethod, PathMatch matcher) {
+        Map<String, String> combinedParams = new HashMap<>(matchedClass.pathMatch.params());
+        combinedParams.putAll(matcher.params());
+        return new MatchedMethod(matchedClass, resourceMethod, true, combinedParams, matcher);
+    }
 
-        if (candidates.isEmpty()) {
-            throw new NotMatchedException();
+    private static int compareRootResourceClasses(ResourceClass o1, ResourceClass o2) {
+        UriPattern o1pp = o1.pathPattern;
+        UriPattern o2pp = o2.pathPattern;
+        // "Sort E using the number of literal characters in each member as the primary key (descending order)"
+        int c = Integer.compare(o2pp.numberOfLiterals, o1pp.numberOfLiterals);
+        if (c == 0) {
+            // "the number of capturing groups as a secondary key (descending order)"
+            c = Integer.compare(o2pp.namedGroups().size(), o1pp.namedGroups().size());
         }
+        if (c == 0) {
+            // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
+            c = Integer.compare(countNonDefaultGroups(o2.pathTemplate), countNonDefaultGroups(o1.pathTemplate));
+        }
+        return c;
+    }
 
-        UriPattern matcher = candidates.get(0).resourceMethod.pathPattern;
-        Set<MatchedMethod> m = candidates.stream().filter(rm -> rm.resourceMethod.pathPattern.equals(matcher)).collect(toSet());
-        if (!m.isEmpty()) {
-            return m;
+    private static int compareSubResourceMethods(SubResource o1, SubResource o2) {
+        ResourceMethod rm1 = o1.resourceMethod;
+        ResourceMethod rm2 = o2.resourceMethod;
+        // "Sort E using the number of literal characters4 in each member as the primary key (descending order)"
+        int c = Integer.compare(rm2.pathPattern.numberOfLiterals, rm1.pathPattern.numberOfLiterals);
+        if (c == 0) {
+            // "the number of capturing groups as a secondary key (descending order)"
+            c = Integer.compare(rm2.pathPattern.namedGroups().size(), rm1.pathPattern.namedGroups().size());
+        }
+        if (c == 0) {
+            // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
+            c = Integer.compare(countNonDefaultGroups(rm2.pathTemplate), countNonDefaultGroups(rm1.pathTemplate));
+        }
+        if (c == 0) {
+            // "and the source of each member as quaternary key sorting those derived from sub-resource methods ahead of those derived from sub-resource locators"
+            // TODO: test that this is around the right way
+            c = Boolean.compare(rm1.isSubResourceLocator(), rm2.isSubResourceLocator());
+        }
+        return c;
+    }
+
+    /**
+     * A root resource class with the information needed to match it that does not change between requests
+     */
+    private static class Root {
+        private final ResourceClass resourceClass;
+        private final Group group;
+        private final int index;
+        private final String firstSegment;
+        private final boolean hasSubResourceMethods;
+
+        private Root(ResourceClass resourceClass, Group group, int index) {
+            this.resourceClass = resourceClass;
+            this.group = group;
+            this.index = index;
+            this.firstSegment = resourceClass.pathPattern.literalFirstSegment();
+            this.hasSubResourceMethods = resourceClass.resourceMethods.stream().anyMatch(ResourceMethod::isSubResource);
+        }
+
+        /**
+         * Members that do not match U, or where the final regular expression capturing group value is neither empty
+         * nor ‘/’ and the class has no subresource methods or locators, are not candidates.
+         */
+        private boolean isCandidate(PathMatch matcher) {
+            return matcher.prefixMatches() && !(matcher.lastGroup() != null && !hasSubResourceMethods);
+        }
+    }
+
+    /**
+     * Root resource classes with the same path template modulo variable names, i.e. a possible C0 of step one
+     */
+    private static class Group {
+        private final List<Root> members = new ArrayList<>();
+        private SubResource[] sortedSubResourceMethods;
+
+        private void sortSubResourceMethods() {
+            List<SubResource> all = new ArrayList<>();
+            for (Root member : members) {
+                for (ResourceMethod resourceMethod : member.resourceClass.resourceMethods) {
+                    if (resourceMethod.isSubResource() || resourceMethod.isSubResourceLocator()) {
+                        all.add(new SubResource(member.index, resourceMethod));
+                    }
+                }
+            }
+            all.sort(RequestMatcher::compareSubResourceMethods);
+            sortedSubResourceMethods = all.toArray(new SubResource[0]);
+        }
+    }
+
+    private static class SubResource {
+        private final int member;
+        private final ResourceMethod resourceMethod;
+
+        private SubResource(int member, ResourceMethod resourceMethod) {
+            this.member = member;
+            this.resourceMethod = resourceMethod;
         }
-        throw new NotMatchedException();
     }
 
     static class MatchedClass {
@@ -240,15 +407,19 @@ class RequestMatcher {
     static class StepOneOutput {
         final String unmatchedGroup;
         final List<RequestMatcher.MatchedClass> candidates;
+        private final Group group;
+        private final MatchedClass[] c0ByMember;
 
-        StepOneOutput(String unmatchedGroup, List<RequestMatcher.MatchedClass> candidates) {
+        private StepOneOutput(String unmatchedGroup, List<RequestMatcher.MatchedClass> candidates, Group group, MatchedClass[] c0ByMember) {
             this.unmatchedGroup = unmatchedGroup;
             this.candidates = candidates;
+            this.group = group;
+            this.c0ByMember = c0ByMember;
         }
 
     }
 
-    private int countNonDefaultGroups(String pathTemplate) {
+    private static int countNonDefaultGroups(String pathTemplate) {
         int count = 0;
         for (String bit : pathTemplate.split("/")) {
             if (bit.startsWith("{") && bit.endsWith("}") && bit.contains(":")) {
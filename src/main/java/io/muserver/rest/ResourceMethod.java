@@ -10,7 +10,11 @@ import io.muserver.openapi.SchemaObjectBuilder;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.MediaType;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -38,6 +42,11 @@ class ResourceMethod {
     final List<MediaType> directlyProduces;
     final List<MediaType> effectiveProduces;
     final List<ResourceMethodParam> params;
+    /**
+     * The params, in the order they are passed to the method
+     */
+    final ResourceMethodParam[] paramsByIndex;
+    private final MethodHandle invoker;
     private final DescriptionData descriptionData;
     private final boolean isDeprecated;
     private final List<Class<? extends Annotation>> nameBindingAnnotations;
@@ -47,6 +56,11 @@ class ResourceMethod {
         this.pathPattern = pathPattern;
         this.methodHandle = methodHandle;
         this.params = params;
+        this.paramsByIndex = new ResourceMethodParam[params.size()];
+        for (ResourceMethodParam param : params) {
+            this.paramsByIndex[param.index] = param;
+        }
+        this.invoker = createInvoker(methodHandle, resourceClass.resourceInstance);
         this.httpMethod = httpMethod;
         this.pathTemplate = pathTemplate;
         this.directlyProduces = produces;
@@ -74,15 +88,33 @@ class ResourceMethod {
         return httpMethod == null;
     }
 
+    /**
+     * Creates a method handle bound to the resource instance that takes the arguments as an array and returns the
+     * result as an object (or null for void methods), so that each call goes directly to the method rather than
+     * through reflection.
+     */
+    private static MethodHandle createInvoker(java.lang.reflect.Method method, Object resourceInstance) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Could not access " + method, e);
+        }
+        if (!Modifier.isStatic(method.getModifiers())) {
+            handle = handle.bindTo(resourceInstance);
+        }
+        return handle.asSpreader(Object[].class, method.getParameterCount())
+            .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
     Object invoke(Object... params) throws Exception {
         try {
-            return methodHandle.invoke(resourceClass.resourceInstance, params);
-        } catch (InvocationTargetException e) {
-            Throwable cause = e.getCause();
-            if (cause instanceof Exception) {
-                throw (Exception) cause;
-            }
+            return (Object) invoker.invokeExact(params);
+        } catch (Exception e) {
             throw e;
+        } catch (Throwable t) {
+            // errors are wrapped as they were when the method was called with reflection
+            throw new InvocationTargetException(t);
         }
     }
 
@@ -88,6 +88,8 @@ abstract class ResourceMethodParam {
         final String key;
         final boolean isDeprecated;
         private final Pattern pattern;
+        private final boolean isUploadedFile;
+        private final boolean isUploadedFileList;
 
         ParameterObjectBuilder createDocumentationBuilder() {
             ParameterObjectBuilder builder = parameterObject()
@@ -122,6 +124,20 @@ abstract class ResourceMethodParam {
             this.key = key;
             this.isDeprecated = isDeprecated;
             this.pattern = pattern;
+            Class<?> paramClass = parameterHandle.getType();
+            this.isUploadedFile = UploadedFile.class.isAssignableFrom(paramClass);
+            this.isUploadedFileList = List.class.isAssignableFrom(paramClass) && isListOfUploadedFiles(parameterHandle.getParameterizedType());
+        }
+
+        private static boolean isListOfUploadedFiles(Type t) {
+            if (t instanceof ParameterizedType) {
+                Type[] actualTypeArguments = ((ParameterizedType) t).getActualTypeArguments();
+                if (actualTypeArguments.length == 1) {
+                    Type argType = actualTypeArguments[0];
+                    return argType instanceof Class<?> && UploadedFile.class.isAssignableFrom((Class<?>) argType);
+                }
+            }
+            return false;
         }
 
         public Object defaultValue() {
@@ -131,20 +147,10 @@ abstract class ResourceMethodParam {
 
         public Object getValue(MuRequest request, RequestMatcher.MatchedMethod matchedMethod) throws IOException {
 
-            Class<?> paramClass = parameterHandle.getType();
-            if (UploadedFile.class.isAssignableFrom(paramClass)) {
+            if (isUploadedFile) {
                 return request.uploadedFile(key);
-            } else if (List.class.isAssignableFrom(paramClass)) {
-                Type t = parameterHandle.getParameterizedType();
-                if (t instanceof ParameterizedType) {
-                    Type[] actualTypeArguments = ((ParameterizedType) t).getActualTypeArguments();
-                    if (actualTypeArguments.length == 1) {
-                        Type argType = actualTypeArguments[0];
-                        if (argType instanceof Class<?> && UploadedFile.class.isAssignableFrom((Class<?>) argType)) {
-                            return request.uploadedFiles(key);
-                        }
-                    }
-                }
+            } else if (isUploadedFileList) {
+                return request.uploadedFiles(key);
             }
 
             String specifiedValue =
@@ -38,13 +38,14 @@ public class RestHandler implements MuHandler {
 
     private final RequestMatcher requestMatcher;
     private final EntityProviders entityProviders;
+    private final MediaTypeDeterminer.NegotiationCache negotiationCache = new MediaTypeDeterminer.NegotiationCache();
     private final MuHandler documentor;
     private final CustomExceptionMapper customExceptionMapper;
     private final FilterManagerThing filterManagerThing;
     private final CORSConfig corsConfig;
 
-    RestHandler(EntityProviders entityProviders, List<ResourceClass> roots, MuHandler documentor, CustomExceptionMapper customExceptionMapper, FilterManagerThing filterManagerThing, CORSConfig corsConfig) {
-        this.requestMatcher = new RequestMatcher(roots);
+    RestHandler(EntityProviders entityProviders, List<ResourceClass> roots, MuHandler documentor, CustomExceptionMapper customExceptionMapper, FilterManagerThing filterManagerThing, CORSConfig corsConfig, int matchCacheSize) {
+        this.requestMatcher = new RequestMatcher(roots, matchCacheSize);
         this.entityProviders = entityProviders;
         this.documentor = documentor;
         this.customExceptionMapper = customExceptionMapper;
@@ -52,6 +53,22 @@ public class RestHandler implements MuHandler {
         this.corsConfig = corsConfig;
     }
 
+    /**
+     * @return The number of requests whose resource method was found in the match cache, or 0 if the cache
+     * is not enabled with {@link RestHandlerBuilder#withMatchCacheSize(int)}
+     */
+    public long matchCacheHits() {
+        return requestMatcher.matchCache == null ? 0 : requestMatcher.matchCache.hits();
+    }
+
+    /**
+     * @return The number of requests whose resource method was not in the match cache, or 0 if the cache
+     * is not enabled with {@link RestHandlerBuilder#withMatchCacheSize(int)}
+     */
+    public long matchCacheMisses() {
+        return requestMatcher.matchCache == null ? 0 : requestMatcher.matchCache.misses();
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public boolean handle(MuRequest muRequest, MuResponse muResponse) throws Exception {
@@ -98,7 +115,7 @@ public class RestHandler implements MuHandler {
             List<MediaType> produces = producesRef = mm.resourceMethod.resourceClass.produces;
             List<MediaType> directlyProduces = directlyProducesRef = mm.resourceMethod.directlyProduces;
             ResourceMethod rm = mm.resourceMethod;
-            Object[] params = new Object[rm.methodHandle.getParameterCount()];
+            Object[] params = new Object[rm.paramsByIndex.length];
 
             requestContext.setMatchedMethod(mm);
             filterManagerThing.onPostMatch(requestContext);
@@ -106,25 +123,30 @@ public class RestHandler implements MuHandler {
 
             boolean isAsync = false;
 
-            for (ResourceMethodParam param : rm.params) {
+            ResourceMethodParam[] paramsByIndex = rm.paramsByIndex;
+            for (int i = 0; i < paramsByIndex.length; i++) {
+                ResourceMethodParam param = paramsByIndex[i];
                 Object paramValue;
-                if (param.source == ResourceMethodParam.ValueSource.MESSAGE_BODY) {
-                    paramValue = readRequestEntity(requestContentType, rm, param.parameterHandle, requestContext.getEntityStream(), entityProviders, requestContext.getHeaders());
-                } else if (param.source == ResourceMethodParam.ValueSource.CONTEXT) {
-                    paramValue = getContextParam(requestContext, muResponse, relativePath, mm, param, entityProviders);
-
-                } else if (param.source == ResourceMethodParam.ValueSource.SUSPENDED) {
-                    if (isAsync) {
-                        throw new MuException("A REST method can only have one @Suspended attribute. Error for " + rm);
-                    }
-                    isAsync = true;
-                    asyncHandle = muRequest.handleAsync();
-                    paramValue = new AsyncResponseAdapter(asyncHandle, response -> sendResponse(0, requestContext, muResponse, acceptHeaders, produces, directlyProduces, response));
-                } else {
-                    ResourceMethodParam.RequestBasedParam rbp = (ResourceMethodParam.RequestBasedParam) param;
-                    paramValue = rbp.getValue(muRequest, mm);
+                switch (param.source) {
+                    case MESSAGE_BODY:
+                        paramValue = readRequestEntity(requestContentType, rm, param.parameterHandle, requestContext.getEntityStream(), entityProviders, requestContext.getHeaders());
+                        break;
+                    case CONTEXT:
+                        paramValue = getContextParam(requestContext, muResponse, relativePath, mm, param, entityProviders);
+                        break;
+                    case SUSPENDED:
+                        if (isAsync) {
+                            throw new MuException("A REST method can only have one @Suspended attribute. Error for " + rm);
+                        }
+                        isAsync = true;
+                        asyncHandle = muRequest.handleAsync();
+                        paramValue = new AsyncResponseAdapter(asyncHandle, response -> sendResponse(0, requestContext, muResponse, acceptHeaders, produces, directlyProduces, response));
+                        break;
+                    default:
+                        paramValue = ((ResourceMethodParam.RequestBasedParam) param).getValue(muRequest, mm);
+                        break;
                 }
-                params[param.index] = paramValue;
+                params[i] = paramValue;
             }
 
 
@@ -188,7 +210,7 @@ public class RestHandler implements MuHandler {
 
                 MuResponseContext responseContext = new MuResponseContext(jaxRSResponse, obj, requestContext.getMuMethod() == Method.HEAD ? NullOutputStream.INSTANCE : new LazyAccessOutputStream(muResponse));
                 if (obj.entity != null) {
-                    MediaType responseMediaType = MediaTypeDeterminer.determine(obj, produces, directlyProduces, entityProviders.writers, acceptHeaders);
+                    MediaType responseMediaType = negotiationCache.determine(obj, produces, directlyProduces, entityProviders.writers, acceptHeaders);
                     responseContext.setEntity(result, jaxRSResponse.getAnnotations(), responseMediaType);
                 }
 
@@ -283,8 +305,9 @@ public class RestHandler implements MuHandler {
         } else if (type.equals(Sse.class)) {
             return new JaxSseImpl();
         } else if (type.equals(SseEventSink.class)) {
-            AsyncSsePublisher pub = AsyncSsePublisher.start(requestContext.muRequest, muResponse);
-            return new JaxSseEventSinkImpl(pub, muResponse, providers);
+            muResponse.contentType(ContentTypes.TEXT_EVENT_STREAM);
+            muResponse.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
+            return new JaxSseEventSinkImpl(requestContext.muRequest.handleAsync(), muResponse, providers);
         } else if (type.equals(ContainerRequestContext.class)) {
             return requestContext;
         } else {
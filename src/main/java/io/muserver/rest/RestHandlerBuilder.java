@@ -38,6 +38,7 @@ public class RestHandlerBuilder implements MuHandlerBuilder<RestHandler> {
     private List<ContainerRequestFilter> requestFilters = new ArrayList<>();
     private List<ContainerResponseFilter> responseFilters = new ArrayList<>();
     private CORSConfig corsConfig = CORSConfigBuilder.disabled().build();
+    private int matchCacheSize = 0;
 
     public RestHandlerBuilder(Object... resources) {
         addResource(resources);
@@ -223,6 +224,25 @@ public class RestHandlerBuilder implements MuHandlerBuilder<RestHandler> {
         return this;
     }
 
+    /**
+     * <p>Caches the resource method chosen for each combination of request method, path, content type and accept
+     * header, so that requests that are repeated do not need to go through the full JAX-RS matching algorithm. For
+     * a cached request only the path parameters are extracted again.</p>
+     * <p>This is useful when most requests are for a limited set of paths. The number of hits and misses are available
+     * from {@link RestHandler#matchCacheHits()} and {@link RestHandler#matchCacheMisses()}.</p>
+     * <p>The cache is disabled by default.</p>
+     *
+     * @param maxEntries The maximum number of matches to cache, or 0 to disable the cache
+     * @return This builder
+     */
+    public RestHandlerBuilder withMatchCacheSize(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must be 0 or greater");
+        }
+        this.matchCacheSize = maxEntries;
+        return this;
+    }
+
     public RestHandler build() {
         List<MessageBodyReader> readers = EntityProviders.builtInReaders();
         readers.addAll(customReaders);
@@ -256,7 +276,7 @@ public class RestHandlerBuilder implements MuHandlerBuilder<RestHandler> {
 
         FilterManagerThing filterManagerThing = new FilterManagerThing(preMatchRequestFilters, requestFilters, responseFilters);
 
-        return new RestHandler(entityProviders, roots, documentor, customExceptionMapper, filterManagerThing, corsConfig);
+        return new RestHandler(entityProviders, roots, documentor, customExceptionMapper, filterManagerThing, corsConfig, matchCacheSize);
     }
 
     /**
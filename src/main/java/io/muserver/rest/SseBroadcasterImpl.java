@@ -5,6 +5,7 @@ import io.muserver.Mutils;
 import javax.ws.rs.sse.OutboundSseEvent;
 import javax.ws.rs.sse.SseBroadcaster;
 import javax.ws.rs.sse.SseEventSink;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -50,13 +51,14 @@ class SseBroadcasterImpl implements SseBroadcaster {
         CompletableFuture<?> completableFuture = new CompletableFuture<>();
 
         AtomicInteger count = new AtomicInteger(sinks.size());
+        SharedEvent shared = new SharedEvent(event);
         for (SseEventSink sink : sinks) {
             if (sink.isClosed()) {
                 sinks.remove(sink);
                 sendOnCloseEvent(sink);
                 sendComplete(completableFuture, count);
             } else {
-                sink.send(event).whenComplete((o, throwable) -> {
+                shared.sendTo(sink).whenComplete((o, throwable) -> {
                     if (throwable != null) {
                         sinks.remove(sink);
                         try {
@@ -75,6 +77,42 @@ class SseBroadcasterImpl implements SseBroadcaster {
         return completableFuture;
     }
 
+    /**
+     * An event that is converted to bytes once, by the first sink that it is sent to, and then written to each
+     * sink that uses the same entity providers. Sinks from elsewhere, or events that could not be converted, are
+     * sent to each sink individually.
+     */
+    private static class SharedEvent {
+        private final OutboundSseEvent event;
+        private EntityProviders encodedWith;
+        private ByteBuffer encoded;
+        private boolean failed;
+
+        private SharedEvent(OutboundSseEvent event) {
+            this.event = event;
+        }
+
+        CompletionStage<?> sendTo(SseEventSink sink) {
+            if (!(sink instanceof JaxSseEventSinkImpl) || failed) {
+                return sink.send(event);
+            }
+            JaxSseEventSinkImpl jaxSink = (JaxSseEventSinkImpl) sink;
+            if (encoded == null) {
+                try {
+                    encoded = jaxSink.encode(event);
+                    encodedWith = jaxSink.entityProviders;
+                } catch (Throwable e) {
+                    // the other sinks convert it themselves, so a writer that fails once does not fail every sink
+                    failed = true;
+                    return JaxSseEventSinkImpl.encodingFailed(e);
+                }
+            } else if (jaxSink.entityProviders != encodedWith) {
+                return sink.send(event);
+            }
+            return jaxSink.sendEncoded(encoded);
+        }
+    }
+
     private static void sendComplete(CompletableFuture<?> completableFuture, AtomicInteger count) {
         int remaining = count.decrementAndGet();
         if (remaining == 0) {
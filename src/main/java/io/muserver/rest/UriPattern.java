@@ -21,13 +21,31 @@ public class UriPattern {
     private final List<String> namedGroupRegexes;
     final int numberOfLiterals;
     final String pathWithoutRegex;
+    /**
+     * The URL-encoded text that every path matching this pattern starts with (ignoring any leading slash), which is
+     * the literal part of the template before the first parameter.
+     */
+    final String literalPrefix;
 
-    private UriPattern(Pattern pattern, List<String> namedGroups, List<String> namedGroupRegexes, int numberOfLiterals, String pathWithoutRegex) {
+    private UriPattern(Pattern pattern, List<String> namedGroups, List<String> namedGroupRegexes, int numberOfLiterals, String pathWithoutRegex, String literalPrefix) {
         this.pattern = pattern;
         this.namedGroups = Collections.unmodifiableList(namedGroups);
         this.namedGroupRegexes = namedGroupRegexes;
         this.numberOfLiterals = numberOfLiterals;
         this.pathWithoutRegex = pathWithoutRegex;
+        this.literalPrefix = literalPrefix;
+    }
+
+    /**
+     * @return The first segment that every path matching this pattern has, or null if the first segment can vary
+     * because it contains a parameter
+     */
+    String literalFirstSegment() {
+        int slash = literalPrefix.indexOf('/');
+        if (slash != -1) {
+            return literalPrefix.substring(0, slash);
+        }
+        return namedGroups.isEmpty() ? literalPrefix : null;
     }
 
     String regexFor(String name) {
@@ -107,6 +125,8 @@ public class UriPattern {
         StringBuilder simplePath = new StringBuilder("/");
 
         StringBuilder regex = new StringBuilder();
+        StringBuilder literalPrefix = new StringBuilder();
+        boolean inLiteralPrefix = true;
         int numberOfLiterals = 0;
         int curIndex = 0;
         int loop = 0;
@@ -120,18 +140,30 @@ public class UriPattern {
                 if (literal.equals("/")) {
                     regex.append('/');
                     simplePath.append('/');
+                    if (inLiteralPrefix) {
+                        literalPrefix.append('/');
+                    }
                 } else if (!literal.contains("/")) {
-                    regex.append(escapeRegex(literal));
+                    regex.append(Pattern.quote(encodeLiteral(literal)));
                     simplePath.append(literal);
+                    if (inLiteralPrefix) {
+                        literalPrefix.append(encodeLiteral(literal));
+                    }
                 } else {
                     String[] segments = literal.split("/");
                     for (String segment : segments) {
                         if (!segment.isEmpty()) {
-                            regex.append(escapeRegex(segment));
+                            regex.append(Pattern.quote(encodeLiteral(segment)));
                             simplePath.append(segment);
+                            if (inLiteralPrefix) {
+                                literalPrefix.append(encodeLiteral(segment));
+                            }
                         }
                         regex.append('/');
                         simplePath.append('/');
+                        if (inLiteralPrefix) {
+                            literalPrefix.append('/');
+                        }
                     }
                 }
                 curIndex = endIndex;
@@ -159,6 +191,7 @@ public class UriPattern {
                     regex.append("\\k<").append(groupName).append('>');
                 }
                 simplePath.append('{').append(groupName).append('}');
+                inLiteralPrefix = false;
                 curIndex = endOfRegex;
             }
             if (loop > 100) {
@@ -169,18 +202,21 @@ public class UriPattern {
         // 4. If the resulting string ends with '/' then remove the final character.
         if (regex.length() > 0 && regex.lastIndexOf("/") == regex.length() - 1) {
             regex.delete(regex.length() - 1, regex.length());
+            if (inLiteralPrefix) {
+                literalPrefix.setLength(literalPrefix.length() - 1);
+            }
         }
 
         // 5. Append '(/.*)?' to the result.
         regex.append("(/.*)?");
-        return new UriPattern(Pattern.compile(regex.toString()), groupNames, namedGroupRegexes, numberOfLiterals, simplePath.toString());
+        return new UriPattern(Pattern.compile(regex.toString()), groupNames, namedGroupRegexes, numberOfLiterals, simplePath.toString(), literalPrefix.toString());
     }
 
-    private static String escapeRegex(String literal) {
+    private static String encodeLiteral(String literal) {
         if (literal.contains("%")) {
             literal = Jaxutils.leniantUrlDecode(literal);
         }
-        return Pattern.quote(Mutils.urlEncode(literal));
+        return Mutils.urlEncode(literal);
     }
 
     static String trimSlashes(String url) {
@@ -209,9 +245,13 @@ public class UriPattern {
     }
 
     boolean equalModuloVariableNames(UriPattern other) {
-        String regex = "\\(\\?<[^>]+>";
-        String thisNormalised = this.pattern().replaceAll(regex, "(");
-        String otherNormalised = other.pattern().replaceAll(regex, "(");
-        return thisNormalised.equals(otherNormalised);
+        return this.patternModuloVariableNames().equals(other.patternModuloVariableNames());
+    }
+
+    /**
+     * @return The regular expression with the names of the capturing groups removed
+     */
+    String patternModuloVariableNames() {
+        return pattern().replaceAll("\\(\\?<[^>]+>", "(");
     }
 }
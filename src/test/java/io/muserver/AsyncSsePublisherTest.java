@@ -1,22 +1,42 @@
 package io.muserver;
 
+import okhttp3.Response;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Test;
 import scaffolding.ClientUtils;
 import scaffolding.ServerUtils;
 import scaffolding.SseClient;
+import scaffolding.StringUtils;
 import scaffolding.TestSseClient;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
 
 public class AsyncSsePublisherTest {
 
+    private static final int MAX_QUEUED = 100000;
+    private static final int MESSAGE_SIZE = 10000;
+
     private MuServer server;
     private final SseClient.OkSse sseClient = new SseClient.OkSse(ClientUtils.client);
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -111,6 +131,219 @@ public class AsyncSsePublisherTest {
     }
 
 
+    @Test
+    public void missedEventsAreReplayedFromTheBufferWhenClientsReconnect() throws Exception {
+        SseReplayBuffer buffer = SseReplayBufferBuilder.sseReplayBuffer().withMaxEvents(3).build();
+        for (int i = 1; i <= 5; i++) {
+            buffer.record("Message " + i, null, String.valueOf(i));
+        }
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/streamer", (request, response, pathParams) -> {
+                AsyncSsePublisher ssePublisher = AsyncSsePublisher.start(request, response, buffer);
+                ssePublisher.send("Message 5", null, "5");
+                ssePublisher.send("Message 6", null, "6");
+                ssePublisher.close();
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/streamer")).header("Last-Event-ID", "3"))) {
+            assertThat(resp.body().string(), equalTo("id: 4\ndata: Message 4\n\nid: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/streamer")))) {
+            assertThat(resp.body().string(), equalTo("id: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/streamer")).header("Last-Event-ID", "1"))) {
+            assertThat(resp.body().string(), equalTo("id: 4\ndata: Message 4\n\nid: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        assertThat(buffer.size(), is(3));
+    }
+
+    @Test
+    public void heartbeatsAreSentWhenNothingElseHasBeenSent() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/streamer", (request, response, pathParams) -> {
+                AsyncSsePublisher ssePublisher = AsyncSsePublisher.start(request, response);
+                ssePublisher.setHeartbeatInterval(500, TimeUnit.MILLISECONDS);
+                executor.submit(() -> {
+                    try {
+                        // frequent messages mean no heartbeats are needed
+                        for (int i = 0; i < 5; i++) {
+                            ssePublisher.send("Message " + i);
+                            Thread.sleep(50);
+                        }
+                        Thread.sleep(1800);
+                        ssePublisher.send("Last message");
+                        ssePublisher.setHeartbeatInterval(0, TimeUnit.MILLISECONDS);
+                        Thread.sleep(600);
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        ssePublisher.close();
+                    }
+                });
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/streamer")))) {
+            String body = resp.body().string();
+            String expectedStart = "data: Message 0\n\ndata: Message 1\n\ndata: Message 2\n\ndata: Message 3\n\ndata: Message 4\n\n:\n\n";
+            assertThat(body, startsWith(expectedStart));
+            assertThat(body, endsWith(":\n\ndata: Last message\n\n"));
+            int heartbeats = (body.length() - expectedStart.length() - "data: Last message\n\n".length()) / 3 + 1;
+            assertThat(heartbeats, allOf(greaterThanOrEqualTo(1), lessThanOrEqualTo(4)));
+        }
+    }
+
+    @Test
+    public void eventsCanBeDroppedWithAGapMarkerWhenTheClientIsSlow() throws Exception {
+        CompletableFuture<AsyncSsePublisher> publisherFuture = new CompletableFuture<>();
+        try (Socket socket = connectClientThatNeverReads(SseQueueFullAction.DROP_WITH_GAP_MARKER, publisherFuture)) {
+            AsyncSsePublisher publisher = publisherFuture.get(10, TimeUnit.SECONDS);
+            String message = StringUtils.randomAsciiStringOfLength(MESSAGE_SIZE);
+            int dropped = 0;
+            for (int i = 0; i < 2000 && dropped < 3; i++) {
+                CompletableFuture<?> stage = publisher.send(message).toCompletableFuture();
+                if (stage.isCompletedExceptionally()) {
+                    dropped++;
+                }
+            }
+            assertThat(dropped, is(3));
+
+            // the client starts reading, so catches up and is told how many events it missed
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+            int gapTotal = 0;
+            while (gapTotal < dropped) {
+                String line = reader.readLine();
+                assertThat(line, notNullValue());
+                if (line.equals("event: gap")) {
+                    gapTotal += Integer.parseInt(reader.readLine().substring("data: ".length()));
+                }
+            }
+            assertThat(gapTotal, is(dropped));
+
+            CompletableFuture<?> afterGap = publisher.send("After the gap").toCompletableFuture();
+            String line;
+            while (!"data: After the gap".equals(line = reader.readLine())) {
+                assertThat(line, allOf(notNullValue(), not(equalTo("event: gap"))));
+            }
+            afterGap.get(10, TimeUnit.SECONDS);
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void eventsCanBeCoalescedToTheLatestWhenTheClientIsSlow() throws Exception {
+        CompletableFuture<AsyncSsePublisher> publisherFuture = new CompletableFuture<>();
+        try (Socket socket = connectClientThatNeverReads(SseQueueFullAction.COALESCE_TO_LATEST, publisherFuture)) {
+            AsyncSsePublisher publisher = publisherFuture.get(10, TimeUnit.SECONDS);
+            String padding = StringUtils.randomAsciiStringOfLength(MESSAGE_SIZE);
+            AtomicInteger replaced = new AtomicInteger();
+            int sent = 0;
+            while (sent < 2000 && replaced.get() == 0) {
+                publisher.send("Snapshot " + sent + " " + padding).whenComplete((o, error) -> {
+                    if (error instanceof MuException) {
+                        replaced.incrementAndGet();
+                    }
+                });
+                sent++;
+            }
+            assertThat(replaced.get(), greaterThan(0));
+            CompletableFuture<?> latest = publisher.send("Latest").toCompletableFuture();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+            int received = 0;
+            String line;
+            while (!"data: Latest".equals(line = reader.readLine())) {
+                assertThat(line, notNullValue());
+                if (line.startsWith("data: Snapshot ")) {
+                    received++;
+                }
+            }
+            latest.get(10, TimeUnit.SECONDS);
+            assertThat(received, lessThan(sent));
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void slowClientsCanBeDisconnected() throws Exception {
+        CompletableFuture<AsyncSsePublisher> publisherFuture = new CompletableFuture<>();
+        try (Socket socket = connectClientThatNeverReads(SseQueueFullAction.DISCONNECT, publisherFuture)) {
+            AsyncSsePublisher publisher = publisherFuture.get(10, TimeUnit.SECONDS);
+            String message = StringUtils.randomAsciiStringOfLength(MESSAGE_SIZE);
+            CompletableFuture<?> stage = null;
+            for (int i = 0; i < 2000 && (stage == null || !stage.isCompletedExceptionally()); i++) {
+                stage = publisher.send(message).toCompletableFuture();
+            }
+            assertThat(stage.isCompletedExceptionally(), is(true));
+
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+            }
+            CompletableFuture<?> tooLate = publisher.send("Too late").toCompletableFuture();
+            try {
+                tooLate.get(10, TimeUnit.SECONDS);
+                Assert.fail("Should not have been sent");
+            } catch (ExecutionException expected) {
+            }
+        }
+    }
+
+    private Socket connectClientThatNeverReads(SseQueueFullAction action, CompletableFuture<AsyncSsePublisher> publisherFuture) throws Exception {
+        server = MuServerBuilder.httpServer()
+            .addHandler(Method.GET, "/streamer", (request, response, pathParams) -> {
+                AsyncSsePublisher ssePublisher = AsyncSsePublisher.start(request, response);
+                ssePublisher.setOutboundLimit(MAX_QUEUED, action);
+                publisherFuture.complete(ssePublisher);
+            })
+            .start();
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(1024);
+        socket.setSoTimeout(10000);
+        socket.connect(new InetSocketAddress(server.uri().getHost(), server.uri().getPort()));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /streamer HTTP/1.1\r\nhost: " + server.uri().getAuthority() + "\r\n\r\n").getBytes(UTF_8));
+        out.flush();
+        return socket;
+    }
+
+    @Test
+    public void writesAndCallbacksHappenWithoutHoldingThePublisherLock() throws Exception {
+        List<String> written = new ArrayList<>();
+        List<DoneCallback> incomplete = new ArrayList<>();
+        AtomicBoolean completeStraightAway = new AtomicBoolean(false);
+        AsyncHandle handle = (AsyncHandle) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AsyncHandle.class}, (proxy, method, args) -> {
+            if (method.getName().equals("write") && args.length == 2 && args[1] instanceof DoneCallback) {
+                written.add(UTF_8.decode((ByteBuffer) args[0]).toString());
+                if (completeStraightAway.get()) {
+                    // as happens when writing on the event loop or to a closed channel
+                    ((DoneCallback) args[1]).onComplete(null);
+                } else {
+                    incomplete.add((DoneCallback) args[1]);
+                }
+            }
+            return null;
+        });
+        MuRequest request = (MuRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MuRequest.class},
+            (proxy, method, args) -> method.getName().equals("handleAsync") ? handle : null);
+        AsyncSsePublisherImpl publisher = new AsyncSsePublisherImpl(request, null, 0);
+        publisher.setOutboundLimit(10, SseQueueFullAction.COALESCE_TO_LATEST);
+
+        List<Boolean> lockHeld = new ArrayList<>();
+        publisher.send("First");
+        publisher.send("Second").thenRun(() -> {
+            lockHeld.add(Thread.holdsLock(publisher));
+            publisher.send("From callback").thenRun(() -> lockHeld.add(Thread.holdsLock(publisher)));
+        });
+        assertThat(written, contains("data: First\n\n"));
+
+        // the coalesced event is written when the first write completes
+        completeStraightAway.set(true);
+        incomplete.get(0).onComplete(null);
+        assertThat(written, contains("data: First\n\n", "data: Second\n\n", "data: From callback\n\n"));
+        assertThat(lockHeld, contains(false, false));
+    }
+
     @After
     public void destroy() {
         scaffolding.MuAssert.stopAndCheck(server);
@@ -9,6 +9,7 @@ import scaffolding.ServerUtils;
 import scaffolding.StringUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -17,6 +18,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -52,6 +54,83 @@ public class AsyncTest {
         }
     }
 
+    @Test
+    public void writesThatDoNotWaitOnTheirFuturesAreAllSentToSlowClients() throws Exception {
+        byte[] chunk = StringUtils.randomBytes(16384);
+        int chunks = 1100; // more than the 16MB stream window that okhttp clients use
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                response.contentType(ContentTypes.APPLICATION_OCTET_STREAM);
+                AsyncHandle asyncHandle = request.handleAsync();
+                for (int i = 0; i < chunks; i++) {
+                    asyncHandle.write(ByteBuffer.wrap(chunk));
+                }
+                asyncHandle.complete();
+            })
+            .start();
+        try (Response resp = call(request().url(server.uri().toString()))) {
+            assertThat(resp.code(), equalTo(200));
+            long received = 0;
+            byte[] buffer = new byte[8192];
+            int read;
+            InputStream body = resp.body().byteStream();
+            while ((read = body.read(buffer)) > -1) {
+                received += read;
+                if (received < 1024 * 1024) {
+                    Thread.sleep(1);
+                }
+            }
+            assertThat(received, equalTo((long) chunk.length * chunks));
+        }
+    }
+
+    @Test
+    public void futureWritesWaitForStalledClientsIfAsyncWriteBackpressureIsEnabled() throws Exception {
+        byte[] chunk = StringUtils.randomBytes(16384);
+        int chunks = 3000; // nearly three times the 16MB stream window that okhttp clients use
+        AtomicInteger chunksWritten = new AtomicInteger();
+        AtomicLong maxUnwrittenBytes = new AtomicLong();
+        AtomicInteger streamWindow = new AtomicInteger();
+        server = ServerUtils.httpsServerForTest()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withAsyncWriteBackpressure(true))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                Http2Response http2Response = (Http2Response) response;
+                streamWindow.set(http2Response.maxUnwrittenBytes());
+                response.contentType(ContentTypes.APPLICATION_OCTET_STREAM);
+                AsyncHandle asyncHandle = request.handleAsync();
+                for (int i = 0; i < chunks; i++) {
+                    asyncHandle.write(ByteBuffer.wrap(chunk));
+                    maxUnwrittenBytes.accumulateAndGet(http2Response.unwrittenBytes(), Math::max);
+                    chunksWritten.incrementAndGet();
+                }
+                asyncHandle.complete();
+            })
+            .start();
+        try (Response resp = call(request().url(server.uri().toString()))) {
+            assertThat(resp.code(), equalTo(200));
+            assertThat(isHttp2(resp), equalTo(true));
+
+            // stall the client so that the server can only send a window's worth of data
+            Thread.sleep(1000);
+            assertThat(streamWindow.get(), greaterThan(0));
+            // a write can only take the unwritten data over the window by its own size
+            long bound = (long) streamWindow.get() + chunk.length;
+            assertThat(chunksWritten.get(), lessThan(chunks));
+            assertThat(maxUnwrittenBytes.get(), lessThanOrEqualTo(bound));
+
+            long received = 0;
+            byte[] buffer = new byte[8192];
+            int read;
+            InputStream body = resp.body().byteStream();
+            while ((read = body.read(buffer)) > -1) {
+                received += read;
+            }
+            assertThat(received, equalTo((long) chunk.length * chunks));
+            assertThat(chunksWritten.get(), equalTo(chunks));
+            assertThat(maxUnwrittenBytes.get(), lessThanOrEqualTo(bound));
+        }
+    }
+
     @Test
     public void responsesCanBeAsync() throws IOException {
 
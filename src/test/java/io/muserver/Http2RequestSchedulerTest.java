@@ -0,0 +1,137 @@
+package io.muserver;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.*;
+
+public class Http2RequestSchedulerTest {
+
+    private MuServer server;
+
+    @Test
+    public void urgencyIsReadFromPriorityHeaders() {
+        assertThat(Http2RequestScheduler.urgency(null), is(-1));
+        assertThat(Http2RequestScheduler.urgency(""), is(-1));
+        assertThat(Http2RequestScheduler.urgency("i"), is(-1));
+        assertThat(Http2RequestScheduler.urgency("u=0"), is(0));
+        assertThat(Http2RequestScheduler.urgency("i, u=5"), is(5));
+        assertThat(Http2RequestScheduler.urgency("u=7,i"), is(7));
+        assertThat(Http2RequestScheduler.urgency("u=8"), is(-1));
+        assertThat(Http2RequestScheduler.urgency("u=12"), is(-1));
+    }
+
+    @Test
+    public void requestsOverTheLimitAreQueuedInArrivalOrderByDefault() {
+        Http2RequestScheduler scheduler = new Http2RequestScheduler(1, false);
+        List<Integer> dispatched = new ArrayList<>();
+        scheduler.submit(1, (short) 16, 3, null, () -> dispatched.add(1));
+        scheduler.submit(3, (short) 16, 7, null, () -> dispatched.add(3));
+        scheduler.submit(5, (short) 256, 0, null, () -> dispatched.add(5));
+        assertThat(dispatched, contains(1));
+        assertThat(scheduler.queuedCount(), is(2));
+
+        scheduler.onFinished(1);
+        assertThat(dispatched, contains(1, 3));
+        scheduler.onFinished(3);
+        assertThat(dispatched, contains(1, 3, 5));
+        scheduler.onFinished(5);
+        assertThat(scheduler.inFlightCount(), is(0));
+        assertThat(scheduler.queuedCount(), is(0));
+    }
+
+    @Test
+    public void priorityOrderingUsesUrgencyThenWeight() {
+        Http2RequestScheduler scheduler = new Http2RequestScheduler(1, true);
+        List<Integer> dispatched = new ArrayList<>();
+        scheduler.submit(1, (short) 16, 3, null, () -> dispatched.add(1));
+        scheduler.submit(3, (short) 16, 5, null, () -> dispatched.add(3));
+        scheduler.submit(5, (short) 16, 1, null, () -> dispatched.add(5));
+        scheduler.submit(7, (short) 200, 1, null, () -> dispatched.add(7));
+        scheduler.submit(9, (short) 16, 6, null, () -> dispatched.add(9));
+        scheduler.reprioritise(9, (short) -1, 0);
+
+        for (int streamId : new int[]{1, 9, 7, 5, 3}) {
+            scheduler.onFinished(streamId);
+        }
+        assertThat(dispatched, contains(1, 9, 7, 5, 3));
+    }
+
+    @Test
+    public void requestsFinishedWhileQueuedAreNeverDispatched() {
+        Http2RequestScheduler scheduler = new Http2RequestScheduler(1, false);
+        List<Integer> dispatched = new ArrayList<>();
+        scheduler.submit(1, (short) 16, 3, null, () -> dispatched.add(1));
+        scheduler.submit(3, (short) 16, 3, null, () -> dispatched.add(3));
+        scheduler.submit(5, (short) 16, 3, null, () -> dispatched.add(5));
+        scheduler.onFinished(3);
+        scheduler.onFinished(1);
+        assertThat(dispatched, contains(1, 5));
+        assertThat(scheduler.clearQueued(), empty());
+    }
+
+    @Test
+    public void noMoreThanTheMaxInFlightRequestsPerConnectionAreHandledAtOnce() throws Exception {
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        server = ServerUtils.httpsServerForTest()
+            .withHttp2Config(Http2ConfigBuilder.http2EnabledIfAvailable().withMaxInFlightRequestsPerConnection(2))
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                int now = current.incrementAndGet();
+                max.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(50);
+                } finally {
+                    current.decrementAndGet();
+                }
+                response.write("done");
+            })
+            .start();
+
+        int requestCount = 8;
+        CountDownLatch latch = new CountDownLatch(requestCount);
+        ConcurrentLinkedQueue<String> results = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> protocols = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < requestCount; i++) {
+            client.newCall(request(server.uri().resolve("/slow")).build()).enqueue(new Callback() {
+                public void onFailure(Call call, IOException e) {
+                    results.add(e.toString());
+                    latch.countDown();
+                }
+
+                public void onResponse(Call call, Response response) throws IOException {
+                    try (Response resp = response) {
+                        protocols.add(resp.protocol().toString());
+                        results.add(resp.code() + " " + resp.body().string());
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+        MuAssert.assertNotTimedOut("requests", latch);
+        assertThat(results, everyItem(equalTo("200 done")));
+        if (protocols.contains("h2")) {
+            assertThat(max.get(), lessThanOrEqualTo(2));
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+}
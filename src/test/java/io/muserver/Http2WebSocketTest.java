@@ -0,0 +1,381 @@
+package io.muserver;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.codec.http2.*;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static io.muserver.MuServerBuilder.httpsServer;
+import static io.muserver.WebSocketHandlerBuilder.webSocketHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class Http2WebSocketTest {
+
+    private MuServer server;
+    private final NioEventLoopGroup clientGroup = new NioEventLoopGroup(1);
+
+    @Test
+    public void websocketsCanBeOpenedAsStreamsOnAnHttp2Connection() throws Exception {
+        CopyOnWriteArrayList<String> serverEvents = new CopyOnWriteArrayList<>();
+        CompletableFuture<Set<MuWebSocket>> activeWebsockets = new CompletableFuture<>();
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withWebSockets(true))
+            .addHandler(webSocketHandler((request, responseHeaders) -> {
+                responseHeaders.set("x-protocol", request.protocol());
+                return new BaseWebSocket() {
+                    @Override
+                    public void onText(String message, DoneCallback onComplete) {
+                        serverEvents.add("text: " + message);
+                        if (message.equals("connections")) {
+                            activeWebsockets.complete(request.connection().activeWebsockets());
+                        }
+                        session().sendText("echo " + message, onComplete);
+                    }
+
+                    @Override
+                    public void onBinary(ByteBuffer buffer, DoneCallback onComplete) {
+                        session().sendBinary(buffer, onComplete);
+                    }
+
+                    @Override
+                    public void onClientClosed(int statusCode, String reason) throws Exception {
+                        serverEvents.add("closed: " + statusCode + " " + reason);
+                        super.onClientClosed(statusCode, reason);
+                    }
+                };
+            }).withPath("/ws"))
+            .addHandler(Method.GET, "/plain", (request, response, pathParams) -> response.write("Plain " + request.protocol()))
+            .start();
+
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        assertThat(client.enableConnectProtocol.get(10, TimeUnit.SECONDS), is(1L));
+
+        ClientStream first = client.openWebSocket(3, "/ws");
+        ClientStream second = client.openWebSocket(5, "/ws");
+        assertThat(first.responseHeaders.get(10, TimeUnit.SECONDS).status().toString(), equalTo("200"));
+        assertThat(first.responseHeaders.get().get("x-protocol").toString(), equalTo("HTTP/2"));
+        assertThat(second.responseHeaders.get(10, TimeUnit.SECONDS).status().toString(), equalTo("200"));
+
+        first.send(new TextWebSocketFrame("Hello from one"));
+        second.send(new TextWebSocketFrame("Hello from two"));
+        second.send(new BinaryWebSocketFrame(Unpooled.copiedBuffer("Binary", UTF_8)));
+        assertThat(first.frames.poll(10, TimeUnit.SECONDS), equalTo("text: echo Hello from one"));
+        assertThat(second.frames.poll(10, TimeUnit.SECONDS), equalTo("text: echo Hello from two"));
+        assertThat(second.frames.poll(10, TimeUnit.SECONDS), equalTo("binary: Binary"));
+
+        first.send(new TextWebSocketFrame("connections"));
+        assertThat(first.frames.poll(10, TimeUnit.SECONDS), equalTo("text: echo connections"));
+        assertThat(activeWebsockets.get(10, TimeUnit.SECONDS), hasSize(2));
+
+        ClientStream plain = client.get(7, "/plain");
+        assertThat(plain.frames.poll(10, TimeUnit.SECONDS), equalTo("data: Plain HTTP/2"));
+
+        first.send(new CloseWebSocketFrame(1000, "Finished"));
+        assertThat(first.frames.poll(10, TimeUnit.SECONDS), equalTo("close: 1000 Finished"));
+        assertThat(first.ended.get(10, TimeUnit.SECONDS), is(true));
+        assertThat(serverEvents, hasItem("closed: 1000 Finished"));
+
+        // the other websocket on the connection is unaffected
+        second.send(new TextWebSocketFrame("Still here"));
+        assertThat(second.frames.poll(10, TimeUnit.SECONDS), equalTo("text: echo Still here"));
+        client.channel.close().sync();
+    }
+
+    @Test
+    public void moreDataThanTheFlowControlWindowCanBeSentInBothDirections() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withWebSockets(true))
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onBinary(ByteBuffer buffer, DoneCallback onComplete) {
+                    session().sendBinary(buffer, onComplete);
+                }
+            }))
+            .start();
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        client.enableConnectProtocol.get(10, TimeUnit.SECONDS);
+        ClientStream stream = client.openWebSocket(3, "/");
+        assertThat(stream.responseHeaders.get(10, TimeUnit.SECONDS).status().toString(), equalTo("200"));
+
+        // the default initial window size is 65535 bytes, so this only works if window updates are sent
+        String message = StringUtils.randomAsciiStringOfLength(60000);
+        for (int i = 0; i < 10; i++) {
+            stream.send(new BinaryWebSocketFrame(Unpooled.copiedBuffer(i + message, UTF_8)));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(stream.frames.poll(10, TimeUnit.SECONDS), equalTo("binary: " + i + message));
+        }
+        client.channel.close().sync();
+    }
+
+    @Test
+    public void extendedConnectIsNotAdvertisedUnlessEnabled() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+            }))
+            .start();
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        assertThat(client.enableConnectProtocol.get(10, TimeUnit.SECONDS), is(nullValue()));
+        client.channel.close().sync();
+    }
+
+    @Test
+    public void otherProtocolsAreRejected() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withWebSockets(true))
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+            }))
+            .start();
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        client.enableConnectProtocol.get(10, TimeUnit.SECONDS);
+        ClientStream stream = client.open(3, new DefaultHttp2Headers().method("CONNECT").scheme("https")
+            .authority(server.uri().getAuthority()).path("/").set(":protocol", "something-else"), false);
+        assertThat(stream.responseHeaders.get(10, TimeUnit.SECONDS).status().toString(), equalTo("400"));
+        client.channel.close().sync();
+    }
+
+    @Test
+    public void malformedHeaderBlocksResetTheStreamWhenWebSocketsAreEnabled() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withWebSockets(true))
+            .addHandler(Method.GET, "/plain", (request, response, pathParams) -> response.write("Plain " + request.protocol()))
+            .start();
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        client.enableConnectProtocol.get(10, TimeUnit.SECONDS);
+        String authority = server.uri().getAuthority();
+
+        ClientStream late = client.openRaw(3, MuHttp2HeadersDecoderTest.headerBlock(":method", "GET", ":scheme", "https",
+            "accept", "text/plain", ":authority", authority, ":path", "/plain"));
+        assertThat(late.resetErrorCode.get(10, TimeUnit.SECONDS), is(Http2Error.PROTOCOL_ERROR.code()));
+
+        ClientStream duplicate = client.openRaw(5, MuHttp2HeadersDecoderTest.headerBlock(":method", "GET", ":scheme", "https",
+            ":authority", authority, ":path", "/plain", ":path", "/plain"));
+        assertThat(duplicate.resetErrorCode.get(10, TimeUnit.SECONDS), is(Http2Error.PROTOCOL_ERROR.code()));
+
+        ClientStream connectionHeader = client.openRaw(7, MuHttp2HeadersDecoderTest.headerBlock(":method", "GET", ":scheme", "https",
+            ":authority", authority, ":path", "/plain", "connection", "keep-alive"));
+        assertThat(connectionHeader.resetErrorCode.get(10, TimeUnit.SECONDS), is(Http2Error.PROTOCOL_ERROR.code()));
+
+        // only the streams are reset, so the connection can still be used
+        ClientStream plain = client.get(9, "/plain");
+        assertThat(plain.frames.poll(10, TimeUnit.SECONDS), equalTo("data: Plain HTTP/2"));
+        client.channel.close().sync();
+    }
+
+    @Test
+    public void clientsSendingManyEmptyDataFramesAreDisconnected() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withWebSockets(true))
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> response.write("Not reading the body"))
+            .start();
+        Http2Client client = Http2Client.connect(clientGroup, server);
+        client.enableConnectProtocol.get(10, TimeUnit.SECONDS);
+        ClientStream stream = client.open(3, new DefaultHttp2Headers().method("POST").scheme("https").authority(server.uri().getAuthority()).path("/"), false);
+        assertThat(stream.ended.get(10, TimeUnit.SECONDS), is(true));
+        client.onEventLoop(ctx -> {
+            for (int i = 0; i < 3; i++) {
+                client.handler.encoder().frameWriter().writeData(ctx, 3, Unpooled.EMPTY_BUFFER, 0, false, ctx.newPromise());
+            }
+        });
+        assertThat(client.goAwayErrorCode.get(10, TimeUnit.SECONDS), is(Http2Error.ENHANCE_YOUR_CALM.code()));
+        client.channel.close().sync();
+    }
+
+    @After
+    public void stop() throws InterruptedException {
+        MuAssert.stopAndCheck(server);
+        clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).await();
+    }
+
+    private static class Http2Client extends Http2FrameAdapter {
+        final CompletableFuture<Long> enableConnectProtocol = new CompletableFuture<>();
+        final CompletableFuture<Long> goAwayErrorCode = new CompletableFuture<>();
+        final ConcurrentHashMap<Integer, ClientStream> streams = new ConcurrentHashMap<>();
+        private final String authority;
+        Channel channel;
+        Http2ConnectionHandler handler;
+
+        private Http2Client(String authority) {
+            this.authority = authority;
+        }
+
+        static Http2Client connect(NioEventLoopGroup group, MuServer server) throws Exception {
+            SslContext sslContext = SslContextBuilder.forClient()
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT, ApplicationProtocolNames.HTTP_2))
+                .build();
+            Http2Client client = new Http2Client(server.uri().getAuthority());
+            client.handler = new Http2ConnectionHandlerBuilder().server(false).gracefulShutdownTimeoutMillis(0).frameListener(client).build();
+            client.channel = new Bootstrap().group(group).channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc(), server.uri().getHost(), server.uri().getPort()), client.handler);
+                    }
+                })
+                .connect(server.uri().getHost(), server.uri().getPort()).sync().channel();
+            return client;
+        }
+
+        ClientStream openWebSocket(int streamId, String path) throws Exception {
+            return open(streamId, new DefaultHttp2Headers().method("CONNECT").scheme("https").authority(authority).path(path)
+                .set(":protocol", "websocket").set("sec-websocket-version", "13"), false);
+        }
+
+        ClientStream get(int streamId, String path) throws Exception {
+            return open(streamId, new DefaultHttp2Headers().method("GET").scheme("https").authority(authority).path(path), true);
+        }
+
+        ClientStream open(int streamId, Http2Headers headers, boolean endOfStream) throws Exception {
+            ClientStream stream = new ClientStream(this, streamId, headers.contains(":protocol", "websocket"));
+            streams.put(streamId, stream);
+            onEventLoop(ctx -> handler.encoder().writeHeaders(ctx, streamId, headers, 0, endOfStream, ctx.newPromise()));
+            return stream;
+        }
+
+        /**
+         * Sends a header block as-is, so that header blocks that the client's encoder would not create can be sent
+         */
+        ClientStream openRaw(int streamId, ByteBuf headerBlock) throws Exception {
+            ClientStream stream = new ClientStream(this, streamId, false);
+            streams.put(streamId, stream);
+            onEventLoop(ctx -> {
+                try {
+                    handler.connection().local().createStream(streamId, true);
+                } catch (Http2Exception e) {
+                    throw new RuntimeException(e);
+                }
+                handler.encoder().frameWriter().writeFrame(ctx, Http2FrameTypes.HEADERS, streamId,
+                    new Http2Flags().endOfHeaders(true).endOfStream(true), headerBlock, ctx.newPromise());
+            });
+            return stream;
+        }
+
+        void onEventLoop(java.util.function.Consumer<ChannelHandlerContext> action) throws Exception {
+            ChannelHandlerContext ctx = channel.pipeline().context(handler);
+            channel.eventLoop().submit(() -> {
+                action.accept(ctx);
+                ctx.channel().flush();
+            }).get(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onSettingsRead(ChannelHandlerContext ctx, Http2Settings settings) {
+            enableConnectProtocol.complete(settings.get((char) 0x8));
+        }
+
+        @Override
+        public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers, int padding, boolean endStream) {
+            ClientStream stream = streams.get(streamId);
+            stream.responseHeaders.complete(headers);
+            if (endStream) {
+                stream.ended.complete(true);
+            }
+        }
+
+        @Override
+        public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers, int streamDependency, short weight, boolean exclusive, int padding, boolean endStream) {
+            onHeadersRead(ctx, streamId, headers, padding, endStream);
+        }
+
+        @Override
+        public int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream) {
+            int processed = data.readableBytes() + padding;
+            streams.get(streamId).onData(data, endOfStream);
+            return processed;
+        }
+
+        @Override
+        public void onGoAwayRead(ChannelHandlerContext ctx, int lastStreamId, long errorCode, ByteBuf debugData) {
+            goAwayErrorCode.complete(errorCode);
+        }
+
+        @Override
+        public void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode) {
+            streams.get(streamId).resetErrorCode.complete(errorCode);
+            streams.get(streamId).ended.complete(false);
+        }
+    }
+
+    private static class ClientStream {
+        final CompletableFuture<Http2Headers> responseHeaders = new CompletableFuture<>();
+        final CompletableFuture<Boolean> ended = new CompletableFuture<>();
+        final CompletableFuture<Long> resetErrorCode = new CompletableFuture<>();
+        final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        private final Http2Client client;
+        private final int streamId;
+        private final boolean isWebSocket;
+        private final EmbeddedChannel encoder = new EmbeddedChannel(new WebSocket13FrameEncoder(true));
+        private final EmbeddedChannel decoder = new EmbeddedChannel(new WebSocket13FrameDecoder(false, false, 65536));
+
+        ClientStream(Http2Client client, int streamId, boolean isWebSocket) {
+            this.client = client;
+            this.streamId = streamId;
+            this.isWebSocket = isWebSocket;
+        }
+
+        void send(WebSocketFrame frame) throws Exception {
+            encoder.writeOutbound(frame);
+            ByteBuf encoded = Unpooled.buffer();
+            ByteBuf part;
+            while ((part = encoder.readOutbound()) != null) {
+                encoded.writeBytes(part);
+                part.release();
+            }
+            client.onEventLoop(ctx -> client.handler.encoder().writeData(ctx, streamId, encoded, 0, false, ctx.newPromise()));
+        }
+
+        void onData(ByteBuf data, boolean endOfStream) {
+            if (isWebSocket) {
+                decoder.writeInbound(data.retain());
+                WebSocketFrame frame;
+                while ((frame = decoder.readInbound()) != null) {
+                    frames.add(describe(frame));
+                    frame.release();
+                }
+            } else if (data.isReadable()) {
+                frames.add("data: " + data.toString(UTF_8));
+            }
+            if (endOfStream) {
+                ended.complete(true);
+            }
+        }
+
+        private static String describe(WebSocketFrame frame) {
+            if (frame instanceof TextWebSocketFrame) {
+                return "text: " + ((TextWebSocketFrame) frame).text();
+            } else if (frame instanceof BinaryWebSocketFrame) {
+                return "binary: " + frame.content().toString(UTF_8);
+            } else if (frame instanceof CloseWebSocketFrame) {
+                return "close: " + ((CloseWebSocketFrame) frame).statusCode() + " " + ((CloseWebSocketFrame) frame).reasonText();
+            }
+            return frame.getClass().getSimpleName();
+        }
+    }
+
+}
@@ -1,19 +1,30 @@
 package io.muserver;
 
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import okhttp3.Response;
 import org.junit.After;
 import org.junit.Test;
 import scaffolding.MuAssert;
 import scaffolding.ServerUtils;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import java.io.IOException;
+import javax.net.ssl.*;
+import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.muserver.MuServerBuilder.httpServer;
@@ -51,6 +62,63 @@ public class HttpsTest {
         assertThat(certificates, equalTo(sslInfo.certificates())); // check that cached calls work
     }
 
+    @Test
+    public void sessionResumptionIsReportedInTheSSLInfo() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withHttpsConfig(HttpsConfigBuilder.unsignedLocalhost()
+                .withOpenSslIfAvailable(true)
+                .withSessionCacheSize(1000)
+                .withSessionTimeout(1, TimeUnit.HOURS)
+                .withSessionTicketKeyRotation(1, TimeUnit.HOURS))
+            .addHandler((request, response) -> {
+                response.write("Hello");
+                return true;
+            })
+            .start();
+
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.httpsUri()))) {
+                assertThat(resp.body().string(), equalTo("Hello"));
+            }
+            client.connectionPool().evictAll();
+        }
+        SSLInfo sslInfo = server.sslInfo();
+        assertThat(sslInfo.completedHandshakes(), is(3L));
+        assertThat(sslInfo.resumedHandshakes(), is(2L));
+    }
+
+    @Test
+    public void handshakesCanBeRunOnADedicatedExecutor() throws Exception {
+        AtomicInteger handshakeTasks = new AtomicInteger();
+        ExecutorService handshakeExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100)) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                handshakeTasks.incrementAndGet();
+            }
+        };
+        server = ServerUtils.httpsServerForTest()
+            .withHandshakeExecutor(handshakeExecutor)
+            .addHandler((request, response) -> {
+                response.write("Hello");
+                return true;
+            })
+            .start();
+
+        for (int i = 0; i < 2; i++) {
+            try (Response resp = call(request(server.httpsUri()))) {
+                assertThat(resp.body().string(), equalTo("Hello"));
+            }
+            client.connectionPool().evictAll();
+        }
+        assertThat(handshakeTasks.get(), greaterThan(0));
+        SSLInfo sslInfo = server.sslInfo();
+        assertThat(sslInfo.completedHandshakes(), is(2L));
+        assertThat(sslInfo.averageHandshakeMillis(), greaterThan(0.0));
+        assertThat(sslInfo.queuedHandshakeTasks(), is(0));
+        server.stop();
+        assertThat(handshakeExecutor.isShutdown(), is(true));
+    }
+
     @Test
     public void httpIsNotAvailableUnlessRequested() {
         server = ServerUtils.httpsServerForTest().start();
@@ -113,6 +181,130 @@ public class HttpsTest {
         assertThat(certInformation(server.uri()), containsString("My PKCS12 Certificate"));
     }
 
+    @Test
+    public void differentCertsCanBeUsedForDifferentHostsWithSNI() throws Exception {
+        HttpsConfigBuilder jksCert = HttpsConfigBuilder.httpsConfig()
+            .withKeystoreType("JKS")
+            .withKeystorePassword("MY_PASSWORD")
+            .withKeyPassword("MY_PASSWORD")
+            .withKeystoreFromClasspath("/jks-keystore.jks");
+        HttpsConfigBuilder pkcs12Cert = HttpsConfigBuilder.httpsConfig()
+            .withKeystoreType("PKCS12")
+            .withKeystorePassword("MY_PASSWORD")
+            .withKeyPassword("MY_PASSWORD")
+            .withKeystoreFromClasspath("/pkcs12-keystore.p12");
+
+        server = ServerUtils.httpsServerForTest()
+            .withHttpsConfig(HttpsConfigBuilder.unsignedLocalhost()
+                .withHostConfig("JKS.example.org", jksCert)
+                .withHostConfig("*.p12.example.org", pkcs12Cert))
+            .addHandler((request, response) -> {
+                response.write("This is encrypted");
+                return true;
+            })
+            .start();
+        try (Response resp = call(request(server.httpsUri()))) {
+            assertThat(resp.body().string(), equalTo("This is encrypted"));
+        }
+
+        assertThat(certNameForHost(null), containsString("Mu Server Test Cert"));
+        assertThat(certNameForHost("jks.example.org"), containsString("My JKS Certificate"));
+        assertThat(certNameForHost("a.p12.example.org"), containsString("My PKCS12 Certificate"));
+        assertThat(certNameForHost("b.a.p12.example.org"), containsString("Mu Server Test Cert"));
+        assertThat(certNameForHost("other.example.org"), containsString("Mu Server Test Cert"));
+
+        server.changeHttpsConfig(HttpsConfigBuilder.unsignedLocalhost()
+            .withHostConfig("jks.example.org", pkcs12Cert)
+            .withHostConfig("*.p12.example.org", pkcs12Cert));
+        assertThat(certNameForHost("jks.example.org"), containsString("My PKCS12 Certificate"));
+        assertThat(certNameForHost("a.p12.example.org"), containsString("My PKCS12 Certificate"));
+    }
+
+    @Test
+    public void keystoreFilesCanBeReloadedWhenTheyChange() throws Exception {
+        File keystoreFile = File.createTempFile("mu-reload", ".p12");
+        keystoreFile.deleteOnExit();
+        try (InputStream original = HttpsTest.class.getResourceAsStream("/pkcs12-keystore.p12")) {
+            Files.copy(original, keystoreFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        server = ServerUtils.httpsServerForTest()
+            .withHttpsConfig(HttpsConfigBuilder.httpsConfig()
+                .withKeystoreType("PKCS12")
+                .withKeystorePassword("MY_PASSWORD")
+                .withKeyPassword("MY_PASSWORD")
+                .withKeystore(keystoreFile)
+                .withKeystoreReload(20, TimeUnit.MILLISECONDS))
+            .start();
+        assertThat(certNameForHost(null), containsString("My PKCS12 Certificate"));
+
+        Files.write(keystoreFile.toPath(), "not a keystore".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(200);
+        assertThat(certNameForHost(null), containsString("My PKCS12 Certificate"));
+
+        KeyStore localhost = KeyStore.getInstance("PKCS12");
+        try (InputStream in = HttpsTest.class.getResourceAsStream("/io/muserver/resources/localhost.p12")) {
+            localhost.load(in, "Very5ecure".toCharArray());
+        }
+        KeyStore renewed = KeyStore.getInstance("PKCS12");
+        renewed.load(null, null);
+        String alias = localhost.aliases().nextElement();
+        renewed.setKeyEntry(alias, localhost.getKey(alias, "Very5ecure".toCharArray()), "MY_PASSWORD".toCharArray(), localhost.getCertificateChain(alias));
+        try (OutputStream out = new FileOutputStream(keystoreFile)) {
+            renewed.store(out, "MY_PASSWORD".toCharArray());
+        }
+
+        String certName = null;
+        for (int i = 0; i < 100; i++) {
+            certName = certNameForHost(null);
+            if (certName.contains("Mu Server Test Cert")) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        assertThat(certName, containsString("Mu Server Test Cert"));
+    }
+
+    @Test
+    public void hostContextsAreBuiltOnceOnTheBackgroundExecutor() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        SslContext defaultContext = HttpsConfigBuilder.unsignedLocalhost().toNettySslContext(false);
+        Map<String, SSLContextBuilder> hostConfigs = Collections.singletonMap("*.example.org", HttpsConfigBuilder.unsignedLocalhost());
+        SniSslContextMapping mapping = new SniSslContextMapping(defaultContext, hostConfigs, 10, false, null, context -> {}, tasks::add);
+
+        Future<SslContext> unknown = mapping.map("example.com", ImmediateEventExecutor.INSTANCE.newPromise());
+        assertThat(unknown.getNow(), sameInstance(defaultContext));
+
+        Future<SslContext> first = mapping.map("www.example.org", ImmediateEventExecutor.INSTANCE.newPromise());
+        Future<SslContext> second = mapping.map("api.example.org", ImmediateEventExecutor.INSTANCE.newPromise());
+        assertThat(tasks, hasSize(1));
+        assertThat(first.isDone(), is(false));
+        assertThat(second.isDone(), is(false));
+
+        tasks.get(0).run();
+        assertThat(first.getNow(), allOf(notNullValue(), not(sameInstance(defaultContext))));
+        assertThat(second.getNow(), sameInstance(first.getNow()));
+
+        Future<SslContext> cached = mapping.map("WWW.EXAMPLE.ORG", ImmediateEventExecutor.INSTANCE.newPromise());
+        assertThat(cached.getNow(), sameInstance(first.getNow()));
+        assertThat(tasks, hasSize(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hostConfigWildcardsMustBeAtTheStart() {
+        HttpsConfigBuilder.unsignedLocalhost().withHostConfig("www.*.example.org", HttpsConfigBuilder.unsignedLocalhost());
+    }
+
+    private String certNameForHost(String sniHost) throws Exception {
+        SSLContext sslContext = sslContextForTesting(veryTrustingTrustManager());
+        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket("localhost", server.httpsUri().getPort())) {
+            SSLParameters params = socket.getSSLParameters();
+            params.setServerNames(sniHost == null ? Collections.emptyList() : Collections.singletonList(new SNIHostName(sniHost)));
+            socket.setSSLParameters(params);
+            socket.startHandshake();
+            return ((X509Certificate) socket.getSession().getPeerCertificates()[0]).getSubjectDN().getName();
+        }
+    }
+
     private static String certInformation(URI uri) throws Exception{
         SSLContext sslContext = sslContextForTesting(veryTrustingTrustManager());
         HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
@@ -0,0 +1,61 @@
+package io.muserver;
+
+import io.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class IdleTimeoutTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void activityDelaysTheActionUntilThereHasBeenAFullPeriodWithoutActivity() throws Exception {
+        AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+        CountDownLatch idle = new CountDownLatch(1);
+        AtomicLong idleAt = new AtomicLong();
+        IdleTimeout timeout = new IdleTimeout(timer, TimeUnit.MILLISECONDS.toNanos(200), lastActivity::get, t -> {
+            idleAt.set(System.nanoTime());
+            idle.countDown();
+        });
+        timeout.start();
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(100);
+            lastActivity.set(System.nanoTime());
+        }
+        long lastActive = lastActivity.get();
+        assertThat(idle.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(idleAt.get() - lastActive, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200)));
+    }
+
+    @Test
+    public void theActionCanStartTheTimeoutAgainUntilItIsCancelled() throws Exception {
+        AtomicInteger idleCount = new AtomicInteger();
+        CountDownLatch idledTwice = new CountDownLatch(2);
+        IdleTimeout timeout = new IdleTimeout(timer, TimeUnit.MILLISECONDS.toNanos(20), () -> 0L, t -> {
+            idleCount.incrementAndGet();
+            idledTwice.countDown();
+            t.start();
+        });
+        timeout.start();
+        assertThat(idledTwice.await(10, TimeUnit.SECONDS), is(true));
+        timeout.cancel();
+        assertThat(timeout.isCancelled(), is(true));
+        Thread.sleep(100);
+        int countAfterCancel = idleCount.get();
+        Thread.sleep(200);
+        assertThat(idleCount.get(), is(countAfterCancel));
+    }
+
+    @After
+    public void stopTimer() {
+        timer.stop();
+    }
+}
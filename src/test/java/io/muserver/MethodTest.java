@@ -0,0 +1,23 @@
+package io.muserver;
+
+import io.netty.util.AsciiString;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class MethodTest {
+
+    @Test
+    public void http2MethodNamesCanBeLookedUpWithoutConversion() {
+        for (Method method : Method.values()) {
+            assertThat(Method.fromHttp2(AsciiString.of(method.name())), is(method));
+            assertThat(Method.fromHttp2(method.name()), is(method));
+        }
+        assertThat(Method.fromHttp2(new AsciiString("get")), is(Method.GET));
+        assertThat(Method.fromHttp2(new AsciiString("PROPFIND")), is(nullValue()));
+        assertThat(Method.fromHttp2(null), is(nullValue()));
+    }
+
+}
@@ -0,0 +1,115 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2Headers;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class MuHttp2HeadersDecoderTest {
+
+    private final MuHttp2HeadersDecoder decoder = new MuHttp2HeadersDecoder(8192, true);
+
+    @Test
+    public void validRequestsAreDecoded() throws Http2Exception {
+        Http2Headers headers = decoder.decodeHeaders(3, headerBlock(":method", "GET", ":scheme", "https",
+            ":authority", "localhost", ":path", "/", "accept", "text/plain", "te", "trailers"));
+        assertThat(headers.method().toString(), equalTo("GET"));
+        assertThat(headers.path().toString(), equalTo("/"));
+        assertThat(headers.get("accept").toString(), equalTo("text/plain"));
+        assertThat(headers.get("te").toString(), equalTo("trailers"));
+    }
+
+    @Test
+    public void theProtocolPseudoHeaderIsOnlyAllowedIfEnabled() throws Http2Exception {
+        Http2Headers headers = decoder.decodeHeaders(3, webSocketConnect());
+        assertThat(headers.get(":protocol").toString(), equalTo("websocket"));
+
+        MuHttp2HeadersDecoder withoutWebSockets = new MuHttp2HeadersDecoder(8192, false);
+        assertStreamError(withoutWebSockets, webSocketConnect());
+    }
+
+    @Test
+    public void pseudoHeadersMustComeBeforeRegularHeaders() {
+        assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", "accept", "text/plain", ":path", "/"));
+    }
+
+    @Test
+    public void unknownAndResponsePseudoHeadersAreRejected() {
+        assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", ":unknown", "value"));
+        assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", ":status", "200"));
+    }
+
+    @Test
+    public void duplicatePseudoHeadersAreRejected() {
+        assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", ":path", "/other"));
+        assertStreamError(decoder, headerBlock(":method", "CONNECT", ":protocol", "websocket", ":protocol", "websocket",
+            ":scheme", "https", ":path", "/"));
+    }
+
+    @Test
+    public void connectionSpecificHeadersAreRejected() {
+        for (String name : new String[]{"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"}) {
+            assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", name, "something"));
+        }
+        assertStreamError(decoder, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", "te", "gzip"));
+    }
+
+    @Test
+    public void upperCaseHeaderNamesAreRejected() {
+        try {
+            decoder.decodeHeaders(3, headerBlock(":method", "GET", ":scheme", "https", ":path", "/", "Accept", "text/plain"));
+            fail("Should have thrown");
+        } catch (Http2Exception e) {
+            assertThat(e.error(), equalTo(Http2Error.PROTOCOL_ERROR));
+        }
+    }
+
+    @Test
+    public void theDecoderCanStillBeUsedAfterAStreamError() throws Http2Exception {
+        assertStreamError(decoder, headerBlock(":method", "GET", "accept", "text/plain", ":path", "/"));
+        Http2Headers headers = decoder.decodeHeaders(5, headerBlock(":method", "GET", ":scheme", "https", ":path", "/next"));
+        assertThat(headers.path().toString(), equalTo("/next"));
+    }
+
+    private static ByteBuf webSocketConnect() {
+        return headerBlock(":method", "CONNECT", ":protocol", "websocket", ":scheme", "https", ":path", "/",
+            ":authority", "localhost", "sec-websocket-version", "13");
+    }
+
+    private static void assertStreamError(MuHttp2HeadersDecoder decoder, ByteBuf headerBlock) {
+        try {
+            decoder.decodeHeaders(3, headerBlock);
+            fail("Should have thrown");
+        } catch (Http2Exception e) {
+            assertThat(e, instanceOf(Http2Exception.StreamException.class));
+            assertThat(((Http2Exception.StreamException) e).streamId(), is(3));
+            assertThat(e.error(), equalTo(Http2Error.PROTOCOL_ERROR));
+        }
+    }
+
+    /**
+     * Encodes headers, in the given order, as HPACK literals without indexing
+     */
+    static ByteBuf headerBlock(String... namesAndValues) {
+        ByteBuf block = Unpooled.buffer();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            block.writeByte(0);
+            writeString(block, namesAndValues[i]);
+            writeString(block, namesAndValues[i + 1]);
+        }
+        return block;
+    }
+
+    private static void writeString(ByteBuf block, String value) {
+        byte[] bytes = value.getBytes(US_ASCII);
+        block.writeByte(bytes.length); // short strings only, so the length fits in the 7 bit prefix
+        block.writeBytes(bytes);
+    }
+}
@@ -0,0 +1,55 @@
+package io.muserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class NettyRequestAdapterTest {
+
+    @Test
+    public void alreadyNormalisedUrisAreReturnedWithoutCopying() throws URISyntaxException {
+        for (String uri : new String[]{"/", "/a/b.txt", "/a/b/?x=1&y=%20z", "/a;b=c/d?x=/./../", "/a?", "/~user/file-name_1.js?a=b?c"}) {
+            assertThat(NettyRequestAdapter.normaliseRelativeUri(uri), sameInstance(uri));
+        }
+    }
+
+    @Test
+    public void normalisingGivesTheSameResultAsParsingAsAURI() throws URISyntaxException {
+        String[] uris = {"/", "/a//b", "/a/./b", "/a/b/..", "/a/../../b", "/.well-known/thing", "/a/.b", "/%7e", "/%7E?%2f",
+            "/a?x=/./", "/a/b?c#d", "/café", "http://example.org/a/../b?c=d", "/a b".replace(" ", "%20"), "/a?b=c?d", "*"};
+        for (String uri : uris) {
+            assertThat(uri, NettyRequestAdapter.normaliseRelativeUri(uri), equalTo(normaliseWithUri(uri)));
+        }
+    }
+
+    @Test
+    public void invalidUrisAreRejected() {
+        for (String uri : new String[]{"/a|b", "/a b", "/%zz", "/a?%2", "/a{b}"}) {
+            try {
+                NettyRequestAdapter.normaliseRelativeUri(uri);
+                Assert.fail(uri + " should not be valid");
+            } catch (URISyntaxException expected) {
+            }
+        }
+    }
+
+    private static String normaliseWithUri(String requestUri) throws URISyntaxException {
+        URI requestURI = new URI(requestUri).normalize();
+        String s = requestURI.getRawPath();
+        if (Mutils.nullOrEmpty(s)) {
+            s = "/";
+        }
+        String q = requestURI.getRawQuery();
+        if (q != null) {
+            s += "?" + q;
+        }
+        return s;
+    }
+
+}
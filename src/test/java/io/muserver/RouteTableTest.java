@@ -0,0 +1,159 @@
+package io.muserver;
+
+import io.muserver.rest.PathMatch;
+import io.muserver.rest.UriPattern;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.muserver.RouteTableBuilder.routeTable;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class RouteTableTest {
+    private MuServer server;
+
+    @Test
+    public void requestsAreRoutedByMethodAndPath() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routeTable()
+                .addRoute(Method.GET, "/users", (req, resp, pp) -> resp.write("list"))
+                .addRoute(Method.GET, "/users/{id}", (req, resp, pp) -> resp.write("get " + pp.get("id")))
+                .addRoute(Method.DELETE, "/users/{userId}", (req, resp, pp) -> resp.write("delete " + pp.get("userId")))
+                .addRoute(Method.GET, "/users/{id : [0-9]+}/orders/{orderId}", (req, resp, pp) -> resp.write(pp.get("id") + " " + pp.get("orderId")))
+                .addRoute(null, "/any", (req, resp, pp) -> resp.write("any " + req.method()))
+            )
+            .start();
+
+        assertThat(body(Method.GET, "/users"), equalTo("list"));
+        assertThat(body(Method.GET, "/users/"), equalTo("list"));
+        assertThat(body(Method.GET, "/users/hello%20world?a=b"), equalTo("get hello world"));
+        assertThat(body(Method.DELETE, "/users/123"), equalTo("delete 123"));
+        assertThat(body(Method.GET, "/users/123/orders/abc"), equalTo("123 abc"));
+        assertThat(body(Method.OPTIONS, "/any"), equalTo("any OPTIONS"));
+        assertThat(status(Method.GET, "/users/abc/orders/abc"), is(404));
+        assertThat(status(Method.GET, "/users/123/orders"), is(404));
+        assertThat(status(Method.DELETE, "/users"), is(404));
+    }
+
+    @Test
+    public void literalSegmentsArePreferredOverParameters() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routeTable()
+                .addRoute(Method.GET, "/users/{id}/profile", (req, resp, pp) -> resp.write("profile of " + pp.get("id")))
+                .addRoute(Method.GET, "/users/{id}", (req, resp, pp) -> resp.write("user " + pp.get("id")))
+                .addRoute(Method.GET, "/users/me", (req, resp, pp) -> resp.write("me"))
+                .addRoute(Method.GET, "/users/me/settings", (req, resp, pp) -> resp.write("my settings"))
+            )
+            .start();
+        assertThat(body(Method.GET, "/users/me"), equalTo("me"));
+        assertThat(body(Method.GET, "/users/you"), equalTo("user you"));
+        assertThat(body(Method.GET, "/users/me/settings"), equalTo("my settings"));
+        // the literal "me" leads nowhere, so the parameter is tried instead
+        assertThat(body(Method.GET, "/users/me/profile"), equalTo("profile of me"));
+    }
+
+    @Test
+    public void templatesThatAreNotWholeSegmentsUseRegexes() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routeTable()
+                .addRoute(Method.GET, "/files/{name}.txt", (req, resp, pp) -> resp.write("text " + pp.get("name")))
+                .addRoute(Method.GET, "/files/{path : .+}", (req, resp, pp) -> resp.write("file " + pp.get("path")))
+                .addRoute(Method.GET, "/files/latest", (req, resp, pp) -> resp.write("latest"))
+            )
+            .start();
+        assertThat(body(Method.GET, "/files/latest"), equalTo("latest"));
+        assertThat(body(Method.GET, "/files/readme.txt"), equalTo("text readme"));
+        assertThat(body(Method.GET, "/files/a/b/c.png"), equalTo("file a/b/c.png"));
+    }
+
+    @Test
+    public void methodNotAllowedResponsesCanBeSent() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routeTable()
+                .withMethodNotAllowedResponses(true)
+                .addRoute(Method.GET, "/things/{id}", (req, resp, pp) -> resp.write("get"))
+                .addRoute(Method.PUT, "/things/{id}", (req, resp, pp) -> resp.write("put"))
+            )
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/things/1")).delete())) {
+            assertThat(resp.code(), is(405));
+            assertThat(resp.header("Allow"), equalTo("GET, PUT"));
+        }
+        assertThat(status(Method.DELETE, "/nothing"), is(404));
+    }
+
+    @Test
+    public void requestsForOtherMethodsArePassedToTheNextHandlerByDefault() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routeTable()
+                .addRoute(Method.GET, "/things/{id}", (req, resp, pp) -> resp.write("get"))
+            )
+            .addHandler(Method.DELETE, "/things/{id}", (req, resp, pp) -> resp.write("next handler"))
+            .start();
+        assertThat(body(Method.DELETE, "/things/1"), equalTo("next handler"));
+        RouteTable table = routeTable().addRoute(Method.GET, "/things/{id}", (req, resp, pp) -> {}).build();
+        assertThat(table.lookup(Method.DELETE, "/things/1").allowedMethods, contains(Method.GET));
+    }
+
+    @Test
+    public void matchesTheSameRoutesAsRegexes() {
+        String[] templates = {"/", "/blah", "/blah ha/{name}/ha", "/blah/{id : [0-9]+}/ha", "/a/{b}/{c}", "/a/{b : \\d+}",
+            "/x/{y : [a-z]*}/z", "a//b", "/plus+sign/{p}"};
+        String[] paths = {"", "/", "//", "/blah", "/blah/", "/blah//", "/blah/more", "/blah%20ha/x%20y/ha", "/blah ha/x/ha",
+            "/blah/123/ha", "/blah/12a/ha", "/blah/123/ha/", "/a/b/c", "/a/1", "/a/1/", "/a//c", "/x//z", "/x/abc/z",
+            "/x/ABC/z", "/a//b", "/plus%2Bsign/1", "/plus+sign/1"};
+        for (String template : templates) {
+            RouteTable table = routeTable().addRoute(Method.GET, template, (req, resp, pp) -> {}).build();
+            UriPattern pattern = UriPattern.uriTemplateToRegex(template);
+            for (String path : paths) {
+                PathMatch expected = pattern.matcher(path);
+                RouteTable.Lookup actual = table.lookup(Method.GET, path);
+                String desc = template + " matching " + path;
+                assertThat(desc, actual.route != null, is(expected.fullyMatches()));
+                if (actual.route != null) {
+                    assertThat(desc, actual.pathParams, equalTo(expected.params()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void allowedMethodsIncludeRegexRoutes() {
+        RouteTable table = routeTable()
+            .addRoute(Method.GET, "/files/{name}.txt", (req, resp, pp) -> {})
+            .addRoute(Method.PUT, "/files/{name}", (req, resp, pp) -> {})
+            .build();
+        RouteTable.Lookup lookup = table.lookup(Method.DELETE, "/files/a.txt");
+        assertThat(lookup.route, is(nullValue()));
+        assertThat(lookup.allowedMethods, containsInAnyOrder(Method.GET, Method.PUT));
+        Map<String, String> expected = new HashMap<>(Collections.singletonMap("name", "a"));
+        assertThat(table.lookup(Method.GET, "/files/a.txt").pathParams, equalTo(expected));
+    }
+
+    private int status(Method method, String path) {
+        try (Response resp = call(request().method(method.name(), null).url(server.uri().resolve(path).toString()))) {
+            return resp.code();
+        }
+    }
+
+    private String body(Method method, String path) throws IOException {
+        try (Response resp = call(request().method(method.name(), null).url(server.uri().resolve(path).toString()))) {
+            assertThat(resp.code(), is(200));
+            return resp.body().string();
+        }
+    }
+
+    @After
+    public void destroy() {
+        scaffolding.MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,93 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.ClientUtils.*;
+
+public class ServerPushTest {
+
+    private MuServer server;
+
+    @Test
+    public void pushedResourcesAreHandledByTheHandlerChainOnHttp2() throws Exception {
+        CompletableFuture<Boolean> pushResult = new CompletableFuture<>();
+        CompletableFuture<String> pushedRequest = new CompletableFuture<>();
+        CountDownLatch pushedLatch = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/page", (request, response, pathParams) -> {
+                pushResult.complete(response.push("/style.css?v=1"));
+                response.write("the page");
+            })
+            .addHandler(Method.GET, "/style.css", (request, response, pathParams) -> {
+                pushedRequest.complete(request.method() + " " + request.uri().getRawPath() + "?" + request.uri().getRawQuery()
+                    + " " + request.headers().get("user-agent"));
+                pushedLatch.countDown();
+                response.contentType("text/css");
+                response.write("body { color: red; }");
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/page")).header("User-Agent", "pushy"))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), equalTo("the page"));
+            if (isHttp2(resp)) {
+                assertThat(pushResult.get(10, TimeUnit.SECONDS), is(true));
+                MuAssert.assertNotTimedOut("pushed", pushedLatch);
+                assertThat(pushedRequest.get(), equalTo("GET /style.css?v=1 pushy"));
+            } else {
+                assertThat(pushResult.get(10, TimeUnit.SECONDS), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void pushIsNotSupportedOnHttp1() throws Exception {
+        CompletableFuture<Boolean> pushResult = new CompletableFuture<>();
+        server = MuServerBuilder.httpServer()
+            .addHandler(Method.GET, "/page", (request, response, pathParams) -> {
+                pushResult.complete(response.push("/style.css"));
+                response.write("the page");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/page")))) {
+            assertThat(resp.body().string(), equalTo("the page"));
+        }
+        assertThat(pushResult.get(10, TimeUnit.SECONDS), is(false));
+    }
+
+    @Test
+    public void relativePathsCannotBePushed() throws Exception {
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/page", (request, response, pathParams) -> {
+                try {
+                    response.push("style.css");
+                } catch (IllegalArgumentException e) {
+                    error.complete(e);
+                }
+                response.write("the page");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/page")))) {
+            assertThat(resp.code(), is(200));
+        }
+        assertThat(error.get(10, TimeUnit.SECONDS).getMessage(), equalTo("Pushed paths must be absolute paths starting with '/' but got style.css"));
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+}
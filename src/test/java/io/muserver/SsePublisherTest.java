@@ -1,5 +1,6 @@
 package io.muserver;
 
+import okhttp3.Response;
 import org.junit.After;
 import org.junit.Test;
 import scaffolding.*;
@@ -14,6 +15,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
 
 public class SsePublisherTest {
@@ -131,6 +133,33 @@ public class SsePublisherTest {
     }
 
 
+    @Test
+    public void missedEventsAreReplayedFromTheBufferWhenClientsReconnect() throws Exception {
+        SseReplayBuffer buffer = SseReplayBufferBuilder.sseReplayBuffer().withMaxEvents(3).build();
+        for (int i = 1; i <= 5; i++) {
+            buffer.record("Message " + i, null, String.valueOf(i));
+        }
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/streamer", (request, response, pathParams) -> {
+                SsePublisher ssePublisher = SsePublisher.start(request, response, buffer);
+                ssePublisher.send("Message 5", null, "5");
+                ssePublisher.send("Message 6", null, "6");
+                ssePublisher.close();
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/streamer")).header("Last-Event-ID", "3"))) {
+            assertThat(resp.body().string(), equalTo("id: 4\ndata: Message 4\n\nid: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/streamer")))) {
+            assertThat(resp.body().string(), equalTo("id: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/streamer")).header("Last-Event-ID", "1"))) {
+            assertThat(resp.body().string(), equalTo("id: 4\ndata: Message 4\n\nid: 5\ndata: Message 5\n\nid: 6\ndata: Message 6\n\n"));
+        }
+        assertThat(buffer.size(), is(3));
+    }
+
     @After
     public void destroy() {
         scaffolding.MuAssert.stopAndCheck(server);
@@ -0,0 +1,184 @@
+package io.muserver;
+
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.StringUtils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.WebSocketHandlerBuilder.webSocketHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class WebSocketBackpressureTest {
+
+    private static final int MAX_QUEUED = 200000;
+    private static final int MESSAGE_SIZE = 10000;
+
+    private MuServer server;
+    private final CompletableFuture<MuWebSocketSession> sessionFuture = new CompletableFuture<>();
+    private final List<Boolean> writabilityChanges = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void oldestMessagesCanBeDroppedWhenTheQueueIsFull() throws Exception {
+        try (Socket ignored = connectClientThatNeverReads(WebSocketQueueFullAction.DROP_OLDEST)) {
+            MuWebSocketSession session = sessionFuture.get(10, TimeUnit.SECONDS);
+            AtomicInteger failures = new AtomicInteger();
+            ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(MESSAGE_SIZE));
+            for (int i = 0; i < 200; i++) {
+                session.sendBinary(message.duplicate(), error -> {
+                    if (error != null) {
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+            assertThat(session.droppedMessages(), greaterThan(0L));
+            assertThat((long) failures.get(), equalTo(session.droppedMessages()));
+            // in-flight messages cannot be dropped, so the queue can go over by the size of the new message
+            assertThat(session.queuedBytes(), lessThanOrEqualTo((long) MAX_QUEUED + MESSAGE_SIZE));
+        }
+    }
+
+    @Test
+    public void callbacksAreNotCalledWhileTheQueueIsLocked() throws Exception {
+        try (Socket ignored = connectClientThatNeverReads(WebSocketQueueFullAction.DROP_OLDEST)) {
+            MuWebSocketSession session = sessionFuture.get(10, TimeUnit.SECONDS);
+            ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(MESSAGE_SIZE));
+            CompletableFuture<Boolean> otherThreadSent = new CompletableFuture<>();
+            for (int i = 0; i < 200 && !otherThreadSent.isDone(); i++) {
+                session.sendBinary(message.duplicate(), error -> {
+                    if (error != null && !otherThreadSent.isDone()) {
+                        // sending from another thread would deadlock if this callback held the session's lock
+                        CountDownLatch sentLatch = new CountDownLatch(1);
+                        new Thread(() -> {
+                            session.sendText("From another thread", DoneCallback.NoOp);
+                            sentLatch.countDown();
+                        }).start();
+                        otherThreadSent.complete(sentLatch.await(5, TimeUnit.SECONDS));
+                    }
+                });
+            }
+            assertThat(otherThreadSent.get(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    public void sessionsCanBeClosedWhenTheQueueIsFull() throws Exception {
+        try (Socket ignored = connectClientThatNeverReads(WebSocketQueueFullAction.CLOSE)) {
+            MuWebSocketSession session = sessionFuture.get(10, TimeUnit.SECONDS);
+            ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(MESSAGE_SIZE));
+            CompletableFuture<Throwable> firstFailure = new CompletableFuture<>();
+            for (int i = 0; i < 200 && !firstFailure.isDone(); i++) {
+                session.sendBinary(message.duplicate(), error -> {
+                    if (error != null) {
+                        firstFailure.complete(error);
+                    }
+                });
+            }
+            Throwable error = firstFailure.get(10, TimeUnit.SECONDS);
+            assertThat(error, instanceOf(MuException.class));
+            assertThat(error.getMessage(), containsString("queue"));
+
+            CompletableFuture<Throwable> afterClose = new CompletableFuture<>();
+            session.sendText("Too late", afterClose::complete);
+            assertThat(afterClose.get(10, TimeUnit.SECONDS), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    public void sendingThreadsCanBeBlockedUntilThereIsSpaceInTheQueue() throws Exception {
+        try (Socket socket = connectClientThatNeverReads(WebSocketQueueFullAction.BLOCK)) {
+            MuWebSocketSession session = sessionFuture.get(10, TimeUnit.SECONDS);
+            // enough to fill the socket buffers, so that messages start queuing
+            int messageCount = 2000;
+            CountDownLatch writtenLatch = new CountDownLatch(messageCount);
+            AtomicInteger sent = new AtomicInteger();
+            Thread sender = new Thread(() -> {
+                ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(MESSAGE_SIZE));
+                for (int i = 0; i < messageCount; i++) {
+                    session.sendBinary(message.duplicate(), error -> writtenLatch.countDown());
+                    sent.incrementAndGet();
+                }
+            });
+            sender.start();
+            Thread.sleep(500);
+            assertThat(sender.isAlive(), is(true));
+            assertThat(sent.get(), lessThan(messageCount));
+            assertThat(session.queuedBytes(), lessThanOrEqualTo((long) MAX_QUEUED + MESSAGE_SIZE));
+            assertThat(session.isWritable(), is(false));
+
+            // start reading, which should unblock the sender
+            InputStream in = socket.getInputStream();
+            Thread reader = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try {
+                    while (in.read(buffer) != -1) {
+                    }
+                } catch (Exception ignored) {
+                }
+            });
+            reader.start();
+            MuAssert.assertNotTimedOut("writing", writtenLatch);
+            sender.join(10000);
+            assertThat(sent.get(), is(messageCount));
+            assertThat(session.queuedBytes(), is(0L));
+            assertThat(session.isWritable(), is(true));
+            for (int i = 0; i < 100 && !writabilityChanges.get(writabilityChanges.size() - 1); i++) {
+                Thread.sleep(20);
+            }
+            assertThat(writabilityChanges.get(0), is(false));
+            assertThat(writabilityChanges.get(writabilityChanges.size() - 1), is(true));
+            for (int i = 1; i < writabilityChanges.size(); i++) {
+                assertThat("Changes alternate", writabilityChanges.get(i), not(writabilityChanges.get(i - 1)));
+            }
+        }
+    }
+
+    private Socket connectClientThatNeverReads(WebSocketQueueFullAction action) throws Exception {
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onConnect(MuWebSocketSession session) throws Exception {
+                    super.onConnect(session);
+                    sessionFuture.complete(session);
+                }
+
+                @Override
+                public void onWritabilityChanged(boolean isWritable) {
+                    writabilityChanges.add(isWritable);
+                }
+            }).withMaxQueuedBytes(MAX_QUEUED).withQueueFullAction(action))
+            .start();
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(1024);
+        socket.connect(new InetSocketAddress(server.uri().getHost(), server.uri().getPort()));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET / HTTP/1.1\r\n" +
+            "host: " + server.uri().getAuthority() + "\r\n" +
+            "connection: upgrade\r\n" +
+            "upgrade: websocket\r\n" +
+            "sec-websocket-key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+            "sec-websocket-version: 13\r\n\r\n").getBytes(UTF_8));
+        out.flush();
+        return socket;
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+}
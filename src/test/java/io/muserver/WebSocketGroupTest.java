@@ -0,0 +1,208 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket08FrameEncoder;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+import scaffolding.StringUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.WebSocketGroupBuilder.webSocketGroup;
+import static io.muserver.WebSocketHandlerBuilder.webSocketHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.client;
+
+public class WebSocketGroupTest {
+
+    private MuServer server;
+
+    @Test
+    public void sharedFramesAreTheSameAsNettyEncodedFrames() {
+        for (int length : new int[]{0, 1, 125, 126, 65535, 65536, 100000}) {
+            byte[] payload = StringUtils.randomBytes(length);
+            EmbeddedChannel channel = new EmbeddedChannel(new WebSocket08FrameEncoder(false));
+            channel.writeOutbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(payload)));
+            ByteBuf expected = Unpooled.buffer();
+            ByteBuf part;
+            while ((part = channel.readOutbound()) != null) {
+                expected.writeBytes(part);
+                part.release();
+            }
+            ByteBuf actual = MuWebSocketSessionImpl.encodeFrame(MuWebSocketSessionImpl.OPCODE_BINARY, Unpooled.wrappedBuffer(payload));
+            assertThat("Length " + length, ByteBufUtil.equals(actual, expected), is(true));
+            actual.release();
+            expected.release();
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void messagesAreSentToAllMembersAndClosedSessionsAreRemoved() throws Exception {
+        WebSocketGroup group = webSocketGroup().build();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onConnect(MuWebSocketSession session) throws Exception {
+                    super.onConnect(session);
+                    group.add(session);
+                }
+            }))
+            .start();
+
+        List<ClientListener> listeners = new ArrayList<>();
+        List<WebSocket> clients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ClientListener listener = new ClientListener(2);
+            listeners.add(listener);
+            clients.add(client.newWebSocket(new okhttp3.Request.Builder().url(toWs(server)).build(), listener));
+            MuAssert.assertNotTimedOut("Connecting", listener.connectedLatch);
+        }
+        assertEventually(group, 3);
+
+        String large = StringUtils.randomAsciiStringOfLength(10000);
+        assertThat(group.sendText(large), is(3));
+        assertThat(group.sendBinary(ByteBuffer.wrap("Hello binary".getBytes(UTF_8))), is(3));
+        for (ClientListener listener : listeners) {
+            MuAssert.assertNotTimedOut("Messages", listener.messageLatch);
+            assertThat(listener.received, contains("text: " + large, "binary: Hello binary"));
+        }
+
+        clients.get(0).close(1000, "Bye");
+        MuAssert.assertNotTimedOut("Closing", listeners.get(0).closedLatch);
+        assertEventually(group, 2);
+
+        assertThat(group.remove(group.members().iterator().next()), is(true));
+        assertThat(group.size(), is(1));
+        assertThat(group.sendText("Last"), is(1));
+        for (WebSocket webSocket : clients) {
+            webSocket.cancel();
+        }
+    }
+
+    @Test
+    public void slowMembersCanBeDisconnected() throws Exception {
+        WebSocketGroup group = webSocketGroup().withSlowMemberAction(SlowWebSocketAction.DISCONNECT).build();
+        try (Socket ignored = connectClientThatNeverReads(group)) {
+            ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(65536));
+            for (int i = 0; i < 2000 && group.disconnectedMembers() == 0; i++) {
+                group.sendBinary(message.duplicate());
+            }
+            assertThat(group.disconnectedMembers(), is(1L));
+            assertThat(group.size(), is(0));
+        }
+    }
+
+    @Test
+    public void messagesToSlowMembersAreDroppedByDefault() throws Exception {
+        WebSocketGroup group = webSocketGroup().build();
+        try (Socket ignored = connectClientThatNeverReads(group)) {
+            ByteBuffer message = ByteBuffer.wrap(StringUtils.randomBytes(65536));
+            for (int i = 0; i < 2000 && group.droppedMessages() == 0; i++) {
+                group.sendBinary(message.duplicate());
+            }
+            assertThat(group.droppedMessages(), is(1L));
+            assertThat(group.size(), is(1));
+        }
+    }
+
+    private Socket connectClientThatNeverReads(WebSocketGroup group) throws Exception {
+        CountDownLatch connectedLatch = new CountDownLatch(1);
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onConnect(MuWebSocketSession session) throws Exception {
+                    super.onConnect(session);
+                    group.add(session);
+                    connectedLatch.countDown();
+                }
+            }))
+            .start();
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(1024);
+        socket.connect(new InetSocketAddress(server.uri().getHost(), server.uri().getPort()));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET / HTTP/1.1\r\n" +
+            "host: " + server.uri().getAuthority() + "\r\n" +
+            "connection: upgrade\r\n" +
+            "upgrade: websocket\r\n" +
+            "sec-websocket-key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+            "sec-websocket-version: 13\r\n\r\n").getBytes(UTF_8));
+        out.flush();
+        MuAssert.assertNotTimedOut("Connecting", connectedLatch);
+        return socket;
+    }
+
+    private static void assertEventually(WebSocketGroup group, int expectedSize) throws InterruptedException {
+        for (int i = 0; i < 100 && group.size() != expectedSize; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(group.size(), is(expectedSize));
+    }
+
+    private static String toWs(MuServer server) {
+        return "ws" + server.uri().toString().substring(4);
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+    private static class ClientListener extends WebSocketListener {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch connectedLatch = new CountDownLatch(1);
+        final CountDownLatch closedLatch = new CountDownLatch(1);
+        final CountDownLatch messageLatch;
+
+        ClientListener(int expectedMessages) {
+            this.messageLatch = new CountDownLatch(expectedMessages);
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, okhttp3.Response response) {
+            connectedLatch.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            received.add("text: " + text);
+            messageLatch.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            received.add("binary: " + bytes.string(UTF_8));
+            messageLatch.countDown();
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(code, reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            closedLatch.countDown();
+        }
+    }
+}
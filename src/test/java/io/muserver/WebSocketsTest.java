@@ -14,12 +14,20 @@ import scaffolding.ServerUtils;
 import scaffolding.StringUtils;
 
 import javax.ws.rs.ClientErrorException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ProtocolException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static io.muserver.MuServerBuilder.httpServer;
 import static io.muserver.WebSocketHandlerBuilder.webSocketHandler;
@@ -311,6 +319,26 @@ public class WebSocketsTest {
         client.newWebSocket(webSocketRequest(server.uri().resolve("/routed-websocket")), new ClientListener());
         MuAssert.assertNotTimedOut("onError", serverSocket.errorLatch);
         assertThat(serverSocket.received, contains("connected", "onError TimeoutException"));
+        assertThat(server.stats().webSocketIdleTimeouts(), greaterThan(0L));
+    }
+
+    @Test
+    public void receivingMessagesStopsTheIdleTimeout() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(webSocketHandler((request, responseHeaders) -> serverSocket)
+                .withIdleReadTimeout(200, TimeUnit.MILLISECONDS)
+            )
+            .start();
+        WebSocket clientSocket = client.newWebSocket(webSocketRequest(server.uri()), new ClientListener());
+        MuAssert.assertNotTimedOut("Connecting", serverSocket.connectedLatch);
+        for (int i = 0; i < 10; i++) {
+            clientSocket.send("Message " + i);
+            Thread.sleep(50);
+        }
+        assertThat(serverSocket.errorLatch.getCount(), is(1L));
+        assertThat(server.stats().webSocketIdleTimeouts(), is(0L));
+        assertThat(server.stats().webSocketLivenessChecks(), greaterThan(0L));
+        clientSocket.close(1000, "Done");
     }
 
     @Test
@@ -347,6 +375,303 @@ public class WebSocketsTest {
         serverSocket.session.close(1000, "Done");
         MuAssert.assertNotTimedOut("Closing", listener.closedLatch);
         assertThat(serverSocket.received, hasItem("onPong: mu"));
+        assertThat(server.stats().webSocketPingsSent(), greaterThan(0L));
+    }
+
+    @Test(timeout = 30000)
+    public void messagesCanBeCompressedWithPerMessageDeflate() throws Exception {
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> serverSocket)
+                .withPath("/ws")
+                .withPerMessageDeflate(true)
+                .withMinimumCompressionSize(100))
+            .start();
+        RawClient rawClient = upgradeWithRawClient("permessage-deflate; client_max_window_bits");
+        String header = rawClient.responseString();
+        assertThat(header, containsString("sec-websocket-extensions: permessage-deflate"));
+
+        String large = String.join("", Collections.nCopies(50, "{\"name\":\"value\"},"));
+        rawClient.send(clientFrame(1, true, deflate(large.getBytes(UTF_8))))
+            .send(clientFrame(1, false, "small".getBytes(UTF_8)))
+            .flushRequest();
+
+        int headerLength = header.indexOf("\r\n\r\n") + 4;
+        List<byte[]> frames;
+        while ((frames = serverFrames(rawClient.asBytes(), headerLength)).size() < 2) {
+            Thread.sleep(10);
+        }
+        assertThat(serverSocket.received, contains("connected", "onText: " + large, "onText: small"));
+
+        byte[] first = frames.get(0);
+        assertThat("RSV1 bit indicating compression", first[0] & 0x40, is(0x40));
+        byte[] compressed = payload(first);
+        assertThat(compressed.length, lessThan(large.length() / 4));
+        assertThat(new String(inflate(compressed), UTF_8), equalTo(large.toUpperCase()));
+
+        byte[] second = frames.get(1);
+        assertThat("RSV1 bit indicating compression", second[0] & 0x40, is(0));
+        assertThat(new String(payload(second), UTF_8), equalTo("SMALL"));
+        rawClient.close();
+    }
+
+    @Test(timeout = 30000)
+    public void perMessageDeflateIsNotNegotiatedUnlessEnabled() throws Exception {
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> serverSocket).withPath("/ws"))
+            .start();
+        RawClient rawClient = upgradeWithRawClient("permessage-deflate; client_max_window_bits");
+        assertThat(rawClient.responseString().toLowerCase(), not(containsString("sec-websocket-extensions")));
+        rawClient.close();
+    }
+
+    @Test(timeout = 30000)
+    public void fragmentedMessagesAreJoinedByDefault() throws Exception {
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> serverSocket).withPath("/ws"))
+            .start();
+        RawClient rawClient = upgradeWithRawClient(null);
+        rawClient.send(clientFrame(false, 1, false, "Hello ".getBytes(UTF_8)))
+            .send(clientFrame(false, 0, false, "fragmented ".getBytes(UTF_8)))
+            .send(clientFrame(true, 0, false, "world".getBytes(UTF_8)))
+            .send(clientFrame(false, 2, false, "Binary ".getBytes(UTF_8)))
+            .send(clientFrame(true, 0, false, "message".getBytes(UTF_8)))
+            .flushRequest();
+        while (serverSocket.received.size() < 3) {
+            Thread.sleep(10);
+        }
+        assertThat(serverSocket.received, contains("connected", "onText: Hello fragmented world", "onBinary: Binary message"));
+        rawClient.close();
+    }
+
+    @Test(timeout = 30000)
+    public void fragmentedMessagesLongerThanTheMaxMessageLengthCloseTheConnection() throws Exception {
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> serverSocket).withPath("/ws").withMaxMessageLength(1024))
+            .start();
+        RawClient rawClient = upgradeWithRawClient(null);
+        int headerLength = rawClient.responseString().indexOf("\r\n\r\n") + 4;
+        rawClient.send(clientFrame(false, 2, false, new byte[1000]))
+            .send(clientFrame(true, 0, false, new byte[1000]))
+            .flushRequest();
+        List<byte[]> frames;
+        while ((frames = serverFrames(rawClient.asBytes(), headerLength)).isEmpty()) {
+            Thread.sleep(10);
+        }
+        byte[] closeFrame = frames.get(0);
+        assertThat(closeFrame[0] & 0x0f, is(8));
+        assertThat(((closeFrame[2] & 0xff) << 8) | (closeFrame[3] & 0xff), is(1009));
+        MuAssert.assertNotTimedOut("error", serverSocket.errorLatch);
+        assertThat(serverSocket.received, contains("connected", "onError WebSocketProtocolException"));
+        rawClient.close();
+    }
+
+    @Test(timeout = 30000)
+    public void partialMessagesCanBeReceivedAsTheyArrive() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch lastLatch = new CountDownLatch(2);
+        server = httpServer()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onText(String message, DoneCallback onComplete) throws Exception {
+                    received.add("text: " + message);
+                    onComplete.onComplete(null);
+                }
+
+                @Override
+                public void onPartialText(String message, boolean isLast, DoneCallback onComplete) throws Exception {
+                    received.add("partial text: " + message + " " + isLast);
+                    onComplete.onComplete(null);
+                    if (isLast) {
+                        lastLatch.countDown();
+                    }
+                }
+
+                @Override
+                public void onPartialBinary(ByteBuffer buffer, boolean isLast, DoneCallback onComplete) throws Exception {
+                    received.add("partial binary: " + UTF_8.decode(buffer) + " " + isLast);
+                    onComplete.onComplete(null);
+                    if (isLast) {
+                        lastLatch.countDown();
+                    }
+                }
+            }).withPath("/ws").withPartialMessages(true))
+            .start();
+        RawClient rawClient = upgradeWithRawClient(null);
+        byte[] euro = "\u20ac".getBytes(UTF_8);
+        rawClient.send(clientFrame(false, 1, false, new byte[]{'a', euro[0]}))
+            .send(clientFrame(false, 0, false, new byte[]{euro[1], euro[2], 'b'}))
+            .send(clientFrame(true, 0, false, "c".getBytes(UTF_8)))
+            .send(clientFrame(true, 1, false, "whole".getBytes(UTF_8)))
+            .send(clientFrame(false, 2, false, "Binary ".getBytes(UTF_8)))
+            .send(clientFrame(true, 0, false, "message".getBytes(UTF_8)))
+            .flushRequest();
+        MuAssert.assertNotTimedOut("fragments", lastLatch);
+        assertThat(received, contains("partial text: a false", "partial text: \u20acb false", "partial text: c true",
+            "text: whole", "partial binary: Binary  false", "partial binary: message true"));
+        rawClient.close();
+    }
+
+    @Test
+    public void messagesCanBeSentAsFragments() throws Exception {
+        CompletableFuture<Throwable> interleavedResult = new CompletableFuture<>();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onConnect(MuWebSocketSession session) throws Exception {
+                    super.onConnect(session);
+                    session.sendText("Hello ", false, DoneCallback.NoOp);
+                    session.sendText("Not allowed", interleavedResult::complete);
+                    session.sendPing(ByteBuffer.wrap("ping".getBytes(UTF_8)), DoneCallback.NoOp);
+                    session.sendText("fragmented ", false, DoneCallback.NoOp);
+                    session.sendText("world", true, DoneCallback.NoOp);
+                    session.sendBinary(ByteBuffer.wrap("Bin".getBytes(UTF_8)), false, DoneCallback.NoOp);
+                    session.sendBinary(ByteBuffer.wrap("ary".getBytes(UTF_8)), true, DoneCallback.NoOp);
+                    session.sendText("Whole", DoneCallback.NoOp);
+                }
+            }))
+            .start();
+        ClientListener listener = new ClientListener(3);
+        client.newWebSocket(webSocketRequest(server.uri()), listener);
+        MuAssert.assertNotTimedOut("messages", listener.messageLatch);
+        assertThat(listener.events, contains("onOpen", "onMessage text: Hello fragmented world",
+            "onMessage binary: Binary", "onMessage text: Whole"));
+        assertThat(interleavedResult.get(10, TimeUnit.SECONDS), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void fragmentedMessagesFromDifferentThreadsAreNotInterleaved() throws Exception {
+        int messagesPerThread = 200;
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(webSocketHandler((request, responseHeaders) -> new BaseWebSocket() {
+                @Override
+                public void onConnect(MuWebSocketSession session) throws Exception {
+                    super.onConnect(session);
+                    for (boolean isText : new boolean[]{true, false}) {
+                        new Thread(() -> {
+                            for (int i = 0; i < messagesPerThread; i++) {
+                                // the first fragment is rejected, before the send method returns, while the other
+                                // thread is part way through a message
+                                AtomicBoolean rejected = new AtomicBoolean(true);
+                                while (rejected.getAndSet(false)) {
+                                    sendFragment(session, isText, "a", false, error -> {
+                                        if (error instanceof IllegalStateException) {
+                                            rejected.set(true);
+                                        }
+                                    });
+                                }
+                                sendFragment(session, isText, "b", false, DoneCallback.NoOp);
+                                sendFragment(session, isText, "c", true, DoneCallback.NoOp);
+                            }
+                        }).start();
+                    }
+                }
+            }))
+            .start();
+        ClientListener listener = new ClientListener(messagesPerThread * 2);
+        client.newWebSocket(webSocketRequest(server.uri()), listener);
+        MuAssert.assertNotTimedOut("messages", listener.messageLatch);
+        List<String> messages = listener.events.subList(1, listener.events.size());
+        assertThat(messages, everyItem(anyOf(equalTo("onMessage text: abc"), equalTo("onMessage binary: abc"))));
+    }
+
+    private static void sendFragment(MuWebSocketSession session, boolean isText, String fragment, boolean isLast, DoneCallback callback) {
+        if (isText) {
+            session.sendText(fragment, isLast, callback);
+        } else {
+            session.sendBinary(ByteBuffer.wrap(fragment.getBytes(UTF_8)), isLast, callback);
+        }
+    }
+
+    private RawClient upgradeWithRawClient(String extensions) throws Exception {
+        RawClient rawClient = RawClient.create(server.uri())
+            .sendStartLine("GET", "ws" + server.uri().resolve("/ws").toString().substring(4))
+            .sendHeader("host", server.uri().getAuthority())
+            .sendHeader("connection", "upgrade")
+            .sendHeader("Sec-WebSocket-Key", "dGhlIHNhbXBsZSBub25jZQ==")
+            .sendHeader("Sec-WebSocket-Version", "13")
+            .sendHeader("Upgrade", "websocket");
+        if (extensions != null) {
+            rawClient.sendHeader("Sec-WebSocket-Extensions", extensions);
+        }
+        rawClient.endHeaders().flushRequest();
+        while (!rawClient.responseString().contains("\r\n\r\n")) {
+            Thread.sleep(10);
+        }
+        assertThat(rawClient.responseString(), startsWith("HTTP/1.1 101 Switching Protocols"));
+        return rawClient;
+    }
+
+    private static byte[] clientFrame(int opcode, boolean compressed, byte[] payload) {
+        return clientFrame(true, opcode, compressed, payload);
+    }
+
+    private static byte[] clientFrame(boolean fin, int opcode, boolean compressed, byte[] payload) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write((fin ? 0x80 : 0) | (compressed ? 0x40 : 0) | opcode);
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >> 8);
+            frame.write(payload.length & 0xff);
+        }
+        byte[] mask = {1, 2, 3, 4};
+        frame.write(mask, 0, 4);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ mask[i % 4]);
+        }
+        return frame.toByteArray();
+    }
+
+    private static List<byte[]> serverFrames(byte[] bytes, int offset) {
+        List<byte[]> frames = new ArrayList<>();
+        while (offset + 2 <= bytes.length) {
+            int length = bytes[offset + 1] & 0x7f;
+            int headerLength = 2;
+            if (length == 126) {
+                if (offset + 4 > bytes.length) {
+                    break;
+                }
+                length = ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+                headerLength = 4;
+            }
+            if (offset + headerLength + length > bytes.length) {
+                break;
+            }
+            frames.add(Arrays.copyOfRange(bytes, offset, offset + headerLength + length));
+            offset += headerLength + length;
+        }
+        return frames;
+    }
+
+    private static byte[] payload(byte[] serverFrame) {
+        return Arrays.copyOfRange(serverFrame, (serverFrame[1] & 0x7f) == 126 ? 4 : 2, serverFrame.length);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        // RFC 7692 section 7.2.1: remove the trailing 0x00 0x00 0xff 0xff of the sync flush
+        return Arrays.copyOf(buffer, length - 4);
+    }
+
+    private static byte[] inflate(byte[] compressed) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        byte[] input = Arrays.copyOf(compressed, compressed.length + 4);
+        input[input.length - 2] = (byte) 0xff;
+        input[input.length - 1] = (byte) 0xff;
+        inflater.setInput(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inflater.inflate(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        inflater.end();
+        return out.toByteArray();
     }
 
     private static Request webSocketRequest(URI httpVersionOfUri) {
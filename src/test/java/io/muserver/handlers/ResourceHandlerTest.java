@@ -16,8 +16,10 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static io.muserver.ContextHandlerBuilder.context;
 import static io.muserver.Mutils.urlDecode;
@@ -30,7 +32,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
+import static java.util.Arrays.asList;
 import static scaffolding.FileUtils.readResource;
+import static scaffolding.MuAssert.assertEventually;
 
 public class ResourceHandlerTest {
 
@@ -50,6 +54,27 @@ public class ResourceHandlerTest {
         assertNotFound("/bad-path");
     }
 
+    @Test
+    public void pagesInThePushManifestHaveTheirAssetsPushedOverHttp2() throws Exception {
+        List<String> requested = new CopyOnWriteArrayList<>();
+        Map<String, List<String>> manifest = new HashMap<>();
+        manifest.put("/index.html", asList("/sample.css", "/images/friends.jpg"));
+        server = ServerUtils.httpsServerForTest()
+            .addResponseCompleteListener(info -> requested.add(info.request().relativePath()))
+            .addHandler(fileHandler("src/test/resources/sample-static").withPushManifest(manifest))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/")))) {
+            assertThat(resp.code(), is(200));
+            resp.body().string();
+            if (ClientUtils.isHttp2(resp)) {
+                assertEventually(() -> requested, containsInAnyOrder("/", "/sample.css", "/images/friends.jpg"));
+            } else {
+                assertEventually(() -> requested, contains("/"));
+            }
+        }
+    }
+
     @Test
     public void headersCanBeCustomised() throws Exception {
         server = ServerUtils.httpsServerForTest()
@@ -0,0 +1,98 @@
+package io.muserver.rest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void entriesThatAreUsedBetweenEvictionsAreKept() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+        cache.put("hot", "hot value");
+        for (int i = 0; i < 10000; i++) {
+            cache.put("one-off " + i, "value " + i);
+            assertThat(cache.get("hot"), equalTo("hot value"));
+            assertThat(cache.size(), lessThanOrEqualTo(10));
+        }
+        assertThat(cache.size(), is(10));
+        assertThat(cache.get("one-off 9999"), equalTo("value 9999"));
+        assertThat(cache.get("one-off 0"), is(nullValue()));
+    }
+
+    @Test
+    public void unusedEntriesAreEvictedFirst() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(3);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(1);
+        cache.get(3);
+        cache.put(4, 4);
+        assertThat(cache.get(2), is(nullValue()));
+        assertThat(cache.get(1), is(1));
+        assertThat(cache.get(3), is(3));
+        assertThat(cache.get(4), is(4));
+    }
+
+    @Test
+    public void existingKeysAreReplacedWithoutEviction() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("a", "3");
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("a"), equalTo("3"));
+        assertThat(cache.get("b"), equalTo("2"));
+    }
+
+    @Test
+    public void theMaxSizeIsNeverExceededByConcurrentPuts() throws Exception {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(50);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Integer> maxSeen = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String prefix = "thread " + t + " key ";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int max = 0;
+                for (int i = 0; i < 5000; i++) {
+                    cache.put(prefix + i, i);
+                    cache.get(prefix + (i / 2));
+                    max = Math.max(max, cache.size());
+                }
+                synchronized (maxSeen) {
+                    maxSeen.add(max);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        assertThat(maxSeen, hasSize(8));
+        assertThat(maxSeen, everyItem(lessThanOrEqualTo(50)));
+        assertThat(cache.size(), is(50));
+    }
+
+    @Test
+    public void nothingIsCachedIfTheMaxSizeIsZero() {
+        BoundedCache<String, String> cache = new BoundedCache<>(0);
+        cache.put("a", "1");
+        assertThat(cache.get("a"), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+}
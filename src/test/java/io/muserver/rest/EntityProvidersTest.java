@@ -4,6 +4,7 @@ import io.muserver.MuServer;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import org.example.CountingWriters;
 import org.example.MyStringReaderWriter;
 import org.junit.After;
 import org.junit.Test;
@@ -23,12 +24,17 @@ import java.io.PrintStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 import static io.muserver.Mutils.NEWLINE;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN_TYPE;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static scaffolding.ClientUtils.call;
 import static scaffolding.StringUtils.randomStringOfLength;
 
@@ -142,6 +148,36 @@ public class EntityProvidersTest {
         }
     }
 
+    @Deprecated
+    private static class HasDeprecated {
+    }
+
+    @Test
+    public void writerSelectionIsCachedForAnnotationInsensitiveWriters() {
+        CountingWriters.AnnotationInsensitiveWriter writer = new CountingWriters.AnnotationInsensitiveWriter();
+        EntityProviders providers = new EntityProviders(EntityProviders.builtInReaders(), singletonList(writer));
+        for (int i = 0; i < 3; i++) {
+            assertThat(providers.selectWriter(String.class, String.class, new Annotation[0], TEXT_PLAIN_TYPE), sameInstance(writer));
+            assertThat(providers.selectWriter(String.class, String.class, HasDeprecated.class.getAnnotations(), TEXT_PLAIN_TYPE), sameInstance(writer));
+        }
+        assertThat(writer.isWriteableCalls.get(), equalTo(1));
+        assertThat(providers.selectWriter(String.class, String.class, new Annotation[0], TEXT_PLAIN_TYPE.withCharset("UTF-16")), sameInstance(writer));
+        assertThat(writer.isWriteableCalls.get(), equalTo(2));
+    }
+
+    @Test
+    public void writerSelectionIsCachedPerAnnotationsForAnnotationSensitiveWriters() {
+        CountingWriters.DeprecatedOnlyWriter custom = new CountingWriters.DeprecatedOnlyWriter();
+        List<MessageBodyWriter> writers = new ArrayList<>(EntityProviders.builtInWriters());
+        writers.add(custom);
+        EntityProviders providers = new EntityProviders(EntityProviders.builtInReaders(), writers);
+        for (int i = 0; i < 3; i++) {
+            assertThat(providers.selectWriter(String.class, String.class, new Annotation[0], TEXT_PLAIN_TYPE), not(sameInstance(custom)));
+            assertThat(providers.selectWriter(String.class, String.class, HasDeprecated.class.getAnnotations(), TEXT_PLAIN_TYPE), sameInstance(custom));
+        }
+        assertThat(custom.isWriteableCalls.get(), equalTo(2));
+    }
+
     private void stringCheck(String requestBodyType, String content, String expectedResponseType, String requestPath) throws IOException {
         try (Response resp = call(ClientUtils.request()
             .post(RequestBody.create(MediaType.parse(requestBodyType), content))
@@ -14,11 +14,15 @@ import java.util.stream.Collectors;
 import static io.muserver.rest.EntityProviders.builtInWriters;
 import static io.muserver.rest.MediaTypeDeterminer.determine;
 import static io.muserver.rest.ObjWithType.objType;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static javax.ws.rs.core.MediaType.WILDCARD_TYPE;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class MediaTypeDeterminerTest {
     static {
@@ -78,6 +82,35 @@ public class MediaTypeDeterminerTest {
         assertThat(mediaType.toString(), equalTo("application/octet-stream"));
     }
 
+    @Test
+    public void acceptHeadersAreParsedOnceForEachValue() {
+        List<MediaType> first = MediaTypeDeterminer.parseAcceptHeaders(singletonList("text/html,application/xhtml+xml;q=0.9"));
+        assertThat(first.stream().map(MediaType::toString).collect(Collectors.toList()),
+            contains("text/html", "application/xhtml+xml;q=0.9"));
+        assertThat(MediaTypeDeterminer.parseAcceptHeaders(singletonList("text/html,application/xhtml+xml;q=0.9")), sameInstance(first));
+        assertThat(MediaTypeDeterminer.parseAcceptHeaders(asList("text/html", "application/xhtml+xml;q=0.9")), sameInstance(first));
+        assertThat(MediaTypeDeterminer.parseAcceptHeaders(emptyList()), empty());
+    }
+
+    @Test
+    public void negotiatedMediaTypesAreCached() {
+        MediaTypeDeterminer.NegotiationCache cache = new MediaTypeDeterminer.NegotiationCache();
+        List<MediaType> accepts = MediaTypeDeterminer.parseAcceptHeaders(singletonList("application/x-www-form-urlencoded"));
+        List<ProviderWrapper<MessageBodyWriter<?>>> writers = wrapped(builtInWriters());
+        MediaType first = cache.determine(objType("Hello"), emptyList(), emptyList(), writers, accepts);
+        assertThat(first.toString(), equalTo("application/x-www-form-urlencoded"));
+        assertThat(cache.determine(objType("Goodbye"), emptyList(), emptyList(), writers, accepts), sameInstance(first));
+        assertThat(cache.size(), equalTo(1));
+
+        MediaType other = cache.determine(objType("Hello"), emptyList(), emptyList(), writers, emptyList());
+        assertThat(other.toString(), equalTo("text/plain;charset=utf-8"));
+        assertThat(cache.size(), equalTo(2));
+
+        Response response = Response.ok().type(MediaType.APPLICATION_XHTML_XML_TYPE).build();
+        assertThat(cache.determine(objType(response), emptyList(), emptyList(), writers, accepts).toString(), equalTo("application/xhtml+xml"));
+        assertThat(cache.size(), equalTo(2));
+    }
+
     private static List<ProviderWrapper<MessageBodyWriter<?>>> wrapped(List<MessageBodyWriter> writers) {
         return writers.stream().map(ProviderWrapper::writer).collect(Collectors.toList());
     }
@@ -12,6 +12,8 @@ import java.util.List;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -126,6 +128,36 @@ public class RequestMatcherTest {
             containsInAnyOrder(resourcePeopleBeltsInCapitals, resourcePeopleBelts));
     }
 
+    @Test
+    public void rootsWithAParameterInTheFirstSegmentAreCandidatesForAllPaths() throws NotMatchedException {
+        @Path("/{tenant}/orders")
+        class TenantOrders {
+        }
+
+        @Path("/api/orders")
+        class ApiOrders {
+        }
+
+        @Path("/api{version : [0-9]+}/orders")
+        class VersionedOrders {
+        }
+
+        ResourceClass tenantOrders = ResourceClass.fromObject(new TenantOrders(), paramConverterProviders);
+        ResourceClass apiOrders = ResourceClass.fromObject(new ApiOrders(), paramConverterProviders);
+        ResourceClass versionedOrders = ResourceClass.fromObject(new VersionedOrders(), paramConverterProviders);
+        RequestMatcher rm = new RequestMatcher(asList(tenantOrders, apiOrders, versionedOrders, resourceOne));
+
+        assertThat(stepOneMatches(URI.create("api/orders"), rm), contains(apiOrders));
+        assertThat(stepOneMatches(URI.create("/acme/orders"), rm), contains(tenantOrders));
+        assertThat(stepOneMatches(URI.create("api2/orders"), rm), contains(versionedOrders));
+        assertThat(stepOneMatches(URI.create("api/resources/one"), rm), contains(resourceOne));
+        try {
+            stepOneMatches(URI.create("api/resources/two"), rm);
+            Assert.fail("Should not have matched");
+        } catch (NotMatchedException expected) {
+        }
+    }
+
     @Path("/api/resources/one")
     private static class ResourceOne {
     }
@@ -173,6 +205,50 @@ public class RequestMatcherTest {
         assertThat(mm.pathParams.get("name"), equalTo("orange"));
     }
 
+    @Test
+    public void matchesCanBeCached() throws NotMatchedException {
+        @Path("api/fruits")
+        class Fruit {
+            @GET
+            public String getAll() {
+                return "[]";
+            }
+
+            @GET
+            @Path("{name}")
+            public String get(@PathParam("name") String name) {
+                return name;
+            }
+        }
+
+        RequestMatcher rm = new RequestMatcher(asList(ResourceClass.fromObject(new Fruit(), paramConverterProviders)), 2);
+        RequestMatcher.MatchedMethod first = rm.findResourceMethod(Method.GET, "api/fruits/orange", emptyList(), null);
+        RequestMatcher.MatchedMethod second = rm.findResourceMethod(Method.GET, "api/fruits/orange", emptyList(), null);
+        assertThat(second.resourceMethod, sameInstance(first.resourceMethod));
+        assertThat(second.pathParams, equalTo(singletonMap("name", "orange")));
+        assertThat(second.pathParams, not(sameInstance(first.pathParams)));
+        assertThat(rm.matchCache.hits(), is(1L));
+        assertThat(rm.matchCache.misses(), is(1L));
+
+        // the accept header and content type are part of the key
+        rm.findResourceMethod(Method.GET, "api/fruits/orange", singletonList(MediaType.TEXT_PLAIN_TYPE), null);
+        rm.findResourceMethod(Method.GET, "api/fruits", emptyList(), null);
+        assertThat(rm.findResourceMethod(Method.GET, "api/fruits", emptyList(), null).resourceMethod.methodHandle.getName(), equalTo("getAll"));
+        assertThat(rm.matchCache.hits(), is(2L));
+        assertThat(rm.matchCache.misses(), is(3L));
+        assertThat(rm.matchCache.size(), is(2));
+
+        // failures are not cached
+        for (int i = 0; i < 2; i++) {
+            try {
+                rm.findResourceMethod(Method.DELETE, "api/fruits/orange", emptyList(), null);
+                Assert.fail("Should not have matched");
+            } catch (NotAllowedException expected) {
+            }
+        }
+        assertThat(rm.matchCache.misses(), is(5L));
+    }
+
     @Test
     public void pathsOnClassesAreMatchedFirst() throws NotMatchedException {
         // test example taken from https://bill.burkecentral.com/2013/05/29/the-poor-jax-rs-request-dispatching-algorithm/
@@ -2,15 +2,19 @@ package io.muserver.rest;
 
 import org.junit.Test;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.OPTIONS;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 import static java.net.URI.create;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 
 public class ResourceClassTest {
 
@@ -49,6 +53,42 @@ public class ResourceClassTest {
 
     }
 
+    @Test
+    public void methodsCanBeInvokedWithPrimitivesVoidsAndExceptions() throws Exception {
+        @Path("/calc")
+        class Calculator {
+            @GET
+            @Path("add")
+            public int add(@QueryParam("a") int a, @QueryParam("b") long b) { return (int) (a + b); }
+            @GET
+            @Path("nothing")
+            public void nothing() { }
+            @GET
+            @Path("fail")
+            public String fail() { throw new BadRequestException("Bad"); }
+        }
+        ResourceClass rc = ResourceClass.fromObject(new Calculator(), ResourceMethodParamTest.BUILT_IN_PARAM_PROVIDERS);
+        for (ResourceMethod rm : rc.resourceMethods) {
+            switch (rm.methodHandle.getName()) {
+                case "add":
+                    assertThat(rm.paramsByIndex.length, equalTo(2));
+                    assertThat(rm.paramsByIndex[1].index, equalTo(1));
+                    assertThat(rm.invoke(2, 3L), equalTo(5));
+                    break;
+                case "nothing":
+                    assertThat(rm.invoke(), nullValue());
+                    break;
+                default:
+                    try {
+                        rm.invoke();
+                        fail("Should have thrown");
+                    } catch (BadRequestException e) {
+                        assertThat(e.getMessage(), equalTo("Bad"));
+                    }
+            }
+        }
+    }
+
     @Path("/api/fruits")
     private static class Fruit {
 
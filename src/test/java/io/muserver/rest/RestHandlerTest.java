@@ -58,6 +58,23 @@ public class RestHandlerTest {
         }
     }
 
+    @Test
+    public void matchesAreCachedIfEnabled() throws IOException {
+        RestHandler restHandler = RestHandlerBuilder.restHandler(new Fruit()).withMatchCacheSize(100).build();
+        MuServer cachingServer = ServerUtils.httpsServerForTest().addHandler(restHandler).start();
+        try {
+            for (String name : new String[]{"orange", "apple", "orange", "orange"}) {
+                try (okhttp3.Response resp = call(request().url(cachingServer.uri().resolve("/api/fruit%20bits/" + name).toString()))) {
+                    assertThat(resp.body().string(), is("{ \"name\": \"" + name + "\" }"));
+                }
+            }
+            assertThat(restHandler.matchCacheHits(), is(2L));
+            assertThat(restHandler.matchCacheMisses(), is(2L));
+        } finally {
+            MuAssert.stopAndCheck(cachingServer);
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void throwsIfObjectDoesNotHavePathAnnotation() {
         RestHandlerBuilder.restHandler(new Object()).build();
@@ -23,10 +23,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.muserver.rest.RestHandlerBuilder.restHandler;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -111,6 +114,76 @@ public class SseBroadcasterImplTest {
         }
     }
 
+    @Test
+    public void eachEventIsSerializedOnceForAllClients() throws Exception {
+        int numberOfSubscribers = 5;
+        CountDownLatch subscriptionLatch = new CountDownLatch(numberOfSubscribers);
+        AtomicInteger writes = new AtomicInteger();
+
+        class Message {
+            public final String data;
+
+            Message(String data) {
+                this.data = data;
+            }
+        }
+
+        @Path("/streamer")
+        class Streamer {
+
+            private final Sse sse = MuRuntimeDelegate.createSseFactory();
+            private final SseBroadcaster broadcaster = sse.newBroadcaster();
+
+            @GET
+            @Path("register")
+            @Produces(MediaType.SERVER_SENT_EVENTS)
+            public void eventStream(@Context SseEventSink eventSink) {
+                broadcaster.register(eventSink);
+                subscriptionLatch.countDown();
+            }
+        }
+
+        Streamer streamer = new Streamer();
+        server = ServerUtils.httpsServerForTest().addHandler(
+            restHandler(streamer)
+                .addCustomWriter(new MessageBodyWriter<Message>() {
+                    @Override
+                    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+                        return type.equals(Message.class);
+                    }
+
+                    @Override
+                    public void writeTo(Message message, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+                        writes.incrementAndGet();
+                        entityStream.write(message.data.getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+        ).start();
+
+        List<TestSseClient> listeners = new ArrayList<>();
+        for (int i = 0; i < numberOfSubscribers; i++) {
+            TestSseClient listener = new TestSseClient();
+            sseClient.newServerSentEvent(request().url(server.uri().resolve("/streamer/register").toString()).build(), listener);
+            listeners.add(listener);
+        }
+        MuAssert.assertNotTimedOut("Timed out waiting for subscriptions", subscriptionLatch);
+
+        streamer.broadcaster.broadcast(streamer.sse.newEventBuilder().data(new Message("Hello")).name("greeting").id("1").build())
+            .toCompletableFuture().get(10, TimeUnit.SECONDS);
+        streamer.broadcaster.broadcast(streamer.sse.newEventBuilder().data(new Message("Line one\r\nLine two\nLine 3\n\n")).build())
+            .toCompletableFuture().get(10, TimeUnit.SECONDS);
+        streamer.broadcaster.close();
+
+        assertThat(writes.get(), is(2));
+        for (TestSseClient listener : listeners) {
+            listener.assertListenerIsClosed();
+            assertThat(listener.receivedMessages, contains("open",
+                "message=Hello        event=greeting        id=1",
+                "message=Line one\nLine two\nLine 3        event=message        id=1",
+                "retryError", "closed"));
+        }
+    }
+
     @Test
     public void badSinksAreRemoved() throws Exception {
 
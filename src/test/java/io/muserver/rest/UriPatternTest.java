@@ -50,6 +50,22 @@ public class UriPatternTest {
         assertThat(literalCount("fruit/{version: v[12]}/{name}/eat"), is(11));
     }
 
+    @Test
+    public void theLiteralPrefixIsTheEncodedTextBeforeTheFirstParameter() {
+        assertThat(uriTemplateToRegex("/fruit").literalPrefix, equalTo("fruit"));
+        assertThat(uriTemplateToRegex("/fruit/").literalPrefix, equalTo("fruit"));
+        assertThat(uriTemplateToRegex("/").literalPrefix, equalTo(""));
+        assertThat(uriTemplateToRegex("/fruit bits/{name}/eat").literalPrefix, equalTo("fruit%20bits/"));
+        assertThat(uriTemplateToRegex("/fruit{version}").literalPrefix, equalTo("fruit"));
+        assertThat(uriTemplateToRegex("/{name}/fruit").literalPrefix, equalTo(""));
+
+        assertThat(uriTemplateToRegex("/fruit").literalFirstSegment(), equalTo("fruit"));
+        assertThat(uriTemplateToRegex("/fruit/{name}").literalFirstSegment(), equalTo("fruit"));
+        assertThat(uriTemplateToRegex("/").literalFirstSegment(), equalTo(""));
+        assertThat(uriTemplateToRegex("/fruit{name}").literalFirstSegment(), is(nullValue()));
+        assertThat(uriTemplateToRegex("/{name}/fruit").literalFirstSegment(), is(nullValue()));
+    }
+
     @Test
     public void namedGroupsAreReturnedInThePattern() {
         UriPattern pattern = uriTemplateToRegex("/fruit/{version: v[12]}/{name}/eat");
@@ -0,0 +1,45 @@
+package org.example;
+
+import io.muserver.rest.AnnotationInsensitive;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class CountingWriters {
+
+    // these are in a non-io.muserver package so that they get classified as custom writers
+
+    @AnnotationInsensitive
+    @Produces("text/plain")
+    public static class AnnotationInsensitiveWriter implements MessageBodyWriter<String> {
+        public final AtomicInteger isWriteableCalls = new AtomicInteger();
+
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            isWriteableCalls.incrementAndGet();
+            return String.class.equals(type);
+        }
+
+        public void writeTo(String s, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) {
+        }
+    }
+
+    @Produces("text/plain")
+    public static class DeprecatedOnlyWriter implements MessageBodyWriter<String> {
+        public final AtomicInteger isWriteableCalls = new AtomicInteger();
+
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            isWriteableCalls.incrementAndGet();
+            return Stream.of(annotations).anyMatch(a -> a instanceof Deprecated);
+        }
+
+        public void writeTo(String s, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) {
+        }
+    }
+}